@@ -0,0 +1,52 @@
+package com.sym.algorithm.example.cache;
+
+import com.sym.algorithm.example.cache.stats.CacheStats;
+import com.sym.algorithm.example.cache.stats.ConcurrentStatsCounter;
+import com.sym.algorithm.example.cache.stats.StatsCounter;
+
+import java.util.Objects;
+
+/**
+ * 缓存的基类, 提供可选的统计功能. 默认不开启统计, 此时使用的是空实现的计数器,
+ * 调用{@link #recordStats()}后才会真正记录命中、未命中、淘汰等数据.
+ *
+ * @author shenyanming
+ * Created on 2021/1/28 11:30
+ */
+public abstract class AbstractCache<K, V> implements ICache<K, V> {
+
+    /**
+     * 统计计数器
+     */
+    protected volatile StatsCounter statsCounter = StatsCounter.disabled();
+
+    /**
+     * 开启统计, 使用基于{@link java.util.concurrent.atomic.LongAdder}的计数器
+     */
+    public void recordStats() {
+        recordStats(new ConcurrentStatsCounter());
+    }
+
+    /**
+     * 开启统计, 使用指定的计数器, 多个缓存可以共用同一个计数器
+     *
+     * @param statsCounter 计数器
+     */
+    public void recordStats(StatsCounter statsCounter) {
+        this.statsCounter = Objects.requireNonNull(statsCounter);
+    }
+
+    /**
+     * 是否开启了统计, 有些统计数据(例如条目的存活时间)需要额外读取时钟, 未开启时就可以省掉这部分开销
+     *
+     * @return true-已开启
+     */
+    protected boolean isRecordingStats() {
+        return statsCounter != StatsCounter.disabled();
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return statsCounter.snapshot();
+    }
+}
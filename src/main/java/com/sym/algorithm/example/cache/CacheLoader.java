@@ -0,0 +1,41 @@
+package com.sym.algorithm.example.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 缓存加载器, 缓存未命中时用它从数据源(例如数据库)加载数据
+ *
+ * @author shenyanming
+ * Created on 2021/1/29 9:50
+ */
+@FunctionalInterface
+public interface CacheLoader<K, V> {
+
+    /**
+     * 加载单个key对应的值
+     *
+     * @param key 键
+     * @return 值, 返回null表示数据源中也不存在
+     */
+    V load(K key);
+
+    /**
+     * 批量加载, 默认逐个调用{@link #load(Object)}. 数据源支持批量查询时(例如 SQL 的 IN 查询、Redis 的 MGET),
+     * 应该重写这个方法, 把多次往返合并成一次.
+     *
+     * @param keys 键
+     * @return 加载到的值, 不存在的key可以不出现在结果中
+     */
+    default Map<K, V> loadAll(Set<? extends K> keys) {
+        Map<K, V> result = new HashMap<>(keys.size() << 1);
+        for (K key : keys) {
+            V value = load(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+}
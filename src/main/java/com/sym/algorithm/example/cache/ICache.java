@@ -1,5 +1,9 @@
 package com.sym.algorithm.example.cache;
 
+import com.sym.algorithm.example.cache.stats.CacheStats;
+
+import java.util.concurrent.TimeUnit;
+
 /**
  * 缓存接口
  *
@@ -16,6 +20,18 @@ public interface ICache<K, V> {
      */
     void set(K key, V value);
 
+    /**
+     * 新增或修改缓存信息, 并单独指定它的存活时间(TTL), 不支持过期的缓存实现会抛出异常
+     *
+     * @param key      键
+     * @param value    值
+     * @param duration 存活时间, 0表示使用缓存默认的过期策略
+     * @param unit     时间单位
+     */
+    default void set(K key, V value, long duration, TimeUnit unit) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support expiration");
+    }
+
     /**
      * 获取缓存值
      *
@@ -31,4 +47,13 @@ public interface ICache<K, V> {
      * @return 旧值, 若key不存在, 返回null
      */
     V remove(K key);
+
+    /**
+     * 获取缓存统计数据的快照, 未开启统计的缓存返回空的统计数据
+     *
+     * @return 快照
+     */
+    default CacheStats snapshot() {
+        return CacheStats.empty();
+    }
 }
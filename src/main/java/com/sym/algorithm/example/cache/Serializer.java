@@ -0,0 +1,72 @@
+package com.sym.algorithm.example.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 序列化器, 用于把缓存值存放到堆外内存或者文件中
+ *
+ * @author shenyanming
+ * Created on 2021/2/1 10:10
+ */
+public interface Serializer<V> {
+
+    /**
+     * 序列化
+     *
+     * @param value 值
+     * @return 字节数组
+     */
+    byte[] serialize(V value);
+
+    /**
+     * 反序列化, 读取 buffer 中 position 到 limit 之间的字节. buffer 会被缓存继续使用,
+     * 所以不能持有它的引用(包括 slice() 得到的视图), 需要的数据都要复制出来
+     *
+     * @param buffer 数据
+     * @return 值
+     */
+    V deserialize(ByteBuffer buffer);
+
+    /**
+     * 字节数组的序列化器
+     *
+     * @return Serializer
+     */
+    static Serializer<byte[]> bytes() {
+        return new Serializer<byte[]>() {
+            @Override
+            public byte[] serialize(byte[] value) {
+                return value;
+            }
+
+            @Override
+            public byte[] deserialize(ByteBuffer buffer) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return bytes;
+            }
+        };
+    }
+
+    /**
+     * UTF-8 字符串的序列化器
+     *
+     * @return Serializer
+     */
+    static Serializer<String> string() {
+        return new Serializer<String>() {
+            @Override
+            public byte[] serialize(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String deserialize(ByteBuffer buffer) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
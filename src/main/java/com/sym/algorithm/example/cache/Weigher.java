@@ -0,0 +1,31 @@
+package com.sym.algorithm.example.cache;
+
+/**
+ * 缓存权重计算器. 按条目数量限制容量时, 如果值的大小差异很大(例如从几百字节到几MB),
+ * 实际占用的内存就无法预估. 这时可以给每个缓存条目计算一个权重(例如序列化后的字节数),
+ * 按照总权重来限制容量.
+ *
+ * @author shenyanming
+ * Created on 2021/1/27 15:40
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+    /**
+     * 计算缓存条目的权重, 条目写入时计算一次, 之后不会再重新计算
+     *
+     * @param key   键
+     * @param value 值
+     * @return 权重, 不能为负数
+     */
+    int weigh(K key, V value);
+
+    /**
+     * 每个条目的权重都为1, 此时总权重就等于条目数量
+     *
+     * @return Weigher
+     */
+    static <K, V> Weigher<K, V> singleton() {
+        return (key, value) -> 1;
+    }
+}
@@ -0,0 +1,108 @@
+package com.sym.algorithm.example.cache.expiry;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存的过期策略, 支持两种过期方式, 可以同时使用, 以先到期的为准：
+ * 1.TTL(time to live)：写入后经过指定时间过期, 可以在写入时为单个缓存单独指定;
+ * 2.TTI(time to idle)：最后一次访问后经过指定时间过期, 即一段时间内没有被访问就过期.
+ *
+ * @author shenyanming
+ * Created on 2021/1/25 14:20
+ */
+public class ExpiryPolicy {
+
+    /**
+     * 表示永不过期
+     */
+    public final static long NEVER = Long.MAX_VALUE;
+
+    /**
+     * 时钟
+     */
+    private final Ticker ticker;
+
+    /**
+     * 默认的TTL(纳秒), 0表示不过期
+     */
+    private final long expireAfterWriteNanos;
+
+    /**
+     * TTI(纳秒), 0表示不过期
+     */
+    private final long expireAfterAccessNanos;
+
+    /**
+     * 构造过期策略
+     *
+     * @param expireAfterWrite  写入后多久过期, 0表示不过期
+     * @param expireAfterAccess 最后一次访问后多久过期, 0表示不过期
+     * @param unit              时间单位
+     * @param ticker            时钟
+     */
+    public ExpiryPolicy(long expireAfterWrite, long expireAfterAccess, TimeUnit unit, Ticker ticker) {
+        if (expireAfterWrite < 0 || expireAfterAccess < 0) {
+            throw new IllegalArgumentException("过期时间不能为负数");
+        }
+        this.expireAfterWriteNanos = Objects.requireNonNull(unit).toNanos(expireAfterWrite);
+        this.expireAfterAccessNanos = unit.toNanos(expireAfterAccess);
+        this.ticker = Objects.requireNonNull(ticker);
+    }
+
+    /**
+     * 读取当前时间
+     *
+     * @return 纳秒
+     */
+    public long read() {
+        return ticker.read();
+    }
+
+    /**
+     * 是否配置了TTI, 若配置了, 每次访问都需要刷新过期时间
+     *
+     * @return true-配置了TTI
+     */
+    public boolean expiresAfterAccess() {
+        return expireAfterAccessNanos > 0;
+    }
+
+    /**
+     * 计算写入后的过期时间
+     *
+     * @param now      写入时间
+     * @param ttlNanos 单独指定的TTL, 0表示使用默认的TTL
+     * @return 过期时间, 不过期则返回{@link #NEVER}
+     */
+    public long writeDeadline(long now, long ttlNanos) {
+        long ttl = ttlNanos > 0 ? ttlNanos : expireAfterWriteNanos;
+        return ttl > 0 ? now + ttl : NEVER;
+    }
+
+    /**
+     * 结合TTI计算最终的过期时间
+     *
+     * @param now           写入或访问的时间
+     * @param writeDeadline 写入后的过期时间
+     * @return 过期时间, 不过期则返回{@link #NEVER}
+     */
+    public long expireTime(long now, long writeDeadline) {
+        if (expireAfterAccessNanos <= 0) {
+            return writeDeadline;
+        }
+        long accessDeadline = now + expireAfterAccessNanos;
+        return writeDeadline == NEVER ? accessDeadline : Math.min(writeDeadline, accessDeadline);
+    }
+
+    /**
+     * 判断是否已经过期
+     *
+     * @param expireTime 过期时间
+     * @param now        当前时间
+     * @return true-已过期
+     */
+    public static boolean isExpired(long expireTime, long now) {
+        return expireTime != NEVER && expireTime - now <= 0;
+    }
+}
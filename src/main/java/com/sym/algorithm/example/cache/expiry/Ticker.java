@@ -0,0 +1,28 @@
+package com.sym.algorithm.example.cache.expiry;
+
+/**
+ * 时钟, 返回以纳秒为单位的时间. 缓存的过期判断都基于它, 而不是直接调用{@link System#nanoTime()},
+ * 这样在测试时就可以传入一个手动推进的时钟, 不需要真的去等待时间流逝.
+ *
+ * @author shenyanming
+ * Created on 2021/1/25 10:12
+ */
+@FunctionalInterface
+public interface Ticker {
+
+    /**
+     * 读取当前时间
+     *
+     * @return 纳秒, 只用于计算时间差, 与系统的墙上时间无关
+     */
+    long read();
+
+    /**
+     * 基于{@link System#nanoTime()}的系统时钟
+     *
+     * @return Ticker
+     */
+    static Ticker systemTicker() {
+        return System::nanoTime;
+    }
+}
@@ -0,0 +1,248 @@
+package com.sym.algorithm.example.cache.expiry;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮(hierarchical timing wheel), 用来驱动缓存的过期淘汰, 实现参考了 Kafka 和 Caffeine.
+ * <p>
+ * 普通的做法是定时扫描整个缓存找出过期的数据, 时间复杂度为O(n). 时间轮则像钟表一样：
+ * 1.每一层都是一个环形数组, 每个槽位(bucket)是一个双向链表, 存放在这个时间段内过期的定时器;
+ * 2.越往上层, 每个槽位代表的时间跨度越大: 第0层每格约1.07秒, 第1层每格约1.14分钟, 第2层每格约1.22小时, 第3层每格约1.63天;
+ * 3.时间推进时, 只需要处理指针扫过的那几个槽位, 槽位里真正到期的定时器直接触发, 还没到期的(来自上层的粗粒度槽位)
+ * 重新放到下层更精确的槽位中.
+ * 每个定时器至多在每一层被移动一次, 因此每次推进的均摊时间复杂度为O(1), 添加、删除定时器也都是O(1).
+ * <p>
+ * 槽位的时间跨度都取2的幂次方纳秒, 这样计算槽位时只需要位运算, 不需要除法.
+ *
+ * @author shenyanming
+ * Created on 2021/1/25 10:30
+ */
+public class TimerWheel<K> {
+
+    /**
+     * 每一层的槽位数量
+     */
+    private final static int[] BUCKETS = {64, 64, 32, 4, 1};
+
+    /**
+     * 每一层单个槽位的时间跨度(纳秒), 分别是不小于1秒、1分钟、1小时、1天的2的幂次方,
+     * 最后一层只有一个槽位, 存放超出前面所有层范围的定时器
+     */
+    private final static long[] SPANS = {
+            1L << 30,
+            1L << 36,
+            1L << 42,
+            1L << 47,
+            (long) BUCKETS[3] << 47
+    };
+
+    /**
+     * 计算槽位时需要右移的位数, 即 log2(SPANS[i])
+     */
+    private final static long[] SHIFT = {
+            Long.numberOfTrailingZeros(SPANS[0]),
+            Long.numberOfTrailingZeros(SPANS[1]),
+            Long.numberOfTrailingZeros(SPANS[2]),
+            Long.numberOfTrailingZeros(SPANS[3]),
+            Long.numberOfTrailingZeros(SPANS[4])
+    };
+
+    /**
+     * 时间轮, wheel[层][槽位], 每个槽位都是一个带哨兵节点的环形双向链表
+     */
+    private final Timer<K>[][] wheel;
+
+    /**
+     * 时间轮当前的时间
+     */
+    private long nanos;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long nanos) {
+        this.nanos = nanos;
+        // 不能直接创建泛型数组, 先创建通配符数组再转换. 数组不会传出本类, 存放的都是Timer<K>, 所以转换是安全的
+        this.wheel = (Timer<K>[][]) new Timer<?>[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = (Timer<K>[]) new Timer<?>[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                wheel[i][j] = Timer.sentinel();
+            }
+        }
+    }
+
+    /**
+     * 添加一个定时器
+     *
+     * @param key        定时器对应的缓存key
+     * @param expireTime 过期时间(纳秒)
+     * @return 定时器, 用于后续的修改或删除
+     */
+    public Timer<K> schedule(K key, long expireTime) {
+        Timer<K> timer = new Timer<>(key, expireTime);
+        link(findBucket(expireTime), timer);
+        return timer;
+    }
+
+    /**
+     * 修改定时器的过期时间
+     *
+     * @param timer      定时器
+     * @param expireTime 新的过期时间
+     */
+    public void reschedule(Timer<K> timer, long expireTime) {
+        unlink(timer);
+        timer.expireTime = expireTime;
+        link(findBucket(expireTime), timer);
+    }
+
+    /**
+     * 删除定时器, 对已经触发或者已经删除的定时器调用也是安全的
+     *
+     * @param timer 定时器
+     */
+    public void deschedule(Timer<K> timer) {
+        if (Objects.nonNull(timer)) {
+            unlink(timer);
+        }
+    }
+
+    /**
+     * 推进时间轮到指定时间, 触发所有已经到期的定时器
+     *
+     * @param currentNanos 当前时间
+     * @param expired      到期处理逻辑, 参数为到期的缓存key
+     */
+    public void advance(long currentNanos, Consumer<K> expired) {
+        long previousNanos = nanos;
+        nanos = currentNanos;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previousNanos >>> SHIFT[i];
+            long currentTicks = currentNanos >>> SHIFT[i];
+            long delta = currentTicks - previousTicks;
+            if (delta <= 0L) {
+                // 当前层的指针没有移动, 那么更上层的指针更不会移动
+                break;
+            }
+            expire(i, previousTicks, delta, expired);
+        }
+    }
+
+    /**
+     * 处理指定层中, 指针从previousTicks开始扫过的槽位
+     *
+     * @param level         层
+     * @param previousTicks 上一次指针的位置
+     * @param delta         指针移动的格数
+     * @param expired       到期处理逻辑
+     */
+    private void expire(int level, long previousTicks, long delta, Consumer<K> expired) {
+        Timer<K>[] timerWheel = wheel[level];
+        int mask = timerWheel.length - 1;
+        // 指针转了一圈以上, 那就整层都要处理, 另外当前指针所在的槽位也要处理
+        int steps = (int) Math.min(1 + delta, timerWheel.length);
+        int start = (int) (previousTicks & mask);
+        int end = start + steps;
+        for (int i = start; i < end; i++) {
+            Timer<K> sentinel = timerWheel[i & mask];
+            // 先把整个槽位的链表摘下来, 再逐个处理, 这样重新放回时间轮的定时器不会被重复遍历
+            Timer<K> timer = sentinel.next;
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            while (timer != sentinel) {
+                Timer<K> next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                if (timer.expireTime - nanos > 0) {
+                    // 还没有到期, 放到更精确的槽位中
+                    link(findBucket(timer.expireTime), timer);
+                } else {
+                    expired.accept(timer.key);
+                }
+                timer = next;
+            }
+        }
+    }
+
+    /**
+     * 根据过期时间找到定时器应该放置的槽位
+     *
+     * @param time 过期时间
+     * @return 槽位的哨兵节点
+     */
+    private Timer<K> findBucket(long time) {
+        long duration = time - nanos;
+        int length = wheel.length - 1;
+        for (int i = 0; i < length; i++) {
+            // 剩余时间在下一层单个槽位的跨度之内, 就放在当前层
+            if (duration < SPANS[i + 1]) {
+                long ticks = time >>> SHIFT[i];
+                int index = (int) (ticks & (wheel[i].length - 1));
+                return wheel[i][index];
+            }
+        }
+        return wheel[length][0];
+    }
+
+    /**
+     * 将定时器添加到槽位链表的末尾
+     */
+    private void link(Timer<K> sentinel, Timer<K> timer) {
+        timer.prev = sentinel.prev;
+        timer.next = sentinel;
+        sentinel.prev.next = timer;
+        sentinel.prev = timer;
+    }
+
+    /**
+     * 将定时器从槽位链表中删除
+     */
+    private void unlink(Timer<K> timer) {
+        Timer<K> prev = timer.prev;
+        Timer<K> next = timer.next;
+        if (Objects.nonNull(prev) && Objects.nonNull(next)) {
+            prev.next = next;
+            next.prev = prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    /**
+     * 定时器
+     */
+    public static class Timer<K> {
+
+        /**
+         * 缓存key
+         */
+        private final K key;
+
+        /**
+         * 过期时间
+         */
+        private long expireTime;
+
+        private Timer<K> prev;
+        private Timer<K> next;
+
+        private Timer(K key, long expireTime) {
+            this.key = key;
+            this.expireTime = expireTime;
+        }
+
+        public long getExpireTime() {
+            return expireTime;
+        }
+
+        /**
+         * 哨兵节点, 自己指向自己表示空链表
+         */
+        private static <K> Timer<K> sentinel() {
+            Timer<K> sentinel = new Timer<>(null, 0L);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            return sentinel;
+        }
+    }
+}
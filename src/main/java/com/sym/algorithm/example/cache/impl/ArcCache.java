@@ -0,0 +1,259 @@
+package com.sym.algorithm.example.cache.impl;
+
+import com.sym.algorithm.example.cache.AbstractCache;
+import com.sym.algorithm.example.cache.expiry.Ticker;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * ARC 缓存, 即 Adaptive Replacement Cache, 参考论文《ARC: A Self-Tuning, Low Overhead Replacement Cache》.
+ * <p>
+ * LRU 只看最近访问, LFU 只看访问频次, 而实际流量往往在这两种模式之间切换. ARC 同时维护两个 LRU 链表,
+ * 并根据"淘汰错了"的反馈自动调整它们的大小：
+ * 1.T1：只被访问过一次的数据, 体现最近访问(recency);
+ * 2.T2：至少被访问过两次的数据, 体现访问频次(frequency);
+ * 3.B1、B2：幽灵链表(ghost list), 只记录最近从T1、T2中淘汰的key, 不保存值;
+ * 4.p：T1的目标大小. 未命中的key如果出现在B1中, 说明T1太小了, 增大p; 出现在B2中, 说明T2太小了, 减小p.
+ * 缓存的数据量(T1+T2)不超过容量c, 加上幽灵链表(T1+T2+B1+B2)不超过2c.
+ * <p>
+ * 不是线程安全的.
+ *
+ * @author shenyanming
+ * Created on 2021/2/3 10:15
+ */
+public class ArcCache<K, V> extends AbstractCache<K, V> {
+
+    /**
+     * 最大容量
+     */
+    private final int capacity;
+
+    /**
+     * T1的目标大小, 取值范围[0, capacity]
+     */
+    private int p;
+
+    /**
+     * 四个链表中所有节点的索引
+     */
+    private final Map<K, CacheNode<K, V, Queue>> map;
+
+    /**
+     * 按访问顺序排列的双向链表, 链表头是最久未访问的节点
+     */
+    private final CacheNodeList<K, V, Queue> t1 = new CacheNodeList<>();
+    private final CacheNodeList<K, V, Queue> t2 = new CacheNodeList<>();
+    private final CacheNodeList<K, V, Queue> b1 = new CacheNodeList<>();
+    private final CacheNodeList<K, V, Queue> b2 = new CacheNodeList<>();
+
+    /**
+     * 时钟, 只在开启统计时用来记录条目的存活时间
+     */
+    private final Ticker ticker;
+
+    public ArcCache(int capacity) {
+        this(capacity, Ticker.systemTicker());
+    }
+
+    public ArcCache(int capacity, Ticker ticker) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("容量必须大于0, 当前值为：" + capacity);
+        }
+        this.capacity = capacity;
+        this.map = new HashMap<>(capacity << 1);
+        this.ticker = Objects.requireNonNull(ticker);
+    }
+
+    @Override
+    public void set(K key, V value) {
+        Objects.requireNonNull(key, "键不能为空");
+        Objects.requireNonNull(value, "值不能为空");
+        CacheNode<K, V, Queue> node = map.get(key);
+        if (Objects.nonNull(node) && isResident(node)) {
+            // 情况1: 缓存命中, 修改值同时也算作一次访问
+            node.value = value;
+            node.writeTime = statsTicks();
+            promote(node);
+            return;
+        }
+        if (Objects.nonNull(node)) {
+            // 情况2、3: 命中了幽灵链表, 说明它不久前被错误地淘汰了, 调整p并直接放入T2
+            if (node.queue == Queue.B1) {
+                p = Math.min(capacity, p + Math.max(b2.size / b1.size, 1));
+            } else {
+                p = Math.max(0, p - Math.max(b1.size / b2.size, 1));
+            }
+            replace(node.queue == Queue.B2);
+            listOf(node).remove(node);
+            node.value = value;
+            node.writeTime = statsTicks();
+            t2.addLast(node, Queue.T2);
+            return;
+        }
+        // 情况4: 全新的key
+        int l1 = t1.size + b1.size;
+        if (l1 == capacity) {
+            if (t1.size < capacity) {
+                removeGhost(b1);
+                replace(false);
+            } else {
+                // B1为空, 直接淘汰T1中最久未访问的数据, 不留幽灵
+                CacheNode<K, V, Queue> eldest = t1.head;
+                t1.remove(eldest);
+                map.remove(eldest.key);
+                recordEviction(eldest);
+            }
+        } else {
+            int total = l1 + t2.size + b2.size;
+            if (total >= capacity) {
+                if (total == capacity << 1) {
+                    removeGhost(b2);
+                }
+                replace(false);
+            }
+        }
+        node = new CacheNode<>(key, value);
+        node.writeTime = statsTicks();
+        map.put(key, node);
+        t1.addLast(node, Queue.T1);
+    }
+
+    @Override
+    public V get(K key) {
+        Objects.requireNonNull(key, "键不能为空");
+        CacheNode<K, V, Queue> node = map.get(key);
+        if (Objects.isNull(node) || !isResident(node)) {
+            // 命中幽灵链表也是未命中, 等到调用方写入数据时再调整p
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        promote(node);
+        return node.value;
+    }
+
+    @Override
+    public V remove(K key) {
+        Objects.requireNonNull(key, "键不能为空");
+        CacheNode<K, V, Queue> node = map.get(key);
+        if (Objects.isNull(node) || !isResident(node)) {
+            return null;
+        }
+        map.remove(key);
+        listOf(node).remove(node);
+        return node.value;
+    }
+
+    /**
+     * 当前缓存的元素数量, 不包括幽灵链表
+     *
+     * @return 元素数量
+     */
+    public int size() {
+        return t1.size + t2.size;
+    }
+
+    /**
+     * T1的目标大小, 可以观察 ARC 当前更偏向最近访问还是访问频次
+     *
+     * @return p
+     */
+    public int targetRecencySize() {
+        return p;
+    }
+
+    @Override
+    public String toString() {
+        return "p=" + p + ", T1=" + t1 + ", T2=" + t2 + ", B1=" + b1.size + ", B2=" + b2.size;
+    }
+
+    /**
+     * 缓存命中, 移到T2的末尾
+     */
+    private void promote(CacheNode<K, V, Queue> node) {
+        if (node.queue == Queue.T1) {
+            t1.remove(node);
+            t2.addLast(node, Queue.T2);
+        } else {
+            t2.moveToLast(node);
+        }
+    }
+
+    /**
+     * 腾出一个位置：T1超出目标大小时淘汰T1最久未访问的数据到B1, 否则淘汰T2最久未访问的数据到B2
+     *
+     * @param inB2 要放入的key是否命中了B2
+     */
+    private void replace(boolean inB2) {
+        if (t1.size + t2.size < capacity) {
+            // 缓存还没满, 不需要淘汰
+            return;
+        }
+        if (t1.size > 0 && (t1.size > p || (inB2 && t1.size == p))) {
+            demote(t1, b1, Queue.B1);
+        } else if (t2.size > 0) {
+            demote(t2, b2, Queue.B2);
+        } else {
+            demote(t1, b1, Queue.B1);
+        }
+    }
+
+    /**
+     * 把from中最久未访问的数据移到幽灵链表, 只保留key
+     */
+    private void demote(CacheNodeList<K, V, Queue> from, CacheNodeList<K, V, Queue> ghost, Queue queue) {
+        CacheNode<K, V, Queue> eldest = from.head;
+        from.remove(eldest);
+        recordEviction(eldest);
+        eldest.value = null;
+        ghost.addLast(eldest, queue);
+    }
+
+    private void removeGhost(CacheNodeList<K, V, Queue> ghost) {
+        CacheNode<K, V, Queue> eldest = ghost.head;
+        if (Objects.nonNull(eldest)) {
+            ghost.remove(eldest);
+            map.remove(eldest.key);
+        }
+    }
+
+    private void recordEviction(CacheNode<K, V, Queue> node) {
+        statsCounter.recordEviction(isRecordingStats() ? ticker.read() - node.writeTime : 0L);
+    }
+
+    /**
+     * 未开启统计时不需要读取时钟
+     */
+    private long statsTicks() {
+        return isRecordingStats() ? ticker.read() : 0L;
+    }
+
+    /**
+     * 节点是否在缓存中, 幽灵链表中的节点没有值
+     */
+    private static boolean isResident(CacheNode<?, ?, Queue> node) {
+        return node.queue == Queue.T1 || node.queue == Queue.T2;
+    }
+
+    private CacheNodeList<K, V, Queue> listOf(CacheNode<K, V, Queue> node) {
+        switch (node.queue) {
+            case T1:
+                return t1;
+            case T2:
+                return t2;
+            case B1:
+                return b1;
+            default:
+                return b2;
+        }
+    }
+
+    /**
+     * 节点所在的链表
+     */
+    private enum Queue {
+        T1, T2, B1, B2
+    }
+}
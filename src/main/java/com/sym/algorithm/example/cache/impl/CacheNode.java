@@ -0,0 +1,33 @@
+package com.sym.algorithm.example.cache.impl;
+
+/**
+ * 缓存节点, 同一时刻只属于一个{@link CacheNodeList}, 由{@link WTinyLfuCache}、{@link ArcCache}这类
+ * 自己维护多个 LRU 链表的缓存使用.
+ *
+ * @param <K> 键
+ * @param <V> 值
+ * @param <Q> 节点所在的链表, 通常是一个枚举
+ * @author shenyanming
+ * Created on 2021/2/3 10:15
+ */
+class CacheNode<K, V, Q> {
+    K key;
+    V value;
+    CacheNode<K, V, Q> prev;
+    CacheNode<K, V, Q> next;
+
+    /**
+     * 节点当前所在的链表
+     */
+    Q queue;
+
+    /**
+     * 写入时间, 用于统计条目的存活时间
+     */
+    long writeTime;
+
+    CacheNode(K key, V value) {
+        this.key = key;
+        this.value = value;
+    }
+}
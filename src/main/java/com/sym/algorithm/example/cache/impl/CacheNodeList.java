@@ -0,0 +1,67 @@
+package com.sym.algorithm.example.cache.impl;
+
+/**
+ * 按访问顺序排列的双向链表, 链表头是最久未访问的节点. 节点直接持有前后指针,
+ * 所以移除、移到末尾都是O(1), 也不需要像{@link java.util.LinkedList}那样额外创建链表节点.
+ *
+ * @param <K> 键
+ * @param <V> 值
+ * @param <Q> 节点所在的链表, 加入链表时记录到{@link CacheNode#queue}
+ * @author shenyanming
+ * Created on 2021/2/3 10:15
+ */
+class CacheNodeList<K, V, Q> {
+    CacheNode<K, V, Q> head;
+    CacheNode<K, V, Q> tail;
+    int size;
+
+    void addLast(CacheNode<K, V, Q> node, Q queue) {
+        node.queue = queue;
+        node.prev = tail;
+        node.next = null;
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+        }
+        tail = node;
+        size++;
+    }
+
+    void remove(CacheNode<K, V, Q> node) {
+        CacheNode<K, V, Q> prev = node.prev;
+        CacheNode<K, V, Q> next = node.next;
+        if (prev == null) {
+            head = next;
+        } else {
+            prev.next = next;
+        }
+        if (next == null) {
+            tail = prev;
+        } else {
+            next.prev = prev;
+        }
+        node.prev = node.next = null;
+        size--;
+    }
+
+    void moveToLast(CacheNode<K, V, Q> node) {
+        if (node != tail) {
+            Q queue = node.queue;
+            remove(node);
+            addLast(node, queue);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (CacheNode<K, V, Q> node = head; node != null; node = node.next) {
+            sb.append(node.key).append('=').append(node.value);
+            if (node.next != null) {
+                sb.append(", ");
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,274 @@
+package com.sym.algorithm.example.cache.impl;
+
+import com.sym.algorithm.example.cache.AbstractCache;
+import com.sym.algorithm.example.cache.Weigher;
+import com.sym.algorithm.example.cache.expiry.ExpiryPolicy;
+import com.sym.algorithm.example.cache.expiry.Ticker;
+import com.sym.algorithm.example.cache.stats.StatsCounter;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+
+/**
+ * 分段加锁(lock striping)的线程安全 LRU 缓存.
+ * <p>
+ * {@link LruCache}底层的{@link java.util.LinkedHashMap}按访问顺序排序, 即使是get()也会修改链表,
+ * 所以多线程下要么数据错乱, 要么只能加一把全局锁. 这里参考 JDK7 ConcurrentHashMap 的分段思想：
+ * 1.按照key的哈希值将键空间划分成N个段(segment), 每个段都是一个独立的{@link LruCache};
+ * 2.每个段各自持有一把锁, 不同段之间的读写互不影响, 只有落在同一个段的操作才会竞争;
+ * 3.每个段的容量为 总容量/N, 除不尽的部分分给前面的段, 各段容量之和恰好等于总容量,
+ * 所以淘汰是段内的 LRU, 整体上是近似的 LRU. 按总权重限制容量时同理.
+ * <p>
+ * 开启统计后, 所有分段共用同一个计数器, 计数器本身是线程安全的, 不需要额外加锁.
+ *
+ * @author shenyanming
+ * Created on 2021/1/20 14:26
+ */
+public class ConcurrentLruCache<K, V> extends AbstractCache<K, V> {
+
+    /**
+     * 最大分段数
+     */
+    private final static int MAX_SEGMENTS = 1 << 16;
+
+    /**
+     * 分段数组, 长度为2的幂次方, 这样就可以通过位运算来定位分段
+     */
+    private final Segment<K, V>[] segments;
+
+    /**
+     * 分段掩码, segments.length - 1
+     */
+    private final int segmentMask;
+
+    public ConcurrentLruCache(int capacity) {
+        // 默认分段数为CPU核数的4倍, 以降低同一个段上的锁竞争
+        this(capacity, Runtime.getRuntime().availableProcessors() << 2);
+    }
+
+    public ConcurrentLruCache(int capacity, int concurrencyLevel) {
+        this(capacity, concurrencyLevel, 0, 0, TimeUnit.NANOSECONDS, Ticker.systemTicker());
+    }
+
+    /**
+     * 构造分段 LRU 缓存
+     *
+     * @param capacity          最大容量
+     * @param concurrencyLevel  并发级别, 即期望的分段数
+     * @param expireAfterWrite  写入后多久过期(TTL), 0表示不过期
+     * @param expireAfterAccess 最后一次访问后多久过期(TTI), 0表示不过期
+     * @param unit              时间单位
+     * @param ticker            时钟
+     */
+    public ConcurrentLruCache(int capacity, int concurrencyLevel, long expireAfterWrite, long expireAfterAccess,
+                              TimeUnit unit, Ticker ticker) {
+        this(capacity, concurrencyLevel, segmentCapacity -> new LruCache<>((int) segmentCapacity,
+                expireAfterWrite, expireAfterAccess, unit, ticker));
+    }
+
+    /**
+     * 构造按总权重限制容量的分段 LRU 缓存
+     *
+     * @param maximumWeight    总权重上限
+     * @param weigher          权重计算器
+     * @param concurrencyLevel 并发级别, 即期望的分段数
+     */
+    public ConcurrentLruCache(long maximumWeight, Weigher<? super K, ? super V> weigher, int concurrencyLevel) {
+        this(maximumWeight, concurrencyLevel, segmentWeight -> new LruCache<>(segmentWeight, weigher,
+                new ExpiryPolicy(0, 0, TimeUnit.NANOSECONDS, Ticker.systemTicker())));
+    }
+
+    /**
+     * 构造分段 LRU 缓存
+     *
+     * @param capacity         容量或者总权重上限
+     * @param concurrencyLevel 并发级别, 即期望的分段数
+     * @param segmentFactory   根据分到的容量创建每个分段的缓存
+     */
+    private ConcurrentLruCache(long capacity, int concurrencyLevel, LongFunction<LruCache<K, V>> segmentFactory) {
+        int segmentCount = segmentCount(capacity, concurrencyLevel);
+        this.segments = newSegmentArray(segmentCount);
+        this.segmentMask = segmentCount - 1;
+        // 容量平均分给每个段, 余数分给前面的段, 各段容量之和恰好等于总容量
+        long share = capacity / segmentCount;
+        long remainder = capacity % segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(segmentFactory.apply(i < remainder ? share + 1 : share));
+        }
+    }
+
+    @Override
+    public void set(K key, V value) {
+        Objects.requireNonNull(key, "键不能为空");
+        Objects.requireNonNull(value, "值不能为空");
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            segment.cache.set(key, value);
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    @Override
+    public void set(K key, V value, long duration, TimeUnit unit) {
+        Objects.requireNonNull(key, "键不能为空");
+        Objects.requireNonNull(value, "值不能为空");
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            segment.cache.set(key, value, duration, unit);
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        Objects.requireNonNull(key, "键不能为空");
+        Segment<K, V> segment = segmentFor(key);
+        // 访问顺序的LinkedHashMap在get()时也会调整链表, 所以读操作同样需要加锁
+        segment.lock();
+        try {
+            return segment.cache.get(key);
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        Objects.requireNonNull(key, "键不能为空");
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.remove(key);
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    @Override
+    public void recordStats(StatsCounter statsCounter) {
+        super.recordStats(statsCounter);
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                segment.cache.recordStats(statsCounter);
+            } finally {
+                segment.unlock();
+            }
+        }
+    }
+
+    /**
+     * 当前的元素数量, 即所有分段的元素数量之和
+     *
+     * @return 元素数量
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                size += segment.cache.size();
+            } finally {
+                segment.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 当前的总权重, 即所有分段的权重之和
+     *
+     * @return 总权重
+     */
+    public long weightedSize() {
+        long weightedSize = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                weightedSize += segment.cache.weightedSize();
+            } finally {
+                segment.unlock();
+            }
+        }
+        return weightedSize;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                sb.append(segment.cache).append("\n");
+            } finally {
+                segment.unlock();
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 根据key定位它所在的分段
+     *
+     * @param key 键
+     * @return 分段
+     */
+    private Segment<K, V> segmentFor(K key) {
+        // 与HashMap一样, 让哈希码的高16位也参与运算, 避免只有低位参与定位导致分布不均匀
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & segmentMask];
+    }
+
+    /**
+     * 校验参数, 并计算分段数. 分段数取不小于concurrencyLevel的2的幂次方, 但不能超过容量,
+     * 超过时取不大于容量的最大的2的幂次方, 保证每个段的容量至少为1
+     *
+     * @param capacity         容量或者总权重上限
+     * @param concurrencyLevel 并发级别
+     * @return 分段数
+     */
+    private static int segmentCount(long capacity, int concurrencyLevel) {
+        if (capacity <= 0 || concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("容量和并发级别必须大于0");
+        }
+        int segmentCount = tableSizeFor(Math.min(concurrencyLevel, MAX_SEGMENTS));
+        return (int) Math.min(segmentCount, Long.highestOneBit(capacity));
+    }
+
+    /**
+     * 创建分段数组, Java不允许直接创建泛型数组
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V> Segment<K, V>[] newSegmentArray(int size) {
+        return (Segment<K, V>[]) new Segment<?, ?>[size];
+    }
+
+    /**
+     * 返回不小于cap的2的幂次方
+     */
+    private static int tableSizeFor(int cap) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(cap - 1);
+        return n < 0 ? 1 : n + 1;
+    }
+
+    /**
+     * 分段, 一把锁加上一个独立的 LRU 缓存
+     */
+    private static class Segment<K, V> extends ReentrantLock {
+
+        private final static long serialVersionUID = 1L;
+
+        private final LruCache<K, V> cache;
+
+        Segment(LruCache<K, V> cache) {
+            this.cache = cache;
+        }
+    }
+}
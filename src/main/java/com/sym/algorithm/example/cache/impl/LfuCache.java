@@ -1,24 +1,402 @@
 package com.sym.algorithm.example.cache.impl;
 
-import com.sym.algorithm.example.cache.ICache;
+import com.sym.algorithm.example.cache.AbstractCache;
+import com.sym.algorithm.example.cache.expiry.ExpiryPolicy;
+import com.sym.algorithm.example.cache.expiry.Ticker;
+import com.sym.algorithm.example.cache.expiry.TimerWheel;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * O(1)时间复杂度的 LFU 缓存
+ * (LFU, 即Least Frequently Used, 最不经常使用)
+ * <p>
+ * 实现思路参考论文《An O(1) algorithm for implementing the LFU cache eviction scheme》：
+ * 1.每个访问频次对应一个双向链表(频次桶), 链表内的节点按照访问先后排列, 链表头是最久未访问的节点;
+ * 2.所有频次桶本身也组成一个按频次升序排列的双向链表, 因此头桶就是最小访问频次, 即 min-frequency 指针;
+ * 3.通过一个哈希表定位key所在的节点.
+ * 这样不管是get、set还是淘汰, 都只涉及常数次的链表指针操作, 时间复杂度都是O(1).
+ * <p>
+ * 与{@link LruCache}一样支持TTL和TTI, 过期数据由{@link TimerWheel}清理, 也同样支持统计.
+ *
  * @author shenyanming
  * Created on 2021/1/18 10:33
  */
-public class LfuCache<K, V> implements ICache<K, V> {
+public class LfuCache<K, V> extends AbstractCache<K, V> {
+
+    /**
+     * 最大容量
+     */
+    private final int capacity;
+
+    /**
+     * 用于定位key所在的节点
+     */
+    private final Map<K, Node<K, V>> map;
+
+    /**
+     * 访问频次最小的桶, 即 min-frequency 指针, 淘汰时从它的链表头开始
+     */
+    private FrequencyList<K, V> minFrequencyList;
+
+    /**
+     * 过期策略
+     */
+    private final ExpiryPolicy expiryPolicy;
+
+    /**
+     * 驱动过期清理的时间轮
+     */
+    private final TimerWheel<K> timerWheel;
+
+    public LfuCache(int capacity) {
+        this(capacity, 0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    public LfuCache(int capacity, long expireAfterWrite, long expireAfterAccess, TimeUnit unit) {
+        this(capacity, expireAfterWrite, expireAfterAccess, unit, Ticker.systemTicker());
+    }
+
+    /**
+     * 构造 LFU 缓存
+     *
+     * @param capacity          最大容量
+     * @param expireAfterWrite  写入后多久过期(TTL), 0表示不过期
+     * @param expireAfterAccess 最后一次访问后多久过期(TTI), 0表示不过期
+     * @param unit              时间单位
+     * @param ticker            时钟
+     */
+    public LfuCache(int capacity, long expireAfterWrite, long expireAfterAccess, TimeUnit unit, Ticker ticker) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("容量必须大于0, 当前值为：" + capacity);
+        }
+        this.capacity = capacity;
+        this.map = new HashMap<>(capacity);
+        this.expiryPolicy = new ExpiryPolicy(expireAfterWrite, expireAfterAccess, unit, ticker);
+        this.timerWheel = new TimerWheel<>(ticker.read());
+    }
+
     @Override
     public void set(K key, V value) {
+        set(key, value, 0, TimeUnit.NANOSECONDS);
+    }
 
+    @Override
+    public void set(K key, V value, long duration, TimeUnit unit) {
+        Objects.requireNonNull(key, "键不能为空");
+        Objects.requireNonNull(value, "值不能为空");
+        long now = expireEntries();
+        long writeDeadline = expiryPolicy.writeDeadline(now, unit.toNanos(duration));
+        Node<K, V> node = map.get(key);
+        if (Objects.nonNull(node)) {
+            // 已经存在的节点, 修改值同时也算作一次访问
+            node.value = value;
+            node.writeTime = now;
+            node.writeDeadline = writeDeadline;
+            schedule(node, expiryPolicy.expireTime(now, writeDeadline));
+            increment(node);
+            return;
+        }
+        if (map.size() >= capacity) {
+            // 容量已满, 淘汰访问频次最小的节点
+            evict(now);
+        }
+        node = new Node<>(key, value);
+        node.writeTime = now;
+        node.writeDeadline = writeDeadline;
+        schedule(node, expiryPolicy.expireTime(now, writeDeadline));
+        map.put(key, node);
+        // 新节点的访问频次为1, 它一定位于最小频次的桶中
+        FrequencyList<K, V> list = minFrequencyList;
+        if (Objects.isNull(list) || list.frequency != 1) {
+            list = new FrequencyList<>(1);
+            linkBucketAfter(null, list);
+        }
+        list.addLast(node);
     }
 
     @Override
     public V get(K key) {
-        return null;
+        Objects.requireNonNull(key, "键不能为空");
+        long now = expireEntries();
+        Node<K, V> node = map.get(key);
+        if (Objects.isNull(node)) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        if (ExpiryPolicy.isExpired(node.expireTime, now)) {
+            // 时间轮的精度有限, 已经过期但还没被清理的数据在这里删除
+            evictNode(key, now);
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        if (expiryPolicy.expiresAfterAccess()) {
+            // 配置了TTI, 每次访问都要刷新过期时间
+            schedule(node, expiryPolicy.expireTime(now, node.writeDeadline));
+        }
+        increment(node);
+        return node.value;
     }
 
     @Override
     public V remove(K key) {
-        return null;
+        Objects.requireNonNull(key, "键不能为空");
+        long now = expireEntries();
+        Node<K, V> node = removeNode(key);
+        return Objects.isNull(node) || ExpiryPolicy.isExpired(node.expireTime, now) ? null : node.value;
+    }
+
+    /**
+     * 当前缓存的元素数量, 包括已经过期但还没被清理的数据
+     *
+     * @return 元素数量
+     */
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public String toString() {
+        // 按照淘汰顺序打印, 即频次从小到大, 同频次内从旧到新
+        StringBuilder sb = new StringBuilder("{");
+        for (FrequencyList<K, V> list = minFrequencyList; list != null; list = list.next) {
+            for (Node<K, V> node = list.head; node != null; node = node.next) {
+                sb.append(node.key).append('=').append(node.value).append("(").append(list.frequency).append("), ");
+            }
+        }
+        if (sb.length() > 1) {
+            sb.delete(sb.length() - 2, sb.length());
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * 推进时间轮, 清理已经过期的数据
+     *
+     * @return 当前时间
+     */
+    private long expireEntries() {
+        long now = expiryPolicy.read();
+        timerWheel.advance(now, key -> evictNode(key, now));
+        return now;
+    }
+
+    /**
+     * 设置过期时间, 并在时间轮中添加或调整对应的定时器
+     */
+    private void schedule(Node<K, V> node, long expireTime) {
+        node.expireTime = expireTime;
+        if (expireTime == ExpiryPolicy.NEVER) {
+            timerWheel.deschedule(node.timer);
+            node.timer = null;
+        } else if (Objects.isNull(node.timer)) {
+            node.timer = timerWheel.schedule(node.key, expireTime);
+        } else {
+            timerWheel.reschedule(node.timer, expireTime);
+        }
+    }
+
+    private Node<K, V> removeNode(K key) {
+        Node<K, V> node = map.remove(key);
+        if (Objects.nonNull(node)) {
+            unlinkNode(node);
+            timerWheel.deschedule(node.timer);
+        }
+        return node;
+    }
+
+    /**
+     * 节点被访问一次, 将其从当前频次桶移到下一个频次桶(频次+1)
+     *
+     * @param node 节点
+     */
+    private void increment(Node<K, V> node) {
+        FrequencyList<K, V> current = node.list;
+        int newFrequency = current.frequency + 1;
+        FrequencyList<K, V> next = current.next;
+        if (Objects.isNull(next) || next.frequency != newFrequency) {
+            // 下一个桶的频次不连续, 需要在当前桶后面插入一个新桶
+            next = new FrequencyList<>(newFrequency);
+            linkBucketAfter(current, next);
+        }
+        // 先从当前桶移除(可能会导致当前桶被删除), 再加入新桶的末尾
+        unlinkNode(node);
+        next.addLast(node);
+    }
+
+    /**
+     * 淘汰最小频次桶中最久未访问的节点
+     */
+    private void evict(long now) {
+        evictNode(minFrequencyList.head.key, now);
+    }
+
+    /**
+     * 因为容量或者过期淘汰节点
+     */
+    private void evictNode(K key, long now) {
+        Node<K, V> node = removeNode(key);
+        if (Objects.nonNull(node)) {
+            statsCounter.recordEviction(now - node.writeTime);
+        }
+    }
+
+    /**
+     * 将节点从它所在的频次桶中移除, 若桶为空, 则将桶也移除
+     *
+     * @param node 节点
+     */
+    private void unlinkNode(Node<K, V> node) {
+        FrequencyList<K, V> list = node.list;
+        list.remove(node);
+        if (list.isEmpty()) {
+            unlinkBucket(list);
+        }
+    }
+
+    /**
+     * 将新桶插入到指定桶的后面
+     *
+     * @param prev   前一个桶, 为null表示插入到桶链表的头部
+     * @param bucket 新桶
+     */
+    private void linkBucketAfter(FrequencyList<K, V> prev, FrequencyList<K, V> bucket) {
+        FrequencyList<K, V> next = Objects.isNull(prev) ? minFrequencyList : prev.next;
+        bucket.prev = prev;
+        bucket.next = next;
+        if (Objects.nonNull(next)) {
+            next.prev = bucket;
+        }
+        if (Objects.isNull(prev)) {
+            minFrequencyList = bucket;
+        } else {
+            prev.next = bucket;
+        }
+    }
+
+    /**
+     * 从桶链表中删除指定桶
+     *
+     * @param bucket 桶
+     */
+    private void unlinkBucket(FrequencyList<K, V> bucket) {
+        FrequencyList<K, V> prev = bucket.prev;
+        FrequencyList<K, V> next = bucket.next;
+        if (Objects.isNull(prev)) {
+            minFrequencyList = next;
+        } else {
+            prev.next = next;
+        }
+        if (Objects.nonNull(next)) {
+            next.prev = prev;
+        }
+        bucket.prev = bucket.next = null;
+    }
+
+    /**
+     * 缓存节点
+     */
+    private static class Node<K, V> {
+        K key;
+        V value;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        /**
+         * 节点所在的频次桶
+         */
+        FrequencyList<K, V> list;
+
+        /**
+         * 写入时间, 用于统计条目的存活时间
+         */
+        long writeTime;
+
+        /**
+         * 写入后的过期时间(TTL)
+         */
+        long writeDeadline;
+
+        /**
+         * 最终的过期时间, 结合了TTL和TTI
+         */
+        long expireTime;
+
+        /**
+         * 时间轮中的定时器, 永不过期的数据没有定时器
+         */
+        TimerWheel.Timer<K> timer;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 频次桶, 同一个访问频次的节点组成的双向链表
+     */
+    private static class FrequencyList<K, V> {
+        /**
+         * 访问频次
+         */
+        final int frequency;
+
+        /**
+         * 链表头, 最久未被访问的节点
+         */
+        Node<K, V> head;
+
+        /**
+         * 链表尾, 最近被访问的节点
+         */
+        Node<K, V> tail;
+
+        /**
+         * 前一个(频次更小)的桶、后一个(频次更大)的桶
+         */
+        FrequencyList<K, V> prev;
+        FrequencyList<K, V> next;
+
+        FrequencyList(int frequency) {
+            this.frequency = frequency;
+        }
+
+        boolean isEmpty() {
+            return head == null;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.list = this;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void remove(Node<K, V> node) {
+            Node<K, V> prev = node.prev;
+            Node<K, V> next = node.next;
+            if (prev == null) {
+                head = next;
+            } else {
+                prev.next = next;
+            }
+            if (next == null) {
+                tail = prev;
+            } else {
+                next.prev = prev;
+            }
+            node.prev = node.next = null;
+            node.list = null;
+        }
     }
 }
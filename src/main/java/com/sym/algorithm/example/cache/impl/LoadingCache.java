@@ -0,0 +1,273 @@
+package com.sym.algorithm.example.cache.impl;
+
+import com.sym.algorithm.example.cache.AbstractCache;
+import com.sym.algorithm.example.cache.CacheLoader;
+import com.sym.algorithm.example.cache.ICache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 自动加载的缓存, 未命中时通过{@link CacheLoader}加载数据并写入缓存.
+ * <p>
+ * 热点key过期的瞬间, 大量线程同时未命中, 如果每个线程都去查数据源, 数据源就会被打垮(缓存击穿).
+ * 这里采用 single-flight 的方式：同一个key同一时刻只允许一个线程加载, 加载中的key在 inFlight 中登记一个
+ * {@link CompletableFuture}, 其它线程发现已经有人在加载, 就等待这个 future 的结果, 而不是重复加载.
+ * <p>
+ * 批量获取{@link #getAll(Iterable)}时, 所有需要由当前线程加载的key合并成一次{@link CacheLoader#loadAll(java.util.Set)}调用.
+ * <p>
+ * 本类只负责加载, 数据的存储和淘汰交给被装饰的缓存, 因此被装饰的缓存必须是线程安全的, 例如{@link ConcurrentLruCache}.
+ *
+ * @author shenyanming
+ * Created on 2021/1/29 10:20
+ */
+public class LoadingCache<K, V> extends AbstractCache<K, V> {
+
+    /**
+     * 被装饰的缓存
+     */
+    private final ICache<K, V> delegate;
+
+    /**
+     * 默认的加载器
+     */
+    private final CacheLoader<K, V> loader;
+
+    /**
+     * 正在加载中的key
+     */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public LoadingCache(ICache<K, V> delegate, CacheLoader<K, V> loader) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.loader = Objects.requireNonNull(loader);
+    }
+
+    @Override
+    public void set(K key, V value) {
+        delegate.set(key, value);
+    }
+
+    @Override
+    public void set(K key, V value, long duration, TimeUnit unit) {
+        delegate.set(key, value, duration, unit);
+    }
+
+    /**
+     * 获取缓存值, 未命中时使用默认的加载器加载
+     *
+     * @param key 键
+     * @return 值, 数据源中也不存在时返回null
+     */
+    @Override
+    public V get(K key) {
+        return get(key, loader::load);
+    }
+
+    /**
+     * 获取缓存值, 未命中时使用指定的函数加载, 同一个key的并发加载只会执行一次
+     *
+     * @param key             键
+     * @param mappingFunction 加载函数
+     * @return 值, 加载结果为null时返回null, 且不会写入缓存
+     */
+    public V get(K key, Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(key, "键不能为空");
+        Objects.requireNonNull(mappingFunction);
+        V value = delegate.get(key);
+        if (Objects.nonNull(value)) {
+            statsCounter.recordHits(1);
+            return value;
+        }
+        statsCounter.recordMisses(1);
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> loading = inFlight.putIfAbsent(key, future);
+        if (Objects.nonNull(loading)) {
+            // 已经有其它线程在加载这个key, 等待它的结果即可
+            return join(loading);
+        }
+        try {
+            // 再检查一次, 可能在上面查询缓存之后, 另一个线程刚好加载完成并移除了它的future
+            value = delegate.get(key);
+            if (Objects.isNull(value)) {
+                value = load(key, mappingFunction);
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            // 加载失败也要通知等待中的线程, 否则它们会一直阻塞
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            // 值已经写入缓存后才移除future, 这样后来的线程要么命中缓存, 要么等待future
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 批量获取缓存值, 所有需要加载的key合并成一次{@link CacheLoader#loadAll(java.util.Set)}调用
+     *
+     * @param keys 键
+     * @return key与值的映射, 按keys的顺序排列, 不包含数据源中也不存在的key
+     */
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        Objects.requireNonNull(keys);
+        Map<K, V> result = new LinkedHashMap<>();
+        // 由当前线程负责加载的key, 以及正在由其它线程加载的key
+        Map<K, CompletableFuture<V>> owned = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> waiting = new LinkedHashMap<>();
+        // 先校验所有的key, 再登记加载中的key; 否则登记到一半才发现空key, 已经登记的future就没人完成了
+        List<K> keyList = new ArrayList<>();
+        for (K key : keys) {
+            keyList.add(Objects.requireNonNull(key, "键不能为空"));
+        }
+        int hits = 0, misses = 0;
+        try {
+            for (K key : keyList) {
+                if (result.containsKey(key) || owned.containsKey(key) || waiting.containsKey(key)) {
+                    continue;
+                }
+                V value = delegate.get(key);
+                if (Objects.nonNull(value)) {
+                    hits++;
+                    result.put(key, value);
+                    continue;
+                }
+                misses++;
+                CompletableFuture<V> future = new CompletableFuture<>();
+                CompletableFuture<V> loading = inFlight.putIfAbsent(key, future);
+                if (Objects.nonNull(loading)) {
+                    waiting.put(key, loading);
+                    continue;
+                }
+                // 先记录下来, 下面再检查缓存时抛出异常, 也能完成这个future
+                owned.put(key, future);
+                // 与get()一样再检查一次, 另一个线程可能刚好加载完成并移除了它的future, 这时不需要重新加载
+                value = delegate.get(key);
+                if (Objects.nonNull(value)) {
+                    owned.remove(key);
+                    result.put(key, value);
+                    future.complete(value);
+                    inFlight.remove(key, future);
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            // 查询缓存失败, 已经登记的key要通知等待中的线程并移除, 否则之后获取这些key的线程会一直阻塞
+            for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+                entry.getValue().completeExceptionally(e);
+                inFlight.remove(entry.getKey(), entry.getValue());
+            }
+            throw e;
+        }
+        statsCounter.recordHits(hits);
+        statsCounter.recordMisses(misses);
+        // 先加载自己负责的key, 再等待其它线程; 反过来的话, 两个线程交叉持有对方需要的key时会互相等待
+        if (!owned.isEmpty()) {
+            loadAll(owned, result);
+        }
+        for (Map.Entry<K, CompletableFuture<V>> entry : waiting.entrySet()) {
+            V value = join(entry.getValue());
+            if (Objects.nonNull(value)) {
+                result.put(entry.getKey(), value);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public V remove(K key) {
+        return delegate.remove(key);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    /**
+     * 调用加载函数, 记录加载耗时, 并将结果写入缓存
+     */
+    private V load(K key, Function<? super K, ? extends V> mappingFunction) {
+        long start = System.nanoTime();
+        V value;
+        try {
+            value = mappingFunction.apply(key);
+        } catch (RuntimeException | Error e) {
+            statsCounter.recordLoadFailure(System.nanoTime() - start);
+            throw e;
+        }
+        long loadTime = System.nanoTime() - start;
+        if (Objects.isNull(value)) {
+            statsCounter.recordLoadFailure(loadTime);
+            return null;
+        }
+        statsCounter.recordLoadSuccess(loadTime);
+        delegate.set(key, value);
+        return value;
+    }
+
+    /**
+     * 批量加载当前线程负责的key, 不管成功与否, 最后都要完成对应的future并从inFlight中移除
+     *
+     * @param owned  当前线程负责加载的key
+     * @param result 加载结果
+     */
+    private void loadAll(Map<K, CompletableFuture<V>> owned, Map<K, V> result) {
+        try {
+            long start = System.nanoTime();
+            Map<K, V> loaded;
+            try {
+                loaded = loader.loadAll(Collections.unmodifiableSet(owned.keySet()));
+            } catch (RuntimeException | Error e) {
+                statsCounter.recordLoadFailure(System.nanoTime() - start);
+                throw e;
+            }
+            statsCounter.recordLoadSuccess(System.nanoTime() - start);
+            for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+                K key = entry.getKey();
+                V value = Objects.isNull(loaded) ? null : loaded.get(key);
+                if (Objects.nonNull(value)) {
+                    delegate.set(key, value);
+                    result.put(key, value);
+                }
+                entry.getValue().complete(value);
+            }
+        } catch (RuntimeException | Error e) {
+            for (CompletableFuture<V> future : owned.values()) {
+                future.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+                inFlight.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 等待其它线程的加载结果, 加载失败时抛出原始的异常
+     */
+    private V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
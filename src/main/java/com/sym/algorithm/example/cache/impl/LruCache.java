@@ -1,44 +1,227 @@
 package com.sym.algorithm.example.cache.impl;
 
-import com.sym.algorithm.example.cache.ICache;
+import com.sym.algorithm.example.cache.AbstractCache;
+import com.sym.algorithm.example.cache.Weigher;
+import com.sym.algorithm.example.cache.expiry.ExpiryPolicy;
+import com.sym.algorithm.example.cache.expiry.Ticker;
+import com.sym.algorithm.example.cache.expiry.TimerWheel;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 
 /**
  * 基于{@link java.util.LinkedHashMap>的 LRU 缓存
  * (LRU, 即Least Recently Used, 最近最少使用)
+ * <p>
+ * 支持TTL和TTI两种过期方式, 过期数据由{@link TimerWheel}在每次读写时顺带清理,
+ * 同时读取时也会检查过期时间, 保证不会返回已经过期的数据.
+ * <p>
+ * 除了按条目数量限制容量, 还可以指定{@link Weigher}按总权重限制容量, 超出时从最近最少使用的条目开始淘汰,
+ * 直到总权重不超过上限.
+ * <p>
+ * 开启统计后, 容量淘汰、权重淘汰和过期清理都计为一次淘汰, 并记录被淘汰条目从写入到被淘汰经过的时间.
+ * 另外可以指定淘汰监听器, 条目因为容量或者权重被淘汰时回调, 过期的条目不会回调. 回调时条目已经从缓存中删除,
+ * 所以即使监听器抛出异常, 缓存的容量也不会超出上限.
  *
  * @author shenyanming
  * Created on 2020/5/20 17:37
  */
-public class LruCache<K,V> implements ICache<K,V> {
+public class LruCache<K,V> extends AbstractCache<K,V> {
 
-    private LinkedHashMap<K,V> map;
+    private LinkedHashMap<K, Entry<K, V>> map;
+
+    /**
+     * 过期策略
+     */
+    private final ExpiryPolicy expiryPolicy;
+
+    /**
+     * 驱动过期清理的时间轮
+     */
+    private final TimerWheel<K> timerWheel;
+
+    /**
+     * 权重计算器
+     */
+    private final Weigher<? super K, ? super V> weigher;
+
+    /**
+     * 最大容量
+     */
+    private final int capacity;
+
+    /**
+     * 总权重上限
+     */
+    private final long maximumWeight;
+
+    /**
+     * 当前的总权重
+     */
+    private long weightedSize;
+
+    /**
+     * 淘汰监听器, 可以为null
+     */
+    private final BiConsumer<? super K, ? super V> evictionListener;
 
     public LruCache(int capacity){
-        map = new LryLinkedHashMap<>(capacity);
+        this(capacity, 0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    public LruCache(int capacity, long expireAfterWrite, long expireAfterAccess, TimeUnit unit) {
+        this(capacity, expireAfterWrite, expireAfterAccess, unit, Ticker.systemTicker());
+    }
+
+    /**
+     * 构造 LRU 缓存
+     *
+     * @param capacity          最大容量
+     * @param expireAfterWrite  写入后多久过期(TTL), 0表示不过期
+     * @param expireAfterAccess 最后一次访问后多久过期(TTI), 0表示不过期
+     * @param unit              时间单位
+     * @param ticker            时钟
+     */
+    public LruCache(int capacity, long expireAfterWrite, long expireAfterAccess, TimeUnit unit, Ticker ticker) {
+        this(capacity, capacity, Long.MAX_VALUE, Weigher.singleton(),
+                new ExpiryPolicy(expireAfterWrite, expireAfterAccess, unit, ticker), null);
+    }
+
+    /**
+     * 构造带淘汰监听器的 LRU 缓存
+     *
+     * @param capacity         最大容量
+     * @param evictionListener 条目因为容量被淘汰时的回调
+     */
+    public LruCache(int capacity, BiConsumer<? super K, ? super V> evictionListener) {
+        this(capacity, capacity, Long.MAX_VALUE, Weigher.singleton(),
+                new ExpiryPolicy(0, 0, TimeUnit.NANOSECONDS, Ticker.systemTicker()),
+                Objects.requireNonNull(evictionListener));
+    }
+
+    public LruCache(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+        this(maximumWeight, weigher, new ExpiryPolicy(0, 0, TimeUnit.NANOSECONDS, Ticker.systemTicker()));
+    }
+
+    /**
+     * 构造按总权重限制容量的 LRU 缓存
+     *
+     * @param maximumWeight 总权重上限
+     * @param weigher       权重计算器
+     * @param expiryPolicy  过期策略
+     */
+    public LruCache(long maximumWeight, Weigher<? super K, ? super V> weigher, ExpiryPolicy expiryPolicy) {
+        // 不再按条目数量淘汰, 所以LinkedHashMap使用默认的初始容量
+        this(16, Integer.MAX_VALUE, maximumWeight, weigher, expiryPolicy, null);
+    }
+
+    private LruCache(int initialCapacity, int capacity, long maximumWeight, Weigher<? super K, ? super V> weigher,
+                     ExpiryPolicy expiryPolicy, BiConsumer<? super K, ? super V> evictionListener) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("总权重上限不能为负数, 当前值为：" + maximumWeight);
+        }
+        this.capacity = capacity;
+        this.maximumWeight = maximumWeight;
+        this.weigher = Objects.requireNonNull(weigher);
+        this.expiryPolicy = Objects.requireNonNull(expiryPolicy);
+        this.evictionListener = evictionListener;
+        this.timerWheel = new TimerWheel<>(expiryPolicy.read());
+        // 按访问顺序排序, 链表的头节点就是最近最少使用的. 不通过removeEldestEntry()淘汰, 因为它在put()的过程中
+        // 回调, 此时新条目已经加入而头节点还没有删除, 监听器一旦抛出异常, 缓存就会一直超出容量
+        map = new LinkedHashMap<>(initialCapacity, 0.75f, true);
     }
 
     @Override
     public void set(K key, V value) {
+        set(key, value, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void set(K key, V value, long duration, TimeUnit unit) {
         Objects.requireNonNull(key, "键不能为空");
         Objects.requireNonNull(value, "值不能为空");
-        map.put(key, value);
+        long now = expireEntries();
+        int weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("权重不能为负数, 当前值为：" + weight);
+        }
+        Entry<K, V> entry = new Entry<>(value, weight, now);
+        entry.writeDeadline = expiryPolicy.writeDeadline(now, unit.toNanos(duration));
+        schedule(key, entry, expiryPolicy.expireTime(now, entry.writeDeadline));
+        weightedSize += weight;
+        Entry<K, V> old = map.put(key, entry);
+        if (Objects.nonNull(old)) {
+            onRemoved(old);
+        }
+        evict();
     }
 
     @Override
     public V get(K key) {
         Objects.requireNonNull(key, "键不能为空");
-        return map.get(key);
+        long now = expireEntries();
+        Entry<K, V> entry = map.get(key);
+        if (Objects.isNull(entry)) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        if (ExpiryPolicy.isExpired(entry.expireTime, now)) {
+            // 时间轮的精度有限, 已经过期但还没被清理的数据在这里删除
+            expireEntry(key);
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        if (expiryPolicy.expiresAfterAccess()) {
+            // 配置了TTI, 每次访问都要刷新过期时间
+            schedule(key, entry, expiryPolicy.expireTime(now, entry.writeDeadline));
+        }
+        return entry.value;
     }
 
     @Override
     public V remove(K key) {
         Objects.requireNonNull(key, "键不能为空");
-        return map.remove(key);
+        long now = expireEntries();
+        Entry<K, V> entry = removeEntry(key);
+        return Objects.isNull(entry) || ExpiryPolicy.isExpired(entry.expireTime, now) ? null : entry.value;
+    }
+
+    /**
+     * 当前缓存的元素数量, 包括已经过期但还没被清理的数据
+     *
+     * @return 元素数量
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * 当前的总权重, 没有指定{@link Weigher}时就等于元素数量
+     *
+     * @return 总权重
+     */
+    public long weightedSize() {
+        return weightedSize;
+    }
+
+    /**
+     * 按照从最久未访问到最近访问的顺序遍历没有过期的条目, 遍历不会改变访问顺序
+     *
+     * @param action 处理逻辑
+     */
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        long now = expiryPolicy.read();
+        for (Map.Entry<K, Entry<K, V>> entry : map.entrySet()) {
+            if (!ExpiryPolicy.isExpired(entry.getValue().expireTime, now)) {
+                action.accept(entry.getKey(), entry.getValue().value);
+            }
+        }
     }
 
     @Override
@@ -46,26 +229,129 @@ public class LruCache<K,V> implements ICache<K,V> {
         return map.toString();
     }
 
-    static class LryLinkedHashMap<K,V> extends LinkedHashMap<K,V>{
+    /**
+     * 推进时间轮, 清理已经过期的数据
+     *
+     * @return 当前时间
+     */
+    private long expireEntries() {
+        long now = expiryPolicy.read();
+        timerWheel.advance(now, this::expireEntry);
+        return now;
+    }
+
+    /**
+     * 设置过期时间, 并在时间轮中添加或调整对应的定时器
+     */
+    private void schedule(K key, Entry<K, V> entry, long expireTime) {
+        entry.expireTime = expireTime;
+        if (expireTime == ExpiryPolicy.NEVER) {
+            return;
+        }
+        if (Objects.isNull(entry.timer)) {
+            entry.timer = timerWheel.schedule(key, expireTime);
+        } else {
+            timerWheel.reschedule(entry.timer, expireTime);
+        }
+    }
+
+    /**
+     * 条目数量或者总权重超出上限时, 从最近最少使用的条目开始淘汰. 先从map中删除再回调,
+     * 回调抛出异常时缓存的状态仍然是一致的
+     */
+    private void evict() {
+        Iterator<Map.Entry<K, Entry<K, V>>> iterator = map.entrySet().iterator();
+        while ((map.size() > capacity || weightedSize > maximumWeight) && iterator.hasNext()) {
+            Map.Entry<K, Entry<K, V>> eldest = iterator.next();
+            iterator.remove();
+            onEvicted(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private Entry<K, V> removeEntry(K key) {
+        Entry<K, V> entry = map.remove(key);
+        if (Objects.nonNull(entry)) {
+            onRemoved(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * 过期清理, 同样计为一次淘汰
+     */
+    private void expireEntry(K key) {
+        Entry<K, V> entry = map.remove(key);
+        if (Objects.nonNull(entry)) {
+            onRemoved(entry);
+            recordEviction(entry);
+        }
+    }
+
+    /**
+     * 条目因为容量或者权重被淘汰
+     */
+    private void onEvicted(K key, Entry<K, V> entry) {
+        onRemoved(entry);
+        recordEviction(entry);
+        if (Objects.nonNull(evictionListener)) {
+            evictionListener.accept(key, entry.value);
+        }
+    }
+
+    private void recordEviction(Entry<K, V> entry) {
+        if (isRecordingStats()) {
+            statsCounter.recordEviction(expiryPolicy.read() - entry.writeTime);
+        }
+    }
+
+    /**
+     * 条目被删除、淘汰或者覆盖后, 删除它的定时器并扣减权重
+     */
+    private void onRemoved(Entry<K, V> entry) {
+        timerWheel.deschedule(entry.timer);
+        weightedSize -= entry.weight;
+    }
+
+    /**
+     * 缓存条目, 除了值以外, 还记录了过期信息
+     */
+    static class Entry<K, V> {
+        V value;
+
         /**
-         * 最大容量
+         * 权重
          */
-        private int capacity;
+        final int weight;
 
-        public LryLinkedHashMap(int capacity){
-            super(capacity, 0.75f, true);
-            this.capacity = capacity;
-        }
+        /**
+         * 写入时间, 用于统计条目的存活时间
+         */
+        final long writeTime;
 
         /**
-         * 当容量达到 capacity 时, 移除头节点, 所以必须每次get()后将该节点移动到链表的末尾,
-         * 这样链表的头节点才是最近最少使用的, 当容量不足时就可以删除它
-         * @param eldest 最近最少使用的节点
-         * @return boolean
+         * 写入后的过期时间(TTL)
          */
+        long writeDeadline;
+
+        /**
+         * 最终的过期时间, 结合了TTL和TTI
+         */
+        long expireTime;
+
+        /**
+         * 时间轮中的定时器, 永不过期的数据没有定时器
+         */
+        TimerWheel.Timer<K> timer;
+
+        Entry(V value, int weight, long writeTime) {
+            this.value = value;
+            this.weight = weight;
+            this.writeTime = writeTime;
+        }
+
         @Override
-        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-            return size() > capacity;
+        public String toString() {
+            return String.valueOf(value);
         }
     }
 }
@@ -0,0 +1,488 @@
+package com.sym.algorithm.example.cache.impl;
+
+import com.sym.algorithm.example.cache.AbstractCache;
+import com.sym.algorithm.example.cache.Serializer;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 堆外内存的 LRU 缓存, 值序列化后存放在{@link ByteBuffer#allocateDirect(int)}分配的直接内存中,
+ * 堆内只保留 key 和一个很小的索引节点. 这样即使缓存了几个GB的数据, 老年代也不会膨胀, GC 扫描的对象也很少.
+ * <p>
+ * 内存管理参考 memcached 的 slab 分配：
+ * 1.直接内存按页(page, 默认1MB)申请, 总页数由最大内存决定;
+ * 2.每一页属于某个 slab class, 被切成大小相同的块(chunk), 各个 slab class 的块大小从64字节开始按1.25倍递增;
+ * 3.存放一个值时, 选择块大小刚好能装下它的 slab class, 从它的空闲块中分配, 这样就不会产生外部碎片,
+ * 代价是块内有不超过20%的内部碎片.
+ * <p>
+ * 淘汰是跨 slab class 的全局 LRU：内存不足时从最近最少使用的条目开始淘汰, 直到需要的 slab class 有了空闲块,
+ * 或者某一页被完全腾空. 完全空闲的页会归还到全局的空闲页池中, 可以被重新切分给其它 slab class 使用,
+ * 避免访问模式变化后内存被早期的 slab class 占住.
+ * <p>
+ * 直接内存不受堆大小限制, 只有在{@link ByteBuffer}被GC回收时才会释放, 而缓存对象本身可能一直存活,
+ * 所以用完后需要调用{@link #close()}, 丢弃所有页的引用. JDK8没有公开的释放直接内存的方法,
+ * 这些页在下一次GC时才会真正归还给操作系统.
+ * <p>
+ * 与{@link LruCache}一样不是线程安全的.
+ *
+ * @author shenyanming
+ * Created on 2021/2/1 11:00
+ */
+public class OffHeapLruCache<K, V> extends AbstractCache<K, V> implements AutoCloseable {
+
+    /**
+     * 默认的页大小
+     */
+    private final static int DEFAULT_PAGE_SIZE = 1 << 20;
+
+    /**
+     * 最小的块大小
+     */
+    private final static int MIN_CHUNK_SIZE = 64;
+
+    /**
+     * 相邻 slab class 块大小的增长因子
+     */
+    private final static double GROWTH_FACTOR = 1.25;
+
+    /**
+     * 页大小
+     */
+    private final int pageSize;
+
+    /**
+     * 最多可以申请的页数
+     */
+    private final int maxPages;
+
+    /**
+     * 已经申请的页数
+     */
+    private int allocatedPages;
+
+    /**
+     * 按块大小升序排列的 slab class
+     */
+    private final SlabClass[] slabClasses;
+
+    /**
+     * 完全空闲的页, 可以分配给任意的 slab class
+     */
+    private final ArrayDeque<Page> freePages = new ArrayDeque<>();
+
+    /**
+     * 堆内的索引, 按访问顺序排列, 头部是最近最少使用的条目
+     */
+    private final LinkedHashMap<K, Node> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Serializer<V> serializer;
+
+    /**
+     * 所有值的实际字节数之和
+     */
+    private long usedBytes;
+
+    /**
+     * 是否已经关闭
+     */
+    private boolean closed;
+
+    public OffHeapLruCache(long maxMemory, Serializer<V> serializer) {
+        this(maxMemory, DEFAULT_PAGE_SIZE, serializer);
+    }
+
+    /**
+     * 构造堆外 LRU 缓存
+     *
+     * @param maxMemory  最大的直接内存, 按页向下取整
+     * @param pageSize   页大小, 也是单个值序列化后的最大字节数
+     * @param serializer 序列化器
+     */
+    public OffHeapLruCache(long maxMemory, int pageSize, Serializer<V> serializer) {
+        if (pageSize < MIN_CHUNK_SIZE || maxMemory < pageSize) {
+            throw new IllegalArgumentException("页大小不能小于" + MIN_CHUNK_SIZE + ", 最大内存不能小于页大小");
+        }
+        this.pageSize = pageSize;
+        this.maxPages = (int) Math.min(Integer.MAX_VALUE, maxMemory / pageSize);
+        this.serializer = Objects.requireNonNull(serializer);
+        this.slabClasses = initSlabClasses(pageSize);
+    }
+
+    @Override
+    public void set(K key, V value) {
+        Objects.requireNonNull(key, "键不能为空");
+        Objects.requireNonNull(value, "值不能为空");
+        ensureOpen();
+        byte[] bytes = serializer.serialize(value);
+        if (bytes.length > pageSize) {
+            throw new IllegalArgumentException("值序列化后的大小" + bytes.length + "超出了页大小" + pageSize);
+        }
+        Node old = index.remove(key);
+        if (Objects.nonNull(old)) {
+            release(old);
+        }
+        SlabClass slabClass = slabClassFor(bytes.length);
+        Page page = allocate(slabClass);
+        int chunk = page.allocate();
+        ByteBuffer buffer = page.buffer;
+        // 通过Buffer调用: JDK9以上编译时会绑定到ByteBuffer的协变返回类型, 在JDK8上运行会抛出NoSuchMethodError
+        ((Buffer) buffer).clear();
+        ((Buffer) buffer).position(chunk * page.chunkSize);
+        buffer.put(bytes);
+        index.put(key, new Node(page, chunk, bytes.length, isRecordingStats() ? System.nanoTime() : 0L));
+        usedBytes += bytes.length;
+    }
+
+    @Override
+    public V get(K key) {
+        Objects.requireNonNull(key, "键不能为空");
+        ensureOpen();
+        Node node = index.get(key);
+        if (Objects.isNull(node)) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        return read(node);
+    }
+
+    @Override
+    public V remove(K key) {
+        Objects.requireNonNull(key, "键不能为空");
+        ensureOpen();
+        Node node = index.remove(key);
+        if (Objects.isNull(node)) {
+            return null;
+        }
+        V value = read(node);
+        release(node);
+        return value;
+    }
+
+    /**
+     * 当前缓存的元素数量
+     *
+     * @return 元素数量
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * 所有值序列化后的实际字节数之和
+     *
+     * @return 字节数
+     */
+    public long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * 已经申请的直接内存
+     *
+     * @return 字节数
+     */
+    public long allocatedBytes() {
+        return (long) allocatedPages * pageSize;
+    }
+
+    /**
+     * 关闭缓存, 清空索引并丢弃所有页的引用, 直接内存随着页被GC回收而释放. 关闭后不能再读写, 重复关闭没有影响
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // 已满的页只被索引节点引用, 其余的页还在 slab class 的可用页和全局空闲页池中
+        index.clear();
+        for (SlabClass slabClass : slabClasses) {
+            slabClass.available = null;
+        }
+        freePages.clear();
+        allocatedPages = 0;
+        usedBytes = 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<K, Node> entry : index.entrySet()) {
+            sb.append(entry.getKey()).append('=').append(read(entry.getValue())).append(", ");
+        }
+        if (sb.length() > 1) {
+            sb.delete(sb.length() - 2, sb.length());
+        }
+        return sb.append('}').toString();
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("缓存已经关闭");
+        }
+    }
+
+    /**
+     * 从直接内存中读取并反序列化
+     */
+    private V read(Node node) {
+        Page page = node.page;
+        ByteBuffer buffer = page.buffer;
+        int offset = node.chunk * page.chunkSize;
+        ((Buffer) buffer).limit(offset + node.length).position(offset);
+        try {
+            return serializer.deserialize(buffer);
+        } finally {
+            ((Buffer) buffer).clear();
+        }
+    }
+
+    /**
+     * 为指定的 slab class 找到一个有空闲块的页, 依次尝试：
+     * 该 slab class 自己的空闲块 -> 全局空闲页 -> 申请新页 -> 按 LRU 淘汰
+     *
+     * @param slabClass slab class
+     * @return 有空闲块的页
+     */
+    private Page allocate(SlabClass slabClass) {
+        Iterator<Map.Entry<K, Node>> iterator = null;
+        while (true) {
+            Page page = slabClass.available;
+            if (Objects.nonNull(page)) {
+                return page;
+            }
+            page = freePages.pollFirst();
+            if (Objects.isNull(page) && allocatedPages < maxPages) {
+                page = new Page(ByteBuffer.allocateDirect(pageSize));
+                allocatedPages++;
+            }
+            if (Objects.nonNull(page)) {
+                page.format(slabClass);
+                slabClass.addFirst(page);
+                return page;
+            }
+            // 内存已经用完, 淘汰最近最少使用的条目, 它释放的块或者腾空的页会在下一轮循环中被使用
+            if (Objects.isNull(iterator)) {
+                iterator = index.entrySet().iterator();
+            }
+            if (!iterator.hasNext()) {
+                // 索引为空时所有的页都已经归还到空闲页池, 不会走到这里
+                throw new IllegalStateException("没有可以淘汰的条目");
+            }
+            Node eldest = iterator.next().getValue();
+            iterator.remove();
+            release(eldest);
+            statsCounter.recordEviction(isRecordingStats() ? System.nanoTime() - eldest.writeTime : 0L);
+        }
+    }
+
+    /**
+     * 释放条目占用的块, 页被完全腾空时归还到全局空闲页池
+     */
+    private void release(Node node) {
+        usedBytes -= node.length;
+        Page page = node.page;
+        SlabClass slabClass = page.owner;
+        boolean wasFull = page.isFull();
+        page.free(node.chunk);
+        if (page.isEmpty()) {
+            if (!wasFull) {
+                slabClass.remove(page);
+            }
+            page.owner = null;
+            freePages.addLast(page);
+        } else if (wasFull) {
+            slabClass.addFirst(page);
+        }
+    }
+
+    /**
+     * 找到块大小能装下指定字节数的最小 slab class
+     */
+    private SlabClass slabClassFor(int length) {
+        int low = 0, high = slabClasses.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (slabClasses[mid].chunkSize < length) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return slabClasses[low];
+    }
+
+    /**
+     * 初始化 slab class, 块大小从{@link #MIN_CHUNK_SIZE}开始按{@link #GROWTH_FACTOR}递增, 最后一个等于页大小
+     */
+    private static SlabClass[] initSlabClasses(int pageSize) {
+        SlabClass[] classes = new SlabClass[64];
+        int count = 0;
+        int chunkSize = MIN_CHUNK_SIZE;
+        while (chunkSize < pageSize) {
+            if (count == classes.length) {
+                classes = Arrays.copyOf(classes, count << 1);
+            }
+            classes[count++] = new SlabClass(chunkSize);
+            // 块大小按8字节对齐
+            chunkSize = (int) Math.min(pageSize, (((long) (chunkSize * GROWTH_FACTOR) + 7) & ~7L));
+        }
+        classes = Arrays.copyOf(classes, count + 1);
+        classes[count] = new SlabClass(pageSize);
+        return classes;
+    }
+
+    /**
+     * 堆内的索引节点, 记录值存放在哪一页的哪一块
+     */
+    private static class Node {
+        final Page page;
+        final int chunk;
+
+        /**
+         * 值的实际字节数
+         */
+        final int length;
+
+        /**
+         * 写入时间, 用于统计条目的存活时间
+         */
+        final long writeTime;
+
+        Node(Page page, int chunk, int length, long writeTime) {
+            this.page = page;
+            this.chunk = chunk;
+            this.length = length;
+            this.writeTime = writeTime;
+        }
+    }
+
+    /**
+     * 块大小相同的一组页
+     */
+    private static class SlabClass {
+        final int chunkSize;
+
+        /**
+         * 还有空闲块的页, 通过{@link Page#prev}和{@link Page#next}串成双向链表,
+         * 页被腾空时可以在O(1)时间内从链表中摘除, 不需要遍历
+         */
+        Page available;
+
+        SlabClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        void addFirst(Page page) {
+            page.prev = null;
+            page.next = available;
+            if (Objects.nonNull(available)) {
+                available.prev = page;
+            }
+            available = page;
+        }
+
+        void remove(Page page) {
+            if (Objects.nonNull(page.prev)) {
+                page.prev.next = page.next;
+            } else {
+                available = page.next;
+            }
+            if (Objects.nonNull(page.next)) {
+                page.next.prev = page.prev;
+            }
+            page.prev = null;
+            page.next = null;
+        }
+    }
+
+    /**
+     * 一页直接内存. 空闲块不在堆上额外记录, 而是像 memcached 一样把链表"穿"在块里：
+     * 空闲块的前4个字节存放下一个空闲块的下标. 从未使用过的块则通过 nextUnused 指针顺序分配,
+     * 这样重新切分一页的时间复杂度也是O(1)
+     */
+    private static class Page {
+        final ByteBuffer buffer;
+
+        /**
+         * 当前所属的 slab class, 空闲页为null
+         */
+        SlabClass owner;
+        int chunkSize;
+        int chunkCount;
+
+        /**
+         * 空闲块链表的头, -1表示没有被释放过的块
+         */
+        int freeHead;
+
+        /**
+         * 下一个从未使用过的块
+         */
+        int nextUnused;
+
+        /**
+         * 已经使用的块数
+         */
+        int used;
+
+        /**
+         * 所属 slab class 的可用页链表中的前后节点
+         */
+        Page prev;
+        Page next;
+
+        Page(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * 按照 slab class 的块大小重新切分
+         */
+        void format(SlabClass slabClass) {
+            owner = slabClass;
+            chunkSize = slabClass.chunkSize;
+            chunkCount = buffer.capacity() / chunkSize;
+            freeHead = -1;
+            nextUnused = 0;
+            used = 0;
+        }
+
+        int allocate() {
+            int chunk;
+            if (freeHead >= 0) {
+                chunk = freeHead;
+                freeHead = buffer.getInt(chunk * chunkSize);
+            } else {
+                chunk = nextUnused++;
+            }
+            if (++used == chunkCount) {
+                // 页已满, 从 slab class 的可用页中移除
+                owner.remove(this);
+            }
+            return chunk;
+        }
+
+        void free(int chunk) {
+            buffer.putInt(chunk * chunkSize, freeHead);
+            freeHead = chunk;
+            used--;
+        }
+
+        boolean isFull() {
+            return used == chunkCount;
+        }
+
+        boolean isEmpty() {
+            return used == 0;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.sym.algorithm.example.cache.impl;
+
+import com.sym.algorithm.example.cache.AbstractCache;
+import com.sym.algorithm.example.cache.Serializer;
+import com.sym.algorithm.example.cache.store.MappedFileStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 两级缓存：堆内的{@link LruCache}加上基于内存映射文件的{@link MappedFileStore}.
+ * <p>
+ * 1.写入只写内存, 内存满了以后被淘汰的数据降级到文件;
+ * 2.读取先查内存, 未命中再查文件, 文件中命中的数据会被提升回内存(同时从文件中删除), 于是热点数据总是留在内存里;
+ * 3.关闭时把内存中的数据也写入文件, 下次启动时直接从文件恢复, 缓存不需要重新预热.
+ * 这样缓存的工作集可以远大于堆内存, 而且重启后仍然是热的.
+ * <p>
+ * 不是线程安全的.
+ *
+ * @author shenyanming
+ * Created on 2021/2/2 16:30
+ */
+@Slf4j
+public class TieredCache<K, V> extends AbstractCache<K, V> implements Closeable {
+
+    /**
+     * 内存层
+     */
+    private final LruCache<K, V> memory;
+
+    /**
+     * 文件层
+     */
+    private final MappedFileStore<K, V> disk;
+
+    /**
+     * 构造两级缓存, 文件已经存在时从文件恢复数据
+     *
+     * @param memoryCapacity  内存层的容量
+     * @param file            文件路径
+     * @param diskCapacity    文件大小
+     * @param keySerializer   key的序列化器
+     * @param valueSerializer 值的序列化器
+     * @throws IOException 文件读写失败或者格式不正确
+     */
+    public TieredCache(int memoryCapacity, Path file, int diskCapacity, Serializer<K> keySerializer,
+                       Serializer<V> valueSerializer) throws IOException {
+        this.disk = new MappedFileStore<>(file, diskCapacity, keySerializer, valueSerializer);
+        // 内存层淘汰的数据降级到文件层
+        this.memory = new LruCache<>(memoryCapacity, this::demote);
+        log.info("tiered cache warm start from {}: {} entries recovered in {}ms, {} bytes truncated",
+                file, disk.size(), TimeUnit.NANOSECONDS.toMillis(disk.getStartupNanos()), disk.getTruncatedBytes());
+    }
+
+    @Override
+    public void set(K key, V value) {
+        memory.set(key, value);
+        // 文件中的旧值已经过时了
+        disk.remove(key);
+    }
+
+    @Override
+    public V get(K key) {
+        Objects.requireNonNull(key, "键不能为空");
+        V value = memory.get(key);
+        if (Objects.isNull(value)) {
+            value = disk.get(key);
+            if (Objects.nonNull(value)) {
+                // 提升回内存, 可能会把内存中最久未访问的数据挤到文件中
+                disk.remove(key);
+                memory.set(key, value);
+            }
+        }
+        if (Objects.isNull(value)) {
+            statsCounter.recordMisses(1);
+        } else {
+            statsCounter.recordHits(1);
+        }
+        return value;
+    }
+
+    @Override
+    public V remove(K key) {
+        Objects.requireNonNull(key, "键不能为空");
+        V value = memory.remove(key);
+        if (Objects.isNull(value)) {
+            value = disk.get(key);
+        }
+        disk.remove(key);
+        return value;
+    }
+
+    /**
+     * 内存层的元素数量
+     */
+    public int memorySize() {
+        return memory.size();
+    }
+
+    /**
+     * 文件层的元素数量
+     */
+    public int diskSize() {
+        return disk.size();
+    }
+
+    /**
+     * 把文件层的修改刷到磁盘
+     */
+    public void flush() {
+        disk.flush();
+    }
+
+    /**
+     * 关闭缓存, 内存中的数据按照从旧到新的顺序写入文件, 这样文件满了需要丢弃时, 先丢弃的是较冷的数据.
+     * 与降级一样, 写不进文件的数据只能丢弃, 不管怎样最后都要关闭文件, 写入正常关闭的标记
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            memory.forEach(this::demote);
+        } finally {
+            disk.close();
+        }
+    }
+
+    /**
+     * 把内存层淘汰的数据降级到文件层. 单条数据超出文件容量或者压缩文件失败时, 只能丢弃这条数据,
+     * 不能让异常影响内存层的淘汰
+     */
+    private void demote(K key, V value) {
+        try {
+            disk.put(key, value);
+        } catch (RuntimeException e) {
+            log.warn("failed to demote key {} to disk, entry dropped", key, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "memory=" + memory + ", disk=" + disk.size() + " entries";
+    }
+}
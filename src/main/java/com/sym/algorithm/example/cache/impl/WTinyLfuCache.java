@@ -0,0 +1,246 @@
+package com.sym.algorithm.example.cache.impl;
+
+import com.sym.algorithm.example.cache.AbstractCache;
+import com.sym.algorithm.example.cache.expiry.Ticker;
+import com.sym.algorithm.example.cache.sketch.CountMinSketch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * W-TinyLFU 缓存, 即 Window TinyLFU, Caffeine 使用的淘汰策略.
+ * <p>
+ * 纯 LRU 的问题在于一次性的扫描(例如批量遍历)就能把真正的热点数据冲刷掉, 而纯 LFU 又无法应对突发的新热点.
+ * W-TinyLFU 把缓存分成两个区域, 并通过频次过滤器决定新数据能否进入主区域：
+ * 1.准入窗口(window)：一个很小的 LRU, 默认占1%的容量, 新数据先进入这里, 用来吸收突发流量;
+ * 2.主区域(main)：分段 LRU(SLRU), 又分为试用区(probation, 20%)和保护区(protected, 80%),
+ * 在试用区被再次访问的数据会晋升到保护区, 保护区满了就把最旧的数据降级回试用区;
+ * 3.频次过滤器(TinyLFU)：用{@link CountMinSketch}记录所有key的访问频次, 窗口淘汰出来的候选者
+ * 要和主区域的淘汰者(试用区的头节点)比较频次, 频次高的留下, 频次低的被淘汰.
+ *
+ * @author shenyanming
+ * Created on 2021/1/22 17:30
+ */
+public class WTinyLfuCache<K, V> extends AbstractCache<K, V> {
+
+    /**
+     * 准入窗口占总容量的比例
+     */
+    private final static double WINDOW_RATIO = 0.01;
+
+    /**
+     * 保护区占主区域的比例
+     */
+    private final static double PROTECTED_RATIO = 0.8;
+
+    /**
+     * 准入窗口、主区域、保护区的最大容量
+     */
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final int protectedCapacity;
+
+    /**
+     * 用于定位key所在的节点
+     */
+    private final Map<K, CacheNode<K, V, Queue>> map;
+
+    /**
+     * 准入窗口、试用区、保护区, 都是按照访问顺序排列的双向链表, 链表头是最久未访问的节点
+     */
+    private final CacheNodeList<K, V, Queue> window = new CacheNodeList<>();
+    private final CacheNodeList<K, V, Queue> probation = new CacheNodeList<>();
+    private final CacheNodeList<K, V, Queue> protect = new CacheNodeList<>();
+
+    /**
+     * 频次过滤器
+     */
+    private final CountMinSketch<K> sketch;
+
+    /**
+     * 时钟, 只在开启统计时用来记录条目的存活时间
+     */
+    private final Ticker ticker;
+
+    public WTinyLfuCache(int capacity) {
+        this(capacity, Ticker.systemTicker());
+    }
+
+    public WTinyLfuCache(int capacity, Ticker ticker) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("容量必须大于0, 当前值为：" + capacity);
+        }
+        this.windowCapacity = Math.max(1, (int) (capacity * WINDOW_RATIO));
+        this.mainCapacity = capacity - windowCapacity;
+        this.protectedCapacity = (int) (mainCapacity * PROTECTED_RATIO);
+        this.map = new HashMap<>(capacity);
+        this.sketch = new CountMinSketch<>(capacity);
+        this.ticker = Objects.requireNonNull(ticker);
+    }
+
+    @Override
+    public void set(K key, V value) {
+        Objects.requireNonNull(key, "键不能为空");
+        Objects.requireNonNull(value, "值不能为空");
+        sketch.increment(key);
+        CacheNode<K, V, Queue> node = map.get(key);
+        if (Objects.nonNull(node)) {
+            node.value = value;
+            node.writeTime = statsTicks();
+            onAccess(node);
+            return;
+        }
+        // 新数据先进入准入窗口
+        node = new CacheNode<>(key, value);
+        node.writeTime = statsTicks();
+        map.put(key, node);
+        window.addLast(node, Queue.WINDOW);
+        if (window.size > windowCapacity) {
+            evict();
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        Objects.requireNonNull(key, "键不能为空");
+        // 不管命中与否都要记录频次, 这样未命中的key下次被加入时才有机会通过准入
+        sketch.increment(key);
+        CacheNode<K, V, Queue> node = map.get(key);
+        if (Objects.isNull(node)) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        onAccess(node);
+        return node.value;
+    }
+
+    @Override
+    public V remove(K key) {
+        Objects.requireNonNull(key, "键不能为空");
+        CacheNode<K, V, Queue> node = map.remove(key);
+        if (Objects.isNull(node)) {
+            return null;
+        }
+        listOf(node).remove(node);
+        return node.value;
+    }
+
+    /**
+     * 当前缓存的元素数量
+     *
+     * @return 元素数量
+     */
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public String toString() {
+        return "window=" + window + ", probation=" + probation + ", protected=" + protect;
+    }
+
+    /**
+     * 节点被访问后调整它所在的位置
+     *
+     * @param node 节点
+     */
+    private void onAccess(CacheNode<K, V, Queue> node) {
+        switch (node.queue) {
+            case WINDOW:
+                // 窗口内就是普通的 LRU
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                // 试用区的节点再次被访问, 晋升到保护区
+                probation.remove(node);
+                protect.addLast(node, Queue.PROTECTED);
+                if (protect.size > protectedCapacity) {
+                    // 保护区超出容量, 把最久未访问的节点降级到试用区
+                    CacheNode<K, V, Queue> demoted = protect.head;
+                    protect.remove(demoted);
+                    probation.addLast(demoted, Queue.PROBATION);
+                }
+                break;
+            case PROTECTED:
+                protect.moveToLast(node);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 准入窗口超出容量时, 它最久未访问的节点作为候选者进入主区域,
+     * 主区域超出容量时, 候选者和主区域的淘汰者比较频次, 淘汰掉频次低的那个
+     */
+    private void evict() {
+        CacheNode<K, V, Queue> candidate = window.head;
+        window.remove(candidate);
+        probation.addLast(candidate, Queue.PROBATION);
+        if (probation.size + protect.size <= mainCapacity) {
+            // 主区域还有空间, 候选者直接留下
+            return;
+        }
+        // 主区域的淘汰者是试用区的头节点, 试用区为空时才从保护区选
+        CacheNode<K, V, Queue> victim = Objects.nonNull(probation.head) ? probation.head : protect.head;
+        if (victim == candidate) {
+            // 主区域容量为0的极端情况, 候选者只能被淘汰
+            evictNode(candidate);
+            return;
+        }
+        // 候选者的频次必须严格大于淘汰者, 才能把淘汰者挤出去, 否则候选者自己被淘汰
+        if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+            evictNode(victim);
+        } else {
+            evictNode(candidate);
+        }
+    }
+
+    private void evictNode(CacheNode<K, V, Queue> node) {
+        listOf(node).remove(node);
+        map.remove(node.key);
+        if (isRecordingStats()) {
+            statsCounter.recordEviction(ticker.read() - node.writeTime);
+        }
+    }
+
+    /**
+     * 未开启统计时不需要读取时钟
+     */
+    private long statsTicks() {
+        return isRecordingStats() ? ticker.read() : 0L;
+    }
+
+    private CacheNodeList<K, V, Queue> listOf(CacheNode<K, V, Queue> node) {
+        switch (node.queue) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protect;
+        }
+    }
+
+    /**
+     * 节点所在的区域
+     */
+    private enum Queue {
+        /**
+         * 准入窗口
+         */
+        WINDOW,
+
+        /**
+         * 试用区
+         */
+        PROBATION,
+
+        /**
+         * 保护区
+         */
+        PROTECTED
+    }
+}
@@ -0,0 +1,154 @@
+package com.sym.algorithm.example.cache.sketch;
+
+import com.sym.util.HashcodeUtil;
+
+import java.util.Objects;
+
+/**
+ * Count-Min Sketch, 一种用来估算元素出现频次的概率型数据结构, 思想与布隆过滤器类似：
+ * 用d个哈希函数把元素映射到d个计数器上, 新增时这d个计数器都加1, 查询时取这d个计数器的最小值.
+ * 因为哈希冲突只会让计数器偏大, 不会偏小, 所以取最小值就是最接近真实频次的估计.
+ * <p>
+ * 实现上参考了 Caffeine 的 FrequencySketch：
+ * 1.每个计数器只占4位(最大计数15), 一个long可以存放16个计数器, 缓存准入只需要比较相对的热度, 不需要精确的计数;
+ * 2.深度为4, 即4个哈希函数, 4个计数器分别位于4个不同的long中;
+ * 3.保鲜机制(aging)：累计增加的次数达到采样阈值后, 所有计数器减半, 这样过去的热点会逐渐冷却, 新的热点才有机会被准入.
+ *
+ * @author shenyanming
+ * Created on 2021/1/22 16:05
+ */
+public class CountMinSketch<E> {
+
+    /**
+     * 4个哈希函数使用的种子, 都是64位的大奇数
+     */
+    private final static long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    /**
+     * 所有计数器减半时使用的掩码, 右移1位后每4位中的最高位可能是相邻计数器移过来的, 需要把它清掉
+     */
+    private final static long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * 计数器的最大值, 4位能表示的最大值为15
+     */
+    private final static long MAX_COUNT = 0xfL;
+
+    /**
+     * 计数器数组, 每个long存放16个4位的计数器
+     */
+    private final long[] table;
+
+    /**
+     * 数组长度掩码, table.length - 1
+     */
+    private final int tableMask;
+
+    /**
+     * 采样阈值, 累计增加次数达到它时触发保鲜
+     */
+    private final int sampleSize;
+
+    /**
+     * 当前累计的增加次数
+     */
+    private int size;
+
+    /**
+     * 构造 Count-Min Sketch
+     *
+     * @param maximumSize 需要统计的元素规模, 一般就是缓存的容量
+     */
+    public CountMinSketch(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("元素规模必须大于0, 当前值为：" + maximumSize);
+        }
+        int length = tableSizeFor(maximumSize);
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        // 采样阈值为元素规模的10倍, 注意不能溢出
+        this.sampleSize = (int) Math.min(10L * maximumSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 估算元素出现的频次
+     *
+     * @param e 元素
+     * @return 频次, 最大为15
+     */
+    public int frequency(E e) {
+        int hash = spread(e);
+        // 哈希值的低2位决定使用long中的哪一组计数器(每组4个, 每个深度各用一个)
+        int start = (hash & 3) << 2;
+        long frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = indexOf(hash, i);
+            long count = (table[index] >>> ((start + i) << 2)) & MAX_COUNT;
+            frequency = Math.min(frequency, count);
+        }
+        return (int) frequency;
+    }
+
+    /**
+     * 元素出现一次, 对应的计数器都加1
+     *
+     * @param e 元素
+     */
+    public void increment(E e) {
+        int hash = spread(e);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = indexOf(hash, i);
+            int offset = (start + i) << 2;
+            // 计数器未饱和时才加1
+            if (((table[index] >>> offset) & MAX_COUNT) != MAX_COUNT) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * 保鲜：所有计数器减半
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size >>>= 1;
+    }
+
+    /**
+     * 计算第i个哈希函数对应的数组下标
+     *
+     * @param hash 元素哈希值
+     * @param i    第几个哈希函数
+     * @return 数组下标
+     */
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        // 64位的结果折叠成32位, 让高32位也参与定位. 与HashcodeUtil.hashcode(Long)相同, 直接用long计算避免装箱
+        return (int) (h ^ (h >>> 32)) & tableMask;
+    }
+
+    /**
+     * 对元素的哈希码做二次散列, 避免像整数这种连续的哈希码集中在相邻的计数器上
+     */
+    private static int spread(Object e) {
+        Objects.requireNonNull(e, "element is null");
+        return HashcodeUtil.rehash(e.hashCode());
+    }
+
+    /**
+     * 返回不小于cap的2的幂次方
+     */
+    private static int tableSizeFor(int cap) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(cap - 1);
+        return n < 0 ? 1 : Math.min(n + 1, 1 << 30);
+    }
+}
@@ -0,0 +1,131 @@
+package com.sym.algorithm.example.cache.stats;
+
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存统计数据的快照, 不可变
+ *
+ * @author shenyanming
+ * Created on 2021/1/28 10:20
+ */
+@Getter
+public class CacheStats {
+
+    private final static CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * 命中次数
+     */
+    private final long hitCount;
+
+    /**
+     * 未命中次数
+     */
+    private final long missCount;
+
+    /**
+     * 加载成功次数
+     */
+    private final long loadSuccessCount;
+
+    /**
+     * 加载失败次数
+     */
+    private final long loadFailureCount;
+
+    /**
+     * 加载总耗时(纳秒)
+     */
+    private final long totalLoadTime;
+
+    /**
+     * 淘汰次数, 包括容量淘汰和过期淘汰
+     */
+    private final long evictionCount;
+
+    /**
+     * 被淘汰条目的存活时间总和(纳秒)
+     */
+    private final long totalEvictionAge;
+
+    public CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+                      long totalLoadTime, long evictionCount, long totalEvictionAge) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+        this.totalEvictionAge = totalEvictionAge;
+    }
+
+    public static CacheStats empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 请求总次数
+     */
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * 命中率, 没有请求时为1
+     */
+    public double hitRate() {
+        long requestCount = requestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    /**
+     * 未命中率, 没有请求时为0
+     */
+    public double missRate() {
+        long requestCount = requestCount();
+        return requestCount == 0 ? 0.0 : (double) missCount / requestCount;
+    }
+
+    /**
+     * 平均每次加载的耗时(纳秒)
+     */
+    public double averageLoadPenalty() {
+        long loadCount = loadSuccessCount + loadFailureCount;
+        return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+    }
+
+    /**
+     * 被淘汰条目的平均存活时间(纳秒), 可以用来判断缓存容量或者过期时间是否合适
+     */
+    public double averageEntryAge() {
+        return evictionCount == 0 ? 0.0 : (double) totalEvictionAge / evictionCount;
+    }
+
+    /**
+     * 计算两个快照之间的差值, 用于统计一段时间内的数据
+     *
+     * @param other 更早的快照
+     * @return 差值
+     */
+    public CacheStats minus(CacheStats other) {
+        return new CacheStats(
+                Math.max(0, hitCount - other.hitCount),
+                Math.max(0, missCount - other.missCount),
+                Math.max(0, loadSuccessCount - other.loadSuccessCount),
+                Math.max(0, loadFailureCount - other.loadFailureCount),
+                Math.max(0, totalLoadTime - other.totalLoadTime),
+                Math.max(0, evictionCount - other.evictionCount),
+                Math.max(0, totalEvictionAge - other.totalEvictionAge));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hitCount=%d, missCount=%d, hitRate=%.2f%%, loadSuccess=%d, loadFailure=%d, " +
+                        "averageLoadPenalty=%.3fms, evictionCount=%d, averageEntryAge=%.3fs",
+                hitCount, missCount, hitRate() * 100, loadSuccessCount, loadFailureCount,
+                averageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1), evictionCount,
+                averageEntryAge() / TimeUnit.SECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,63 @@
+package com.sym.algorithm.example.cache.stats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线程安全的缓存统计计数器.
+ * <p>
+ * 使用{@link LongAdder}而不是{@link java.util.concurrent.atomic.AtomicLong}：AtomicLong 所有线程都在
+ * 同一个变量上CAS, 竞争激烈时大量CAS失败重试, 统计本身反而成了瓶颈. LongAdder 内部把计数分散到多个
+ * Cell 上(分段计数), 不同线程累加不同的 Cell, 读取时再求和, 写多读少的统计场景非常合适.
+ *
+ * @author shenyanming
+ * Created on 2021/1/28 10:30
+ */
+public class ConcurrentStatsCounter implements StatsCounter {
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder totalEvictionAge = new LongAdder();
+
+    @Override
+    public void recordHits(int count) {
+        hitCount.add(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        missCount.add(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        loadSuccessCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadTime) {
+        loadFailureCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    @Override
+    public void recordEviction(long age) {
+        evictionCount.increment();
+        totalEvictionAge.add(Math.max(0, age));
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadFailureCount.sum(),
+                totalLoadTime.sum(), evictionCount.sum(), totalEvictionAge.sum());
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,96 @@
+package com.sym.algorithm.example.cache.stats;
+
+/**
+ * 缓存统计计数器, 缓存在命中、未命中、淘汰、加载时调用它来记录统计数据
+ *
+ * @author shenyanming
+ * Created on 2021/1/28 10:15
+ */
+public interface StatsCounter {
+
+    /**
+     * 记录缓存命中
+     *
+     * @param count 命中次数
+     */
+    void recordHits(int count);
+
+    /**
+     * 记录缓存未命中
+     *
+     * @param count 未命中次数
+     */
+    void recordMisses(int count);
+
+    /**
+     * 记录一次成功的加载
+     *
+     * @param loadTime 加载耗时(纳秒)
+     */
+    void recordLoadSuccess(long loadTime);
+
+    /**
+     * 记录一次失败的加载(抛出异常或者加载结果为null)
+     *
+     * @param loadTime 加载耗时(纳秒)
+     */
+    void recordLoadFailure(long loadTime);
+
+    /**
+     * 记录一次淘汰, 包括容量淘汰和过期淘汰
+     *
+     * @param age 被淘汰的条目从写入到被淘汰经过的时间(纳秒)
+     */
+    void recordEviction(long age);
+
+    /**
+     * 获取当前统计数据的快照
+     *
+     * @return 快照
+     */
+    CacheStats snapshot();
+
+    /**
+     * 不做任何记录的计数器, 缓存默认使用它, 避免统计带来额外的开销
+     *
+     * @return StatsCounter
+     */
+    static StatsCounter disabled() {
+        return DisabledStatsCounter.INSTANCE;
+    }
+
+    /**
+     * 不做任何记录的计数器
+     */
+    enum DisabledStatsCounter implements StatsCounter {
+        /**
+         * 单例
+         */
+        INSTANCE;
+
+        @Override
+        public void recordHits(int count) {
+        }
+
+        @Override
+        public void recordMisses(int count) {
+        }
+
+        @Override
+        public void recordLoadSuccess(long loadTime) {
+        }
+
+        @Override
+        public void recordLoadFailure(long loadTime) {
+        }
+
+        @Override
+        public void recordEviction(long age) {
+        }
+
+        @Override
+        public CacheStats snapshot() {
+            return CacheStats.empty();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.sym.algorithm.example.cache.stats;
+
+import com.sym.algorithm.example.cache.ICache;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存统计数据的定时报告器, 周期性地通过 slf4j 输出缓存的统计快照,
+ * 同时输出最近一个周期内的增量数据, 方便观察命中率的变化趋势.
+ *
+ * @author shenyanming
+ * Created on 2021/1/28 11:05
+ */
+@Slf4j
+public class StatsReporter implements AutoCloseable {
+
+    /**
+     * 缓存名称, 用于区分日志
+     */
+    private final String name;
+
+    private final ICache<?, ?> cache;
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * 上一个周期的快照
+     */
+    private CacheStats last = CacheStats.empty();
+
+    public StatsReporter(String name, ICache<?, ?> cache) {
+        this.name = Objects.requireNonNull(name);
+        this.cache = Objects.requireNonNull(cache);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cache-stats-reporter-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 开始定时报告
+     *
+     * @param period 报告周期
+     * @param unit   时间单位
+     * @return this
+     */
+    public StatsReporter start(long period, TimeUnit unit) {
+        executor.scheduleAtFixedRate(this::report, period, period, unit);
+        return this;
+    }
+
+    /**
+     * 立即输出一次统计数据
+     */
+    public synchronized void report() {
+        try {
+            CacheStats current = cache.snapshot();
+            log.info("cache[{}] total: {}", name, current);
+            log.info("cache[{}] recent: {}", name, current.minus(last));
+            last = current;
+        } catch (Exception e) {
+            // 不能让异常中断定时任务
+            log.error("cache[{}] report stats failed", name, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
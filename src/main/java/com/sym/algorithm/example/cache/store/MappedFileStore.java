@@ -0,0 +1,424 @@
+package com.sym.algorithm.example.cache.store;
+
+import com.sym.algorithm.example.cache.Serializer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射文件的键值存储, 数据以追加日志(append-only log)的方式写入文件, 堆内只保留 key 到文件偏移量的索引.
+ * <p>
+ * 文件格式：
+ * <pre>
+ * | magic(4) | version(4) | cleanEnd(4) | record | record | ... | 全0 |
+ * record = | crc32(4) | keyLength(4) | valueLength(4) | key | value |
+ * </pre>
+ * valueLength 为-1表示删除标记(tombstone). crc32 覆盖 record 中除它自己以外的所有字节.
+ * cleanEnd 在正常关闭时记录日志的结束位置, 打开后立即清零, 用来判断上一次是否正常关闭.
+ * <p>
+ * 崩溃安全：
+ * 1.只追加不覆盖, 已经写入的 record 不会被破坏;
+ * 2.打开文件时从头扫描重建索引, 遇到校验失败的 record(写了一半就崩溃)就认为日志到此结束. 上一次没有正常关闭时,
+ * 还要把之后的区域清零, 保证后续追加的 record 之后不会残留旧数据;
+ * 3.文件写满时先把存活的 record 压缩到临时文件, 刷盘后再原子地替换原文件, 任何时刻崩溃都只会看到完整的旧文件或新文件.
+ * 压缩后存活数据仍然超过一半容量时, 按写入顺序丢弃最早的数据(FIFO).
+ * <p>
+ * 单个映射区域不能超过2GB, 不是线程安全的.
+ *
+ * @author shenyanming
+ * Created on 2021/2/2 14:10
+ */
+public class MappedFileStore<K, V> implements Closeable {
+
+    private final static int MAGIC = 0x53594D43;
+    private final static int VERSION = 1;
+    private final static int HEADER_SIZE = 12;
+    private final static int CLEAN_END_OFFSET = 8;
+    private final static int RECORD_HEADER_SIZE = 12;
+    private final static int TOMBSTONE = -1;
+
+    private final Path path;
+
+    /**
+     * 文件大小
+     */
+    private final int capacity;
+
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    /**
+     * 下一个 record 的写入位置
+     */
+    private int writePosition;
+
+    /**
+     * key 到 record 偏移量的索引
+     */
+    private Map<K, Integer> index = new HashMap<>();
+
+    /**
+     * 存活 record 的总字节数
+     */
+    private long liveBytes;
+
+    private final CRC32 crc32 = new CRC32();
+
+    /**
+     * 打开文件并重建索引所花的时间
+     */
+    private final long startupNanos;
+
+    /**
+     * 打开文件时被丢弃的不完整数据的字节数
+     */
+    private final int truncatedBytes;
+
+    /**
+     * 打开或者创建存储文件
+     *
+     * @param path            文件路径
+     * @param capacity        文件大小
+     * @param keySerializer   key的序列化器
+     * @param valueSerializer 值的序列化器
+     * @throws IOException 文件读写失败或者格式不正确
+     */
+    public MappedFileStore(Path path, int capacity, Serializer<K> keySerializer, Serializer<V> valueSerializer)
+            throws IOException {
+        if (capacity <= HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("文件太小, 当前值为：" + capacity);
+        }
+        long start = System.nanoTime();
+        this.path = Objects.requireNonNull(path);
+        this.capacity = capacity;
+        this.keySerializer = Objects.requireNonNull(keySerializer);
+        this.valueSerializer = Objects.requireNonNull(valueSerializer);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() > capacity) {
+                throw new IOException("文件大小" + channel.size() + "超出了指定的容量" + capacity);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            int magic = buffer.getInt(0);
+            if (magic == 0) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+            } else if (magic != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("不支持的文件格式: " + path);
+            }
+            this.truncatedBytes = recover();
+            // 标记为已打开, 如果没有正常关闭, 下次打开时就会发现cleanEnd与日志的结束位置不一致
+            buffer.putInt(CLEAN_END_OFFSET, 0);
+            buffer.force();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.startupNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * 写入键值对
+     *
+     * @param key   键
+     * @param value 值
+     */
+    public void put(K key, V value) {
+        Objects.requireNonNull(key, "键不能为空");
+        Objects.requireNonNull(value, "值不能为空");
+        byte[] keyBytes = keySerializer.serialize(key);
+        byte[] valueBytes = valueSerializer.serialize(value);
+        int size = RECORD_HEADER_SIZE + keyBytes.length + valueBytes.length;
+        ensureCapacity(size);
+        int position = append(keyBytes, valueBytes, valueBytes.length);
+        Integer old = index.put(key, position);
+        if (Objects.nonNull(old)) {
+            liveBytes -= recordSize(buffer, old);
+        }
+        liveBytes += size;
+    }
+
+    /**
+     * 读取值
+     *
+     * @param key 键
+     * @return 值, 不存在时返回null
+     */
+    public V get(K key) {
+        Integer position = index.get(key);
+        if (Objects.isNull(position)) {
+            return null;
+        }
+        int keyLength = buffer.getInt(position + 4);
+        int valueLength = buffer.getInt(position + 8);
+        int offset = position + RECORD_HEADER_SIZE + keyLength;
+        // 通过Buffer调用: JDK9以上编译时会绑定到ByteBuffer的协变返回类型, 在JDK8上运行会抛出NoSuchMethodError
+        ((Buffer) buffer).limit(offset + valueLength).position(offset);
+        try {
+            return valueSerializer.deserialize(buffer);
+        } finally {
+            ((Buffer) buffer).clear();
+        }
+    }
+
+    /**
+     * 删除键值对, 追加一个删除标记
+     *
+     * @param key 键
+     * @return true-键存在并被删除
+     */
+    public boolean remove(K key) {
+        if (!index.containsKey(key)) {
+            return false;
+        }
+        byte[] keyBytes = keySerializer.serialize(key);
+        ensureCapacity(RECORD_HEADER_SIZE + keyBytes.length);
+        append(keyBytes, new byte[0], TOMBSTONE);
+        // 压缩时可能已经把这个key当作最早的数据丢弃了
+        Integer old = index.remove(key);
+        if (Objects.nonNull(old)) {
+            liveBytes -= recordSize(buffer, old);
+        }
+        return true;
+    }
+
+    public boolean containsKey(K key) {
+        return index.containsKey(key);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * 打开文件并重建索引所花的时间(纳秒)
+     */
+    public long getStartupNanos() {
+        return startupNanos;
+    }
+
+    /**
+     * 打开文件时被丢弃的不完整数据的字节数, 大于0说明上一次没有正常关闭
+     */
+    public int getTruncatedBytes() {
+        return truncatedBytes;
+    }
+
+    /**
+     * 把修改刷到磁盘
+     */
+    public void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // 先把数据刷盘, 再写入正常关闭的标记
+        flush();
+        buffer.putInt(CLEAN_END_OFFSET, writePosition);
+        flush();
+        channel.close();
+    }
+
+    /**
+     * 从头扫描文件重建索引, 返回被截断的字节数
+     */
+    private int recover() {
+        int position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= capacity) {
+            int keyLength = buffer.getInt(position + 4);
+            int valueLength = buffer.getInt(position + 8);
+            if (keyLength < 0 || valueLength < TOMBSTONE) {
+                break;
+            }
+            long size = (long) RECORD_HEADER_SIZE + keyLength + Math.max(0, valueLength);
+            if (position + size > capacity || buffer.getInt(position) != checksum(buffer, position, (int) size)) {
+                break;
+            }
+            K key = readKey(buffer, position, keyLength);
+            Integer old = valueLength == TOMBSTONE ? index.remove(key) : index.put(key, position);
+            if (Objects.nonNull(old)) {
+                liveBytes -= recordSize(buffer, old);
+            }
+            if (valueLength != TOMBSTONE) {
+                liveBytes += size;
+            }
+            position += (int) size;
+        }
+        writePosition = position;
+        if (buffer.getInt(CLEAN_END_OFFSET) == position) {
+            return 0;
+        }
+        // 上一次没有正常关闭, 日志之后可能残留着写了一半的数据, 需要清零
+        int dirty = lastNonZero(buffer, position) - position;
+        if (dirty > 0) {
+            byte[] zeros = new byte[Math.min(dirty, 64 * 1024)];
+            ((Buffer) buffer).position(position);
+            for (int remaining = dirty; remaining > 0; remaining -= zeros.length) {
+                buffer.put(zeros, 0, Math.min(remaining, zeros.length));
+            }
+            ((Buffer) buffer).clear();
+            buffer.force();
+        }
+        return Math.max(0, dirty);
+    }
+
+    /**
+     * 文件空间不足时先压缩, 压缩后仍然不够就抛出异常
+     */
+    private void ensureCapacity(int size) {
+        if (writePosition + size <= capacity) {
+            return;
+        }
+        if (HEADER_SIZE + size > capacity) {
+            throw new IllegalArgumentException("单条数据的大小" + size + "超出了文件容量" + capacity);
+        }
+        try {
+            compact(size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 把存活的 record 复制到临时文件, 然后原子地替换原文件. 存活数据超过一半容量时, 丢弃最早写入的数据
+     *
+     * @param required 压缩后至少需要的剩余空间
+     */
+    private void compact(int required) throws IOException {
+        long budget = Math.min((capacity - HEADER_SIZE) / 2, capacity - HEADER_SIZE - required);
+        // 需要丢弃的最早写入的字节数
+        long toDrop = Math.max(0, liveBytes - budget);
+        Path temp = path.resolveSibling(path.getFileName() + ".compact");
+        Files.deleteIfExists(temp);
+        FileChannel newChannel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer target = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            target.putInt(0, MAGIC);
+            target.putInt(4, VERSION);
+            target.putInt(CLEAN_END_OFFSET, 0);
+            Map<K, Integer> newIndex = new HashMap<>(index.size() << 1);
+            int newPosition = HEADER_SIZE;
+            long newLiveBytes = 0;
+            for (int position = HEADER_SIZE; position < writePosition; ) {
+                int keyLength = buffer.getInt(position + 4);
+                int size = recordSize(buffer, position);
+                K key = readKey(buffer, position, keyLength);
+                Integer live = index.get(key);
+                if (Objects.nonNull(live) && live == position) {
+                    if (toDrop > 0) {
+                        toDrop -= size;
+                    } else {
+                        ByteBuffer record = buffer.duplicate();
+                        ((Buffer) record).limit(position + size).position(position);
+                        ((Buffer) target).position(newPosition);
+                        target.put(record);
+                        newIndex.put(key, newPosition);
+                        newPosition += size;
+                        newLiveBytes += size;
+                    }
+                }
+                position += size;
+            }
+            target.force();
+            // 替换之前先关闭旧的通道. 映射区域不依赖于通道, 关闭通道后旧的buffer仍然可以读写, 替换失败时还能继续使用;
+            // 但JDK8没有公开的unmap方法, 旧的映射区域只能等buffer被GC回收时才释放, 在此之前旧文件占用的空间不会归还.
+            // Windows下文件被映射时不允许替换, 所以在Windows下压缩会失败, 抛出异常并保留原文件
+            channel.close();
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                throw e;
+            }
+            channel = newChannel;
+            // 不再引用旧的映射区域, 让它尽快被GC回收
+            buffer = target;
+            ((Buffer) buffer).clear();
+            index = newIndex;
+            writePosition = newPosition;
+            liveBytes = newLiveBytes;
+        } catch (IOException | RuntimeException e) {
+            newChannel.close();
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * 在写入位置追加一个 record
+     *
+     * @return record的偏移量
+     */
+    private int append(byte[] keyBytes, byte[] valueBytes, int valueLength) {
+        int position = writePosition;
+        buffer.putInt(position + 4, keyBytes.length);
+        buffer.putInt(position + 8, valueLength);
+        ((Buffer) buffer).position(position + RECORD_HEADER_SIZE);
+        buffer.put(keyBytes);
+        buffer.put(valueBytes);
+        ((Buffer) buffer).clear();
+        int size = RECORD_HEADER_SIZE + keyBytes.length + valueBytes.length;
+        buffer.putInt(position, checksum(buffer, position, size));
+        writePosition += size;
+        return position;
+    }
+
+    private K readKey(ByteBuffer source, int position, int keyLength) {
+        int offset = position + RECORD_HEADER_SIZE;
+        ((Buffer) source).limit(offset + keyLength).position(offset);
+        try {
+            return keySerializer.deserialize(source);
+        } finally {
+            ((Buffer) source).clear();
+        }
+    }
+
+    /**
+     * 计算 record 除 crc 字段以外所有字节的校验和
+     */
+    private int checksum(ByteBuffer source, int position, int size) {
+        ((Buffer) source).limit(position + size).position(position + 4);
+        crc32.reset();
+        crc32.update(source);
+        ((Buffer) source).clear();
+        return (int) crc32.getValue();
+    }
+
+    private static int recordSize(ByteBuffer source, int position) {
+        return RECORD_HEADER_SIZE + source.getInt(position + 4) + Math.max(0, source.getInt(position + 8));
+    }
+
+    /**
+     * 从文件末尾往前找到最后一个非0字节的下一个位置, 不小于from
+     */
+    private static int lastNonZero(ByteBuffer source, int from) {
+        int position = source.capacity();
+        // 按long比较, 比逐字节快8倍
+        while (position - 8 >= from && source.getLong(position - 8) == 0L) {
+            position -= 8;
+        }
+        while (position > from && source.get(position - 1) == 0) {
+            position--;
+        }
+        return position;
+    }
+}
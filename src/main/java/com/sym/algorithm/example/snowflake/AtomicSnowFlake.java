@@ -0,0 +1,273 @@
+package com.sym.algorithm.example.snowflake;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * 无锁的雪花算法，ID的位布局由{@link SnowFlakeLayout}指定，默认与{@link SymSnowFlake}相同。
+ *
+ * {@link SymSnowFlake}用synchronized保护 lastTimeStamp 和 serialNum 两个变量，所有线程都串行在同一把锁上。
+ * 这里把它们合并成一个64位的状态字，放在一个{@link AtomicLong}里：
+ * 高位是（时间戳-基本时间戳），低位是这一毫秒内最后一个已经分配的序列号，
+ * 生成ID就是读取状态字、计算新的状态字、CAS写回，失败了就重试，整个过程不需要加锁。
+ *
+ * 因为同一毫秒内的序列号是连续的，{@link #nextIDs(int)}可以用一次CAS预留连续的n个序列号，
+ * 这n个ID在数值上也是连续的。
+ *
+ * 借用时间模式（maxBorrowMillis > 0）：
+ * 状态字中的时间戳是一个逻辑时钟，它只会前进不会后退。NTP把系统时间往回调时，不再拒绝生成ID，
+ * 而是沿用逻辑时钟继续分配序列号；这一毫秒的序列号用完后，直接借用下一毫秒，而不是等待系统时间。
+ * 逻辑时钟最多只能领先系统时间 maxBorrowMillis 毫秒，超出后才真正等待（park，不会空转占用CPU）。
+ * 同样的，正常情况下某一毫秒的序列号用完了，也可以借用下一毫秒，突发流量不需要等待。
+ * 回拨次数、借用的毫秒数、等待次数都会被记录下来，便于监控告警。
+ *
+ * @author ym.shen
+ * @date 2021/2/4 10:30
+ */
+@Slf4j
+public class AtomicSnowFlake implements ISnowFlake {
+
+    /**
+     * 位布局
+     */
+    private final SnowFlakeLayout layout;
+
+    /**
+     * 从位布局中取出来的参数，生成ID时频繁使用
+     */
+    private final long epoch;
+    private final int serialNumberBits;
+    private final long maxSerialNumber;
+    private final int timeStampLeftMove;
+
+    /**
+     * 数据中心和机器编码左移到位后的值，每个ID都一样，提前算好
+     */
+    private final long node;
+
+    /**
+     * 状态字：（逻辑时间戳-基本时间戳） << 序列号位数 | 最后分配的序列号
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * 逻辑时钟最多可以领先系统时间多少毫秒，0表示不允许借用，时钟回拨时直接拒绝
+     */
+    private final long maxBorrowMillis;
+
+    /**
+     * 时钟（毫秒）
+     */
+    private final LongSupplier clock;
+
+    /**
+     * 观察到的系统时间的最大值，用来识别时钟回拨
+     */
+    private final AtomicLong wallClock = new AtomicLong();
+
+    /**
+     * 时钟回拨的次数
+     */
+    private final LongAdder rollbackCount = new LongAdder();
+
+    /**
+     * 借用的毫秒数
+     */
+    private final LongAdder borrowedMillis = new LongAdder();
+
+    /**
+     * 序列号用完且不能再借用时, 等待系统时间的次数和总时间
+     */
+    private final LongAdder exhaustionWaits = new LongAdder();
+    private final LongAdder exhaustionWaitNanos = new LongAdder();
+
+    public AtomicSnowFlake(long dataCenterId, long machineCode) {
+        this(dataCenterId, machineCode, 0);
+    }
+
+    public AtomicSnowFlake(long dataCenterId, long machineCode, long maxBorrowMillis) {
+        this(dataCenterId, machineCode, maxBorrowMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * 构造无锁的雪花算法
+     *
+     * @param dataCenterId    数据中心
+     * @param machineCode     机器编码
+     * @param maxBorrowMillis 逻辑时钟最多可以领先系统时间多少毫秒，0表示时钟回拨时拒绝生成ID
+     * @param clock           时钟（毫秒）
+     */
+    public AtomicSnowFlake(long dataCenterId, long machineCode, long maxBorrowMillis, LongSupplier clock) {
+        this(SnowFlakeLayout.DEFAULT, dataCenterId, machineCode, maxBorrowMillis, clock);
+    }
+
+    /**
+     * 使用自定义的位布局构造无锁的雪花算法
+     *
+     * @param layout          位布局
+     * @param dataCenterId    数据中心
+     * @param machineCode     机器编码
+     * @param maxBorrowMillis 逻辑时钟最多可以领先系统时间多少毫秒，0表示时钟回拨时拒绝生成ID
+     * @param clock           时钟（毫秒）
+     */
+    public AtomicSnowFlake(SnowFlakeLayout layout, long dataCenterId, long machineCode, long maxBorrowMillis,
+                           LongSupplier clock) {
+        layout.checkNode(dataCenterId, machineCode);
+        if (maxBorrowMillis < 0) {
+            throw new IllegalArgumentException("借用时间不能为负数，当前值为：" + maxBorrowMillis);
+        }
+        this.layout = layout;
+        this.epoch = layout.getEpoch();
+        this.serialNumberBits = layout.getSerialNumberBits();
+        this.maxSerialNumber = layout.getMaxSerialNumber();
+        this.timeStampLeftMove = layout.getTimeStampLeftMove();
+        this.node = layout.node(dataCenterId, machineCode);
+        this.maxBorrowMillis = maxBorrowMillis;
+        this.clock = clock;
+    }
+
+    @Override
+    public long nextID() {
+        return toID(reserve(1));
+    }
+
+    /**
+     * 批量获取ID，一次CAS预留连续的n个序列号
+     *
+     * @param n 数量，不能超过一毫秒内的序列号总数，默认布局下为4096
+     * @return ID数组，数值连续递增
+     */
+    @Override
+    public long[] nextIDs(int n) {
+        if (n <= 0 || n > maxSerialNumber + 1) {
+            throw new IllegalArgumentException("数量只允许在[1," + (maxSerialNumber + 1) + "]之间，当前值为：" + n);
+        }
+        long first = toID(reserve(n));
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = first + i;
+        }
+        return ids;
+    }
+
+    /**
+     * 位布局，可以用来解码生成的ID
+     */
+    public SnowFlakeLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * 时钟回拨的次数
+     */
+    public long getRollbackCount() {
+        return rollbackCount.sum();
+    }
+
+    /**
+     * 借用的毫秒数
+     */
+    public long getBorrowedMillis() {
+        return borrowedMillis.sum();
+    }
+
+    /**
+     * 序列号用完且不能再借用时，等待系统时间的次数
+     */
+    public long getExhaustionWaits() {
+        return exhaustionWaits.sum();
+    }
+
+    /**
+     * 等待系统时间的总时间（纳秒）
+     */
+    public long getExhaustionWaitNanos() {
+        return exhaustionWaitNanos.sum();
+    }
+
+    /**
+     * 预留n个序列号
+     *
+     * @param n 数量
+     * @return 第一个序列号对应的状态字
+     */
+    private long reserve(int n) {
+        while (true) {
+            // 先读状态字再读时钟，这样状态字中的时间戳（不是借来的话）一定不会大于读到的时钟
+            long current = state.get();
+            long lastTimeStamp = current >>> serialNumberBits;
+            long nowTimeStamp = currentTimeMillis() - epoch;
+            long next;
+            if (nowTimeStamp > lastTimeStamp) {
+                // 新的一毫秒，序列号从0开始
+                next = nowTimeStamp << serialNumberBits | (n - 1);
+            } else if (nowTimeStamp < lastTimeStamp && maxBorrowMillis == 0) {
+                throw new RuntimeException("系统时间被后退,拒绝生成id");
+            } else if ((current & maxSerialNumber) + n <= maxSerialNumber) {
+                // 同一毫秒，或者时钟回拨后沿用逻辑时钟
+                next = current + n;
+            } else if (lastTimeStamp + 1 - nowTimeStamp <= maxBorrowMillis) {
+                // 借用下一毫秒
+                next = (lastTimeStamp + 1) << serialNumberBits | (n - 1);
+            } else {
+                // 借用的时间已经达到上限，等待系统时间追上来
+                awaitClock(lastTimeStamp + 1 - maxBorrowMillis + epoch);
+                continue;
+            }
+            layout.checkTimeStamp((next >>> serialNumberBits) + epoch);
+            if (state.compareAndSet(current, next)) {
+                if ((next >>> serialNumberBits) > Math.max(nowTimeStamp, lastTimeStamp)) {
+                    borrowedMillis.increment();
+                }
+                return next - n + 1;
+            }
+        }
+    }
+
+    /**
+     * 读取系统时间，并识别时钟回拨
+     */
+    private long currentTimeMillis() {
+        // 先读最大值再读时钟，读到的时钟比最大值还小，只能是时钟被往回调了
+        long highest = wallClock.get();
+        long now = clock.getAsLong();
+        if (now > highest) {
+            wallClock.compareAndSet(highest, now);
+        } else if (now < highest && wallClock.compareAndSet(highest, now)) {
+            // 把最大值降下来，同一次回拨只记录一次
+            rollbackCount.increment();
+            log.warn("clock moved backwards by {}ms, {}", highest - now,
+                    maxBorrowMillis > 0 ? "keep issuing ids from logical clock" : "refusing to generate id");
+        }
+        return now;
+    }
+
+    /**
+     * 等待系统时间到达指定的时间戳，距离目标时间还很远时按毫秒park，快到的时候缩短park的时间
+     *
+     * @param target 目标时间戳（毫秒）
+     */
+    private void awaitClock(long target) {
+        exhaustionWaits.increment();
+        long start = System.nanoTime();
+        long now;
+        while ((now = currentTimeMillis()) < target) {
+            long remaining = target - now;
+            LockSupport.parkNanos(remaining > 1 ? TimeUnit.MILLISECONDS.toNanos(remaining - 1)
+                    : TimeUnit.MICROSECONDS.toNanos(50));
+        }
+        exhaustionWaitNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * 状态字转换为ID
+     */
+    private long toID(long state) {
+        return (state >>> serialNumberBits) << timeStampLeftMove | node | (state & maxSerialNumber);
+    }
+}
@@ -0,0 +1,261 @@
+package com.sym.algorithm.example.snowflake;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 预生成ID的雪花算法，参考百度UidGenerator的CachedUidGenerator。
+ *
+ * 后台线程提前调用{@link ISnowFlake}生成一批ID放进环形缓冲区（RingBuffer），业务线程只从缓冲区里取，
+ * 突发流量时不需要在请求线程上等锁或者等下一毫秒：
+ *
+ * 1.tail是生产者最后写入的序号，cursor是消费者最后取走的序号，两者都只增不减，序号 & mask 就是槽位下标；
+ * 2.取ID：读一次tail（volatile）判断是否还有可用的ID，读出槽位的值，再CAS推进cursor。
+ * 生产者只有在cursor越过某个槽位之后才会覆盖它，所以CAS成功就说明读出的值是有效的，不需要UidGenerator那样的槽位标记；
+ * 3.填充：剩余的ID少于 bufferSize * paddingFactor% 时，由取ID的线程触发一次异步填充，把缓冲区填满；
+ * 也可以指定固定的周期定时填充；缓冲区被取空时，取ID的线程自己同步填充，保证一定能拿到ID。
+ *
+ * 注意：ID中的时间戳是生成ID的时间而不是取走ID的时间，缓冲区越大，两者的差距可能越大。
+ *
+ * @author ym.shen
+ * @date 2021/2/5 17:20
+ */
+@Slf4j
+public class CachedSnowFlake implements ISnowFlake, AutoCloseable {
+
+    private final static int DEFAULT_BUFFER_SIZE = 8192;
+    private final static int DEFAULT_PADDING_FACTOR = 50;
+
+    /**
+     * 真正生成ID的雪花算法
+     */
+    private final ISnowFlake delegate;
+
+    /**
+     * 环形缓冲区，大小是2的幂
+     */
+    private final long[] slots;
+    private final int mask;
+
+    /**
+     * 生产者最后写入的序号
+     */
+    private final PaddedAtomicLong tail = new PaddedAtomicLong(-1);
+
+    /**
+     * 消费者最后取走的序号
+     */
+    private final PaddedAtomicLong cursor = new PaddedAtomicLong(-1);
+
+    /**
+     * 每次向delegate批量获取ID的最大数量
+     */
+    private final int maxBatch;
+
+    /**
+     * 剩余的ID少于这个值时触发异步填充
+     */
+    private final int paddingThreshold;
+
+    /**
+     * 是否已经有填充任务在执行，避免重复提交
+     */
+    private final AtomicBoolean padding = new AtomicBoolean();
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * 缓冲区被取空，只能在取ID的线程上同步填充的次数
+     */
+    private final LongAdder emptyTakes = new LongAdder();
+
+    public CachedSnowFlake(long dataCenterId, long machineCode) {
+        this(new SymSnowFlake(dataCenterId, machineCode), DEFAULT_BUFFER_SIZE, DEFAULT_PADDING_FACTOR, 0);
+    }
+
+    /**
+     * 构造预生成ID的雪花算法，构造时先把缓冲区填满
+     *
+     * @param delegate       真正生成ID的雪花算法
+     * @param bufferSize     缓冲区大小，必须是2的幂
+     * @param paddingFactor  填充阈值，剩余的ID少于缓冲区的百分之几时触发填充，取值范围(0,100)
+     * @param scheduleMillis 定时填充的周期（毫秒），0表示不定时填充
+     */
+    public CachedSnowFlake(ISnowFlake delegate, int bufferSize, int paddingFactor, long scheduleMillis) {
+        if (bufferSize <= 0 || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("缓冲区大小必须是2的幂，当前值为：" + bufferSize);
+        }
+        if (paddingFactor <= 0 || paddingFactor >= 100) {
+            throw new IllegalArgumentException("填充阈值只允许在(0,100)之间，当前值为：" + paddingFactor);
+        }
+        if (scheduleMillis < 0) {
+            throw new IllegalArgumentException("定时填充的周期不能为负数，当前值为：" + scheduleMillis);
+        }
+        this.delegate = Objects.requireNonNull(delegate);
+        this.slots = new long[bufferSize];
+        this.mask = bufferSize - 1;
+        this.maxBatch = maxBatch(delegate);
+        this.paddingThreshold = (int) ((long) bufferSize * paddingFactor / 100);
+        // 先填满缓冲区再创建后台线程，delegate生成ID失败时不会留下没有关闭的线程池
+        paddingBuffer();
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "snowflake-padding");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (scheduleMillis > 0) {
+            executor.scheduleWithFixedDelay(this::asyncPadding, scheduleMillis, scheduleMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public long nextID() {
+        while (true) {
+            long current = cursor.get();
+            long available = tail.get() - current;
+            if (available <= 0) {
+                emptyTakes.increment();
+                paddingBuffer();
+                continue;
+            }
+            // 先读值再CAS，槽位被覆盖的前提是cursor已经越过它，那样CAS一定会失败
+            long id = slots[(int) (current + 1) & mask];
+            if (cursor.compareAndSet(current, current + 1)) {
+                if (available - 1 < paddingThreshold) {
+                    asyncPadding();
+                }
+                return id;
+            }
+        }
+    }
+
+    /**
+     * 批量获取ID，一次CAS取走连续的n个ID
+     *
+     * @param n 数量，不能超过缓冲区大小
+     * @return ID数组，按生成顺序递增
+     */
+    @Override
+    public long[] nextIDs(int n) {
+        if (n <= 0 || n > slots.length) {
+            throw new IllegalArgumentException("数量只允许在[1," + slots.length + "]之间，当前值为：" + n);
+        }
+        long[] ids = new long[n];
+        while (true) {
+            long current = cursor.get();
+            long available = tail.get() - current;
+            if (available < n) {
+                emptyTakes.increment();
+                paddingBuffer();
+                continue;
+            }
+            int from = (int) (current + 1) & mask;
+            int first = Math.min(n, slots.length - from);
+            System.arraycopy(slots, from, ids, 0, first);
+            System.arraycopy(slots, 0, ids, first, n - first);
+            if (cursor.compareAndSet(current, current + n)) {
+                if (available - n < paddingThreshold) {
+                    asyncPadding();
+                }
+                return ids;
+            }
+        }
+    }
+
+    /**
+     * 缓冲区中剩余的ID数量
+     */
+    public long remaining() {
+        return tail.get() - cursor.get();
+    }
+
+    /**
+     * 缓冲区被取空，只能在取ID的线程上同步填充的次数，持续增长说明缓冲区太小或者填充阈值太低
+     */
+    public long getEmptyTakes() {
+        return emptyTakes.sum();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * 提交一次异步填充，已经有填充任务时直接返回
+     */
+    private void asyncPadding() {
+        if (!padding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    paddingBuffer();
+                } catch (RuntimeException e) {
+                    // 例如时钟回拨，下一次触发时重试，取空后取ID的线程会同步填充并抛出异常
+                    log.error("padding snowflake ring buffer failed", e);
+                } finally {
+                    padding.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 已经关闭了，之后只能同步填充
+            padding.set(false);
+        }
+    }
+
+    /**
+     * 把缓冲区填满，同一时刻只有一个生产者
+     */
+    private synchronized void paddingBuffer() {
+        long current = tail.get();
+        long free = slots.length - (current - cursor.get());
+        while (free > 0) {
+            int batch = (int) Math.min(free, maxBatch);
+            long[] ids = delegate.nextIDs(batch);
+            for (int i = 0; i < batch; i++) {
+                // 符号位固定为0，负数说明delegate的时间戳已经溢出，不能放进缓冲区
+                if (ids[i] < 0) {
+                    throw new RuntimeException("时间戳超出了位布局的范围,拒绝生成id");
+                }
+                slots[(int) (current + 1 + i) & mask] = ids[i];
+            }
+            current += batch;
+            free -= batch;
+            // 写完槽位后再发布tail，消费者读到新的tail就一定能看到槽位的值
+            tail.lazySet(current);
+        }
+    }
+
+    /**
+     * {@link AtomicSnowFlake}一次批量获取的ID不能超过一毫秒内的序列号总数，
+     * 其它实现按默认布局一毫秒内的序列号总数分批
+     */
+    private static int maxBatch(ISnowFlake delegate) {
+        SnowFlakeLayout layout = delegate instanceof AtomicSnowFlake
+                ? ((AtomicSnowFlake) delegate).getLayout() : SnowFlakeLayout.DEFAULT;
+        return (int) layout.getMaxSerialNumber() + 1;
+    }
+
+    /**
+     * 填充7个long，避免tail和cursor落在同一个缓存行里，生产者和消费者互相干扰（伪共享）
+     */
+    private static final class PaddedAtomicLong extends AtomicLong {
+        private final static long serialVersionUID = 1L;
+
+        long p1, p2, p3, p4, p5, p6, p7;
+
+        PaddedAtomicLong(long initialValue) {
+            super(initialValue);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.sym.algorithm.example.snowflake;
+
+/**
+ * 雪花算法ID生成器
+ *
+ * @author ym.shen
+ * @date 2021/2/4 10:00
+ */
+public interface ISnowFlake {
+
+    /**
+     * 获取分布式唯一性ID
+     *
+     * @return ID
+     */
+    long nextID();
+
+    /**
+     * 批量获取分布式唯一性ID，默认逐个调用{@link #nextID()}
+     *
+     * @param n 数量
+     * @return ID数组，按生成顺序递增
+     */
+    default long[] nextIDs(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("数量必须大于0，当前值为：" + n);
+        }
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = nextID();
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,275 @@
+package com.sym.algorithm.example.snowflake;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.sym.algorithm.example.snowflake.SymSnowFlake.tilNextMillis;
+
+/**
+ * 按线程划分序列号的雪花算法，ID的位布局由{@link SnowFlakeLayout}指定，只是把序列号再拆成两段，默认布局下为：
+ *
+ * 0 | 41位时间戳 | 5位数据中心 | 5位机器编码 | laneBits位通道号 | (12-laneBits)位通道内序列号
+ *
+ * 即使是{@link AtomicSnowFlake}，所有线程也在同一个状态字上CAS，线程很多时CAS失败重试的次数会急剧上升。
+ * 这里把序列号空间划分成 2^laneBits 个通道（lane），每个线程第一次生成ID时独占一个通道，
+ * 之后只在自己的通道里生成ID，通道的状态只有它自己读写，不需要加锁，也没有CAS。
+ * 通道号不同，ID就不可能重复，所以对于一组数据中心和机器编码，生成的ID仍然全局唯一。
+ *
+ * 1.通道内的序列号用完后，等到下一毫秒，序列号从0开始（滚动到下一毫秒）；
+ * 2.独占通道的线程结束后，通道可以被其它线程回收，通道自己的时间戳和序列号保留下来，所以回收后依然不会重复；
+ * 3.最后一个通道不会被独占，线程数超过通道数时，没有抢到通道的线程共用它，它内部用CAS保证线程安全；
+ * 4.没有抢到通道的线程并不会一直留在共用通道，每隔{@link #LEASE_RETRY_INTERVAL}次调用，或者在共用通道上CAS失败之后，
+ * 会重新尝试抢一个通道，这样独占通道的线程结束后，它的通道可以尽快被还在共用通道上竞争的线程回收。
+ * 从共用通道切换到独占通道时，先等到下一毫秒，因为共用通道的通道号最大，同一毫秒内切换会让ID变小。
+ *
+ * 代价是每个通道每毫秒只有 序列号总数/2^laneBits 个序列号，所以通道数应该与生成ID的线程数相当，不宜过大。
+ * 注意：同一个线程生成的ID是递增的，但不同线程之间只能保证毫秒级别的先后顺序。
+ * JVM无法获取当前线程运行在哪个CPU核上，所以按线程而不是按CPU核划分通道。
+ *
+ * @author ym.shen
+ * @date 2021/2/5 14:00
+ */
+public class LaneSnowFlake implements ISnowFlake {
+
+    /**
+     * 没有独占通道的线程，每隔多少次调用重新尝试抢一个通道，必须是2的幂
+     */
+    private final static int LEASE_RETRY_INTERVAL = 1024;
+
+    /**
+     * 位布局
+     */
+    private final SnowFlakeLayout layout;
+
+    /**
+     * 基本时间戳和时间戳需要左移的位数
+     */
+    private final long epoch;
+    private final int timeStampLeftMove;
+
+    /**
+     * 数据中心和机器编码左移到位后的值
+     */
+    private final long node;
+
+    /**
+     * 通道内序列号的位数和最大值
+     */
+    private final long serialBits;
+    private final long maxSerial;
+
+    /**
+     * 可以被独占的通道
+     */
+    private final Lane[] lanes;
+
+    /**
+     * 共用通道的状态字：（时间戳-基本时间戳） << serialBits | 最后分配的序列号
+     */
+    private final AtomicLong sharedState = new AtomicLong();
+
+    /**
+     * 共用通道的通道号左移到位后的值
+     */
+    private final long sharedLane;
+
+    /**
+     * 当前线程独占的通道
+     */
+    private final ThreadLocal<LocalLane> localLane = ThreadLocal.withInitial(LocalLane::new);
+
+    public LaneSnowFlake(long dataCenterId, long machineCode, int laneBits) {
+        this(SnowFlakeLayout.DEFAULT, dataCenterId, machineCode, laneBits);
+    }
+
+    /**
+     * 构造按线程划分序列号的雪花算法
+     *
+     * @param layout       位布局
+     * @param dataCenterId 数据中心
+     * @param machineCode  机器编码
+     * @param laneBits     通道号的位数，取值范围[0,序列号位数]，通道数为2^laneBits，其中一个是共用通道
+     */
+    public LaneSnowFlake(SnowFlakeLayout layout, long dataCenterId, long machineCode, int laneBits) {
+        layout.checkNode(dataCenterId, machineCode);
+        int serialNumberBits = layout.getSerialNumberBits();
+        if (laneBits < 0 || laneBits > serialNumberBits) {
+            throw new IllegalArgumentException("通道号的位数只允许在[0," + serialNumberBits + "]之间,当前值为：" + laneBits);
+        }
+        this.layout = layout;
+        this.epoch = layout.getEpoch();
+        this.timeStampLeftMove = layout.getTimeStampLeftMove();
+        this.node = layout.node(dataCenterId, machineCode);
+        this.serialBits = serialNumberBits - laneBits;
+        this.maxSerial = ~(-1L << serialBits);
+        int laneCount = 1 << laneBits;
+        this.lanes = new Lane[laneCount - 1];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane((long) i << serialBits);
+        }
+        this.sharedLane = (long) (laneCount - 1) << serialBits;
+    }
+
+    @Override
+    public long nextID() {
+        LocalLane local = localLane.get();
+        Lane lane = local.lane;
+        if (lane == null || lane.owner.get() != Thread.currentThread()) {
+            // 第一次调用，以及之后每隔LEASE_RETRY_INTERVAL次调用，重新尝试抢一个通道
+            if ((local.sharedCalls++ & (LEASE_RETRY_INTERVAL - 1)) != 0 || (lane = lease(local)) == null) {
+                return nextShared(local);
+            }
+            if (local.lastSharedTimeStamp > 0) {
+                // 同一个线程生成的ID必须递增
+                tilNextMillis(local.lastSharedTimeStamp);
+            }
+        }
+        return lane.next();
+    }
+
+    /**
+     * 位布局，可以用来解码生成的ID
+     */
+    public SnowFlakeLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * 当前线程是否独占了一个通道，还没有独占时先尝试抢一个
+     *
+     * @return true-独占
+     */
+    public boolean hasExclusiveLane() {
+        LocalLane local = localLane.get();
+        Lane lane = local.lane;
+        return (lane != null && lane.owner.get() == Thread.currentThread()) || lease(local) != null;
+    }
+
+    /**
+     * 为当前线程分配一个通道：没有主人的通道，或者主人已经结束的通道
+     *
+     * @param local 当前线程的通道，抢到的通道记录在这里
+     * @return 通道，全部被占用时返回null
+     */
+    private Lane lease(LocalLane local) {
+        Thread current = Thread.currentThread();
+        for (Lane lane : lanes) {
+            Thread owner = lane.owner.get();
+            // 通过isAlive()观察到线程已经结束，就能看到它对通道状态的所有修改
+            if ((owner == null || !owner.isAlive()) && lane.owner.compareAndSet(owner, current)) {
+                local.lane = lane;
+                return lane;
+            }
+        }
+        local.lane = null;
+        return null;
+    }
+
+    /**
+     * 在共用通道中生成ID
+     *
+     * @param local 当前线程的通道，CAS失败时让下一次调用重新尝试抢通道
+     */
+    private long nextShared(LocalLane local) {
+        while (true) {
+            long current = sharedState.get();
+            long lastTimeStamp = current >>> serialBits;
+            long nowTimeStamp = System.currentTimeMillis() - epoch;
+            long next;
+            if (nowTimeStamp > lastTimeStamp) {
+                next = nowTimeStamp << serialBits;
+            } else if (nowTimeStamp < lastTimeStamp) {
+                throw new RuntimeException("系统时间被后退,拒绝生成id");
+            } else if ((current & maxSerial) < maxSerial) {
+                next = current + 1;
+            } else {
+                tilNextMillis(lastTimeStamp + epoch);
+                continue;
+            }
+            layout.checkTimeStamp((next >>> serialBits) + epoch);
+            if (sharedState.compareAndSet(current, next)) {
+                local.lastSharedTimeStamp = (next >>> serialBits) + epoch;
+                return (next >>> serialBits) << timeStampLeftMove | node | sharedLane | (next & maxSerial);
+            }
+            // 共用通道上出现了竞争，下一次调用时不等到LEASE_RETRY_INTERVAL，直接重新尝试抢通道
+            local.sharedCalls = 0;
+        }
+    }
+
+    /**
+     * 线程本地的通道信息，只有所属的线程会读写
+     */
+    private static final class LocalLane {
+
+        /**
+         * 独占的通道，没有抢到通道时为null
+         */
+        Lane lane;
+
+        /**
+         * 没有独占通道时，在共用通道上生成ID的次数
+         */
+        int sharedCalls;
+
+        /**
+         * 最后一次在共用通道上生成ID的时间戳
+         */
+        long lastSharedTimeStamp;
+    }
+
+    /**
+     * 独占通道，只有主人线程会读写它的状态
+     */
+    private final class Lane {
+
+        /**
+         * 前后各填充7个long，避免不同线程的通道状态落在同一个缓存行里（伪共享）
+         */
+        long p1, p2, p3, p4, p5, p6, p7;
+
+        /**
+         * 上一次生成ID的时间戳
+         */
+        long lastTimeStamp;
+
+        /**
+         * 通道内的序列号
+         */
+        long serialNum;
+
+        long q1, q2, q3, q4, q5, q6, q7;
+
+        /**
+         * 通道号左移到位后的值
+         */
+        final long lane;
+
+        /**
+         * 独占这个通道的线程
+         */
+        final AtomicReference<Thread> owner = new AtomicReference<>();
+
+        Lane(long lane) {
+            this.lane = lane;
+        }
+
+        long next() {
+            long nowTimeStamp = System.currentTimeMillis();
+            if (nowTimeStamp < lastTimeStamp) {
+                throw new RuntimeException("系统时间被后退,拒绝生成id");
+            }
+            if (nowTimeStamp == lastTimeStamp) {
+                serialNum = serialNum + 1 & maxSerial;
+                if (serialNum == 0L) {
+                    // 通道内的序列号用完了，滚动到下一毫秒
+                    nowTimeStamp = tilNextMillis(lastTimeStamp);
+                }
+            } else {
+                serialNum = 0L;
+            }
+            layout.checkTimeStamp(nowTimeStamp);
+            lastTimeStamp = nowTimeStamp;
+            return (nowTimeStamp - epoch) << timeStampLeftMove | node | lane | serialNum;
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package com.sym.algorithm.example.snowflake;
 
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Twitter的雪花算法，用于分布式系统中生成唯一性ID，理解这个算法前需要先去理解下Java的位运算（ << 、 &  、 | ），雪花算法思想是：
@@ -13,61 +13,27 @@ import java.time.ZoneOffset;
  * 固定为0，    41位表示时间戳    5位表示   5位表示      12位表示
  * 表示符号位                   数据中心   机器编码     序列号
  *
+ * 各部分的位数和基本时间戳可以通过{@link SnowFlakeLayout}配置，上面是默认的布局。
+ * 这个实现使用synchronized保证线程安全，高并发下可以使用无锁的{@link AtomicSnowFlake}
+ *
  * @author ym.shen
  * @date 2019/6/5 15:59
  */
-public class SymSnowFlake {
-
-    /**
-     * 设置一个基本时间戳，当前时间戳-基本时间戳作为41位时间戳位
-     */
-    private static long baseTimeStamp = LocalDateTime.of(2019, 1, 1, 0, 0, 0)
-            .toInstant(ZoneOffset.of("+8"))
-            .toEpochMilli();
-    /**
-     * 数据中心的位数
-     */
-    private final static long DATA_CENTER_BIT = 5;
-    /**
-     * 机器编码的位数
-     */
-    private final static long MACHINE_CODE_BIT = 5;
-    /**
-     * 序列号的位数 serialNumBits
-     */
-    private final static long SERIAL_NUMBER_BIT = 12;
+public class SymSnowFlake implements ISnowFlake {
 
     /**
-     * 数据中心允许的最大值：31（5位二进制最多只能表示32个数，从0开始计数，总共为0-31）
-     */
-    private final static long MAX_DATA_CENTER = ~(-1 << 5);
-    /**
-     * 机器编码允许的最大值：31
+     * 序列号用完后等待下一毫秒时，每次让出CPU的时间（纳秒）
      */
-    private final static long MAX_MACHINE_CODE = ~(-1 << 5);
-    /**
-     * 序列号允许的最大值：4095
-     */
-    private final static long MAX_SERIAL_NUMBER = ~(-1 << 12);
+    private final static long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
 
-    /*
-     * 这里需要好好理解下，是一个关键。由前面的介绍知道，机器编码位于序列号的前面，序列号规定为12位，
-     * 机器编码本身定义为long类型，它也是64位，但我们逻辑上只允许它只有5位，也就是说它实际上有用的就只有这5位
-     * 所以在最后组装64位结果时，我们要把这5位左移12位，到达它组装64位结果的正确位置上
-     */
-    /**
-     * 机器编码需要左移的位数（12位）
-     */
-    private static long machineCodeLeftMove = SERIAL_NUMBER_BIT;
     /**
-     * 数据中心需要左移的位数（17位）
+     * 位布局
      */
-    private static long dataCenterLeftMove = machineCodeLeftMove + MACHINE_CODE_BIT;
+    private final SnowFlakeLayout layout;
     /**
-     * 时间戳需要左移的位数（22位）
+     * 序列号允许的最大值
      */
-    private static long timeStampLeftMove = dataCenterLeftMove + DATA_CENTER_BIT;
-
+    private final long maxSerialNumber;
     /**
      * 数据中心
      */
@@ -89,12 +55,20 @@ public class SymSnowFlake {
      * 构造方法需要指定 数据中心和机器编码的值，这两个值合起来必须唯一
      */
     public SymSnowFlake(long dataCenterId, long machineCode) {
-        if (dataCenterId > MAX_DATA_CENTER || MAX_DATA_CENTER < 0) {
-            throw new IllegalArgumentException("数据中心ID只允许在[0,31]之间,当前值为：" + dataCenterId);
-        }
-        if (machineCode > MAX_MACHINE_CODE || machineCode < 0) {
-            throw new IllegalArgumentException("机器编码只允许在[0,31]之间,当前值为：" + machineCode);
-        }
+        this(SnowFlakeLayout.DEFAULT, dataCenterId, machineCode);
+    }
+
+    /**
+     * 使用自定义的位布局，例如加宽机器编码或者序列号
+     *
+     * @param layout       位布局
+     * @param dataCenterId 数据中心
+     * @param machineCode  机器编码
+     */
+    public SymSnowFlake(SnowFlakeLayout layout, long dataCenterId, long machineCode) {
+        layout.checkNode(dataCenterId, machineCode);
+        this.layout = layout;
+        this.maxSerialNumber = layout.getMaxSerialNumber();
         this.dataCenter = dataCenterId;
         this.machineCode = machineCode;
         this.lastTimeStamp = 0L;
@@ -104,6 +78,7 @@ public class SymSnowFlake {
     /**
      * 获取分布式唯一性ID
      */
+    @Override
     public synchronized long nextID() {
         // 当前时间戳
         long nowTimeStamp = System.currentTimeMillis();
@@ -112,7 +87,7 @@ public class SymSnowFlake {
         }
         // 如果当前时间戳与上一次时间戳一样，说明在同一毫秒内，只需要把序列号加1即可
         if (nowTimeStamp == lastTimeStamp) {
-            serialNum = serialNum + 1 & MAX_SERIAL_NUMBER;
+            serialNum = serialNum + 1 & maxSerialNumber;
             /*
              * 如果一个毫秒内，序列号已经达到最大,这边解释一下为啥可以这样来判断serialNum等于0时就已经达到最大值
              *
@@ -129,16 +104,33 @@ public class SymSnowFlake {
              */
             serialNum = 0L;
         }
+        layout.checkTimeStamp(nowTimeStamp);
         lastTimeStamp = nowTimeStamp;
-        return (nowTimeStamp - baseTimeStamp) << timeStampLeftMove |
-                dataCenter << dataCenterLeftMove |
-                machineCode << machineCodeLeftMove |
-                serialNum;
+        return layout.compose(nowTimeStamp, dataCenter, machineCode, serialNum);
+    }
+
+    /**
+     * 位布局，可以用来解码生成的ID
+     */
+    public SnowFlakeLayout getLayout() {
+        return layout;
     }
 
     private long nextTimeStamp() {
+        return tilNextMillis(lastTimeStamp);
+    }
+
+    /**
+     * 等待直到系统时间超过指定的时间戳。剩余时间不到1毫秒，所以不sleep，而是每次park一小段时间，
+     * 既不会像空循环那样占满CPU，也不会等待太久
+     *
+     * @param lastTimeStamp 时间戳（毫秒）
+     * @return 新的时间戳
+     */
+    static long tilNextMillis(long lastTimeStamp) {
         long l = System.currentTimeMillis();
         while (l <= lastTimeStamp) {
+            LockSupport.parkNanos(PARK_NANOS);
             l = System.currentTimeMillis();
         }
         return l;
@@ -1,10 +1,19 @@
 package com.sym.structure.bloomfilter;
 
+import com.sym.structure.bloomfilter.hash.ByteSink;
+import com.sym.structure.bloomfilter.hash.Funnel;
+import com.sym.structure.bloomfilter.hash.Murmur3;
+
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Objects;
 
 /**
- * 抽象的布隆过滤器实现
+ * 抽象的布隆过滤器实现.
+ * <p>
+ * 元素先通过{@link Funnel}写成字节, 再用{@link Murmur3}计算出一个64位的哈希值, 拆成高低2个32位的hash值,
+ * 按照 Kirsch-Mitzenmacher 的方法组合出k个哈希函数：g(i) = hash1 + i * hash2,
+ * 只计算一次哈希就能得到k个位置, 误判率与k个独立的哈希函数相当.
  *
  * @author shenyanming
  * Created on 2021/1/16 9:39.
@@ -32,6 +41,21 @@ public abstract class AbstractBloomFilter<T> implements IBloomFilter<T> {
      */
     protected double misjudgmentRate;
 
+    /**
+     * 把元素写成字节
+     */
+    protected final Funnel<? super T> funnel;
+
+    /**
+     * 每个线程复用一个缓冲区, 计算哈希值时不需要创建对象
+     */
+    private final static ThreadLocal<ByteSink> SINK = ThreadLocal.withInitial(ByteSink::new);
+
+    /**
+     * 批量操作时每一批的元素个数, 一批元素的下标数组(256 * k 个int)可以放在L1缓存中
+     */
+    private final static int BATCH_SIZE = 256;
+
     /**
      * 构造布隆过滤器
      *
@@ -39,36 +63,212 @@ public abstract class AbstractBloomFilter<T> implements IBloomFilter<T> {
      * @param misjudgmentRate 允许的误判率, (0, 1)
      */
     protected AbstractBloomFilter(int dataCount, double misjudgmentRate) {
+        this(dataCount, misjudgmentRate, Funnel.hashCodeFunnel());
+    }
+
+    /**
+     * 构造布隆过滤器
+     *
+     * @param dataCount       数据规模
+     * @param misjudgmentRate 允许的误判率, (0, 1)
+     * @param funnel          把元素写成字节, 哈希值根据这些字节计算
+     */
+    protected AbstractBloomFilter(int dataCount, double misjudgmentRate, Funnel<? super T> funnel) {
         initialize(dataCount, misjudgmentRate);
         this.dataCount = dataCount;
         this.misjudgmentRate = misjudgmentRate;
+        this.funnel = Objects.requireNonNull(funnel, "funnel is null");
     }
 
     @Override
     public void put(T t) {
         Objects.requireNonNull(t, "element is null");
-        // 根据参数生成2个hash值
-        int hash1 = t.hashCode();
-        int hash2 = hash1 >>> 16;
-        for (int i = 0; i < hashCount; i++) {
-            // 根据哈希函数计算二进制位 位置
-            int index = computeIndex(hash1, hash2, i);
-            // 设置位
-            setBit(index);
-        }
+        putHash(hash(t));
+    }
+
+    /**
+     * 添加预先计算好的64位哈希值, 哈希值的要求与{@link #putAllHashes(long[])}相同
+     *
+     * @param hash 哈希值
+     */
+    public void putHash(long hash) {
+        // 拆成2个hash值
+        putHash((int) hash, (int) (hash >>> 32));
     }
 
     @Override
     public void put(Collection<T> collection) {
         Objects.requireNonNull(collection, "collection is null");
-        collection.forEach(this::put);
+        long[] hashes = new long[collection.size()];
+        ByteSink sink = SINK.get();
+        int i = 0;
+        for (T t : collection) {
+            hashes[i++] = hash(Objects.requireNonNull(t, "element is null"), sink);
+        }
+        putAllHashes(hashes);
+    }
+
+    @Override
+    public void putAll(T[] elements) {
+        Objects.requireNonNull(elements, "elements is null");
+        long[] hashes = new long[elements.length];
+        ByteSink sink = SINK.get();
+        for (int i = 0; i < elements.length; i++) {
+            hashes[i] = hash(Objects.requireNonNull(elements[i], "element is null"), sink);
+        }
+        putAllHashes(hashes);
+    }
+
+    /**
+     * 批量添加预先计算好的64位哈希值. 哈希值要与{@link #hash(Object)}的计算方式一致,
+     * 例如使用{@link Funnel#bytesFunnel()}时, 就是{@link Murmur3#hash64(byte[], int, int, int)}以0为种子的结果.
+     * <p>
+     * 每一批元素先算出全部的二进制位下标, 再集中设置二进制位. 计算下标时不访问内存,
+     * 设置二进制位时相邻的访问之间没有依赖, CPU可以同时发出多个内存请求, 而不是逐个元素地等待缓存未命中
+     *
+     * @param hashes 哈希值数组
+     */
+    public void putAllHashes(long[] hashes) {
+        Objects.requireNonNull(hashes, "hashes is null");
+        int[] indexes = new int[Math.min(BATCH_SIZE, hashes.length) * hashCount];
+        for (int from = 0; from < hashes.length; from += BATCH_SIZE) {
+            int to = Math.min(from + BATCH_SIZE, hashes.length);
+            int size = 0;
+            for (int j = from; j < to; j++) {
+                probe((int) hashes[j], (int) (hashes[j] >>> 32), indexes, size);
+                size += hashCount;
+            }
+            for (int j = 0; j < size; j++) {
+                setBit(indexes[j]);
+            }
+        }
     }
 
     @Override
     public boolean contains(T t) {
-        // 根据参数生成2个hash值
-        int hash1 = t.hashCode();
-        int hash2 = hash1 >>> 16;
+        return containsHash(hash(t));
+    }
+
+    /**
+     * 判断预先计算好的64位哈希值是否存在, 哈希值的要求与{@link #putAllHashes(long[])}相同
+     *
+     * @param hash 哈希值
+     * @return true-可能存在, false-一定不存在
+     */
+    public boolean containsHash(long hash) {
+        // 拆成2个hash值
+        return containsHash((int) hash, (int) (hash >>> 32));
+    }
+
+    @Override
+    public boolean[] containsAll(T[] elements) {
+        Objects.requireNonNull(elements, "elements is null");
+        long[] hashes = new long[elements.length];
+        ByteSink sink = SINK.get();
+        for (int i = 0; i < elements.length; i++) {
+            hashes[i] = hash(elements[i], sink);
+        }
+        return containsAllHashes(hashes);
+    }
+
+    /**
+     * 批量判断预先计算好的64位哈希值是否存在, 哈希值的要求与{@link #putAllHashes(long[])}相同.
+     * <p>
+     * 每一批元素先算出全部的二进制位下标, 然后按哈希函数逐轮检查: 第i轮检查这一批元素的第i个二进制位,
+     * 已经确定不存在的元素不再检查. 同一轮中的访问互不依赖, 缓存未命中可以重叠, 不会因为提前返回而串行等待
+     *
+     * @param hashes 哈希值数组
+     * @return 与哈希值一一对应, true-可能存在, false-一定不存在
+     */
+    public boolean[] containsAllHashes(long[] hashes) {
+        Objects.requireNonNull(hashes, "hashes is null");
+        boolean[] result = new boolean[hashes.length];
+        Arrays.fill(result, true);
+        int[] indexes = new int[Math.min(BATCH_SIZE, hashes.length) * hashCount];
+        for (int from = 0; from < hashes.length; from += BATCH_SIZE) {
+            int to = Math.min(from + BATCH_SIZE, hashes.length);
+            int size = 0;
+            for (int j = from; j < to; j++) {
+                probe((int) hashes[j], (int) (hashes[j] >>> 32), indexes, size);
+                size += hashCount;
+            }
+            for (int i = 0; i < hashCount; i++) {
+                for (int j = from, position = i; j < to; j++, position += hashCount) {
+                    if (result[j] && !existBit(indexes[position])) {
+                        result[j] = false;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 把另一个过滤器中的元素合并到当前过滤器, 合并后当前过滤器包含两者的全部元素.
+     * 两个过滤器必须形状相同: 二进制位布局、二进制位数量、哈希函数数量都相同, 并且使用相同的{@link Funnel}.
+     * 对于普通的布隆过滤器, 合并就是按long逐个做或运算, 结果与把所有元素添加到同一个过滤器完全相同
+     *
+     * @param other 另一个过滤器
+     */
+    public void union(IBloomFilter<T> other) {
+        Objects.requireNonNull(other, "filter is null");
+        if (!(other instanceof AbstractBloomFilter)) {
+            throw new IllegalArgumentException("不支持合并的过滤器: " + other.getClass().getName());
+        }
+        AbstractBloomFilter<T> that = (AbstractBloomFilter<T>) other;
+        if (!snapshotType().equals(that.snapshotType()) || bitCount != that.bitCount
+                || hashCount != that.hashCount) {
+            throw new IllegalArgumentException("过滤器的形状不同, 无法合并");
+        }
+        int words = Math.min(wordCount(), that.wordCount());
+        for (int i = 0; i < words; i++) {
+            long word = that.getWord(i);
+            if (word != 0) {
+                mergeWord(i, word);
+            }
+        }
+    }
+
+    /**
+     * 计算元素的64位哈希值, 可以预先计算好交给{@link #putHash(long)}等方法.
+     * 使用相同{@link Funnel}的过滤器, 同一个元素的哈希值相同
+     *
+     * @param t 元素
+     * @return 哈希值
+     */
+    public long hash(T t) {
+        return hash(t, SINK.get());
+    }
+
+    private long hash(T t, ByteSink sink) {
+        funnel.funnel(t, sink.reset());
+        return sink.hash64();
+    }
+
+    /**
+     * 根据2个hash值设置二进制位. 默认由{@link #computeIndex(int, int, int)}在整个二进制向量中计算k个位置,
+     * 子类可以重写它来改变位置的计算方式, 例如把k个位置限制在同一个缓存行中
+     *
+     * @param hash1 first hashcode
+     * @param hash2 second hashcode
+     */
+    protected void putHash(int hash1, int hash2) {
+        for (int i = 0; i < hashCount; i++) {
+            // 根据哈希函数计算二进制位 位置
+            int index = computeIndex(hash1, hash2, i);
+            // 设置位
+            setBit(index);
+        }
+    }
+
+    /**
+     * 根据2个hash值判断元素是否存在, 与{@link #putHash(int, int)}对应
+     *
+     * @param hash1 first hashcode
+     * @param hash2 second hashcode
+     * @return true-可能存在, false-一定不存在
+     */
+    protected boolean containsHash(int hash1, int hash2) {
         // 要验证的哈希函数
         for (int i = 0; i < hashCount; i++) {
             // 计算二进制位下标
@@ -83,6 +283,21 @@ public abstract class AbstractBloomFilter<T> implements IBloomFilter<T> {
     }
 
 
+    /**
+     * 根据2个hash值计算k个二进制位下标, 写入{@code indexes}从{@code offset}开始的k个位置, 供批量操作使用.
+     * 子类重写了{@link #putHash(int, int)}时, 也要重写这个方法, 保证两者的下标一致
+     *
+     * @param hash1   first hashcode
+     * @param hash2   second hashcode
+     * @param indexes 下标数组
+     * @param offset  起始位置
+     */
+    protected void probe(int hash1, int hash2, int[] indexes, int offset) {
+        for (int i = 0; i < hashCount; i++) {
+            indexes[offset + i] = computeIndex(hash1, hash2, i);
+        }
+    }
+
     /**
      * 计算二进制位数量和哈希函数数量
      *
@@ -93,11 +308,33 @@ public abstract class AbstractBloomFilter<T> implements IBloomFilter<T> {
         if (dataCount <= 0 || (misjudgmentRate <= 0 || misjudgmentRate >= 1)) {
             throw new IllegalArgumentException("valid parameter");
         }
-        double ln2 = Math.log(2);
         // 计算所需的二进制位数量
-        this.bitCount = (int) (- (dataCount * Math.log(misjudgmentRate)) / (ln2 * ln2));
+        this.bitCount = optimalBitCount(dataCount, misjudgmentRate);
         // 计算所需的哈希函数数量
-        this.hashCount = (int) (bitCount * ln2 / dataCount);
+        this.hashCount = optimalHashCount(dataCount, bitCount);
+    }
+
+    /**
+     * 根据数据规模和误判率计算二进制位数量: m = - (n * lnp) / (ln2)^2
+     *
+     * @param dataCount       数据规模
+     * @param misjudgmentRate 误判率
+     * @return 二进制位数量
+     */
+    public static int optimalBitCount(long dataCount, double misjudgmentRate) {
+        double ln2 = Math.log(2);
+        return (int) (- (dataCount * Math.log(misjudgmentRate)) / (ln2 * ln2));
+    }
+
+    /**
+     * 根据数据规模和二进制位数量计算哈希函数数量: k = m * ln2 / n
+     *
+     * @param dataCount 数据规模
+     * @param bitCount  二进制位数量
+     * @return 哈希函数数量
+     */
+    public static int optimalHashCount(long dataCount, int bitCount) {
+        return (int) (bitCount * Math.log(2) / dataCount);
     }
 
     /**
@@ -118,6 +355,32 @@ public abstract class AbstractBloomFilter<T> implements IBloomFilter<T> {
         return combinedHash % bitCount;
     }
 
+    /**
+     * 插入{@code insertions}个不同的元素后, 理论上的误判率: (1 - e^(-kn/m))^k
+     *
+     * @param insertions 已插入的元素个数
+     * @return 误判率
+     */
+    public double expectedMisjudgmentRate(long insertions) {
+        return Math.pow(1 - Math.exp(-(double) hashCount * insertions / bitCount), hashCount);
+    }
+
+    public int getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    public int getDataCount() {
+        return dataCount;
+    }
+
+    public double getMisjudgmentRate() {
+        return misjudgmentRate;
+    }
+
     /**
      * 将指定位置{@code index}的二进制位置为1
      *
@@ -132,4 +395,46 @@ public abstract class AbstractBloomFilter<T> implements IBloomFilter<T> {
      * @return true, 表示指定二进制位为1
      */
     protected abstract boolean existBit(int index);
+
+    /**
+     * 合并另一个过滤器的第{@code i}个long, 默认按位或. 存储的不是二进制位的子类需要重写
+     *
+     * @param i    下标
+     * @param word 另一个过滤器的第i个long
+     */
+    protected void mergeWord(int i, long word) {
+        setWord(i, getWord(i) | word);
+    }
+
+    /**
+     * 保存快照时记录的类型, 加载时通过这个类的(int, double, Funnel)构造方法创建过滤器
+     *
+     * @return 类名
+     */
+    protected String snapshotType() {
+        return getClass().getName();
+    }
+
+    /**
+     * 底层存储的long个数, 保存快照、合并过滤器时按long逐个读写
+     *
+     * @return long的个数
+     */
+    protected abstract int wordCount();
+
+    /**
+     * 读取第{@code i}个long
+     *
+     * @param i 下标
+     * @return 二进制位
+     */
+    protected abstract long getWord(int i);
+
+    /**
+     * 覆盖第{@code i}个long
+     *
+     * @param i    下标
+     * @param word 二进制位
+     */
+    protected abstract void setWord(int i, long word);
 }
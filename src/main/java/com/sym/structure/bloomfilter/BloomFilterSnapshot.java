@@ -0,0 +1,270 @@
+package com.sym.structure.bloomfilter;
+
+import com.sym.structure.bloomfilter.hash.Funnel;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * 布隆过滤器的快照文件, 服务重启时直接加载快照, 不需要再从源数据重建过滤器.
+ * <p>
+ * 文件格式(小端序)：
+ * <pre>
+ * | magic(4) | version(4) | dataCount(4) | misjudgmentRate(8) | bitCount(4) | hashCount(4) | wordCount(4) |
+ * | typeLength(2) | type | 补0到256字节 | word | word | ... |
+ * </pre>
+ * type 是过滤器的类名, 加载时通过它的(int, double, Funnel)构造方法创建过滤器. {@link Funnel}无法序列化,
+ * 需要在加载时重新传入, 且必须与保存时使用的相同. 二进制位从第256个字节开始, 8字节对齐, 可以直接映射成long视图,
+ * 参考{@link com.sym.structure.bloomfilter.impl.MappedBloomFilter}.
+ *
+ * @author shenyanming
+ * Created on 2021/2/10 9:30.
+ */
+
+public final class BloomFilterSnapshot {
+
+    public final static int MAGIC = 0x53594D42;
+    public final static int VERSION = 1;
+
+    /**
+     * 文件头大小, 二进制位从这里开始
+     */
+    public final static int HEADER_SIZE = 256;
+
+    /**
+     * 类名的最大字节数
+     */
+    private final static int MAX_TYPE_LENGTH = HEADER_SIZE - 34;
+
+    /**
+     * 每次读写的字节数
+     */
+    private final static int CHUNK_SIZE = 64 * 1024;
+
+    private BloomFilterSnapshot() {
+    }
+
+    /**
+     * 保存过滤器. 先写入临时文件, 刷盘后再原子地替换目标文件, 任何时刻崩溃都只会看到完整的旧快照或新快照
+     *
+     * @param filter 过滤器
+     * @param path   快照文件
+     * @throws IOException 文件写入失败
+     */
+    public static void save(AbstractBloomFilter<?> filter, Path path) throws IOException {
+        Objects.requireNonNull(filter, "filter is null");
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            int wordCount = filter.wordCount();
+            Header header = new Header(filter.snapshotType(), filter.getDataCount(),
+                    filter.getMisjudgmentRate(), filter.getBitCount(), filter.getHashCount(), wordCount);
+            writeHeader(channel, header);
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < wordCount; i++) {
+                if (!buffer.hasRemaining()) {
+                    writeFully(channel, buffer);
+                }
+                buffer.putLong(filter.getWord(i));
+            }
+            writeFully(channel, buffer);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 把快照完整地读入堆内, 创建与保存时相同类型的过滤器
+     *
+     * @param path   快照文件
+     * @param funnel 保存时使用的funnel
+     * @return 过滤器
+     * @throws IOException 文件读取失败或者格式不正确
+     */
+    public static <T> AbstractBloomFilter<T> load(Path path, Funnel<? super T> funnel) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Header header = readHeader(channel);
+            AbstractBloomFilter<T> filter = newInstance(header, funnel);
+            if (filter.getBitCount() != header.bitCount || filter.getHashCount() != header.hashCount
+                    || filter.wordCount() < header.wordCount) {
+                throw new IOException("快照与过滤器的参数不一致: " + path);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            // 通过Buffer调用: JDK9以上编译时会绑定到ByteBuffer的协变返回类型, 在JDK8上运行会抛出NoSuchMethodError
+            ((Buffer) buffer).flip();
+            long position = HEADER_SIZE;
+            for (int i = 0; i < header.wordCount; i++) {
+                if (!buffer.hasRemaining()) {
+                    ((Buffer) buffer).clear();
+                    ((Buffer) buffer).limit((int) Math.min(CHUNK_SIZE, (long) (header.wordCount - i) * Long.BYTES));
+                    position += readFully(channel, buffer, position);
+                    ((Buffer) buffer).flip();
+                }
+                filter.setWord(i, buffer.getLong());
+            }
+            return filter;
+        }
+    }
+
+    /**
+     * 读取并校验文件头, 文件大小必须与文件头记录的一致
+     *
+     * @param channel 快照文件
+     * @return 文件头
+     * @throws IOException 文件读取失败或者格式不正确
+     */
+    public static Header readHeader(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            throw new IOException("快照文件不完整");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, buffer, 0);
+        ((Buffer) buffer).flip();
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("不支持的文件格式");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("不支持的快照版本: " + version);
+        }
+        int dataCount = buffer.getInt();
+        double misjudgmentRate = buffer.getDouble();
+        int bitCount = buffer.getInt();
+        int hashCount = buffer.getInt();
+        int wordCount = buffer.getInt();
+        int typeLength = buffer.getShort();
+        if (typeLength <= 0 || typeLength > MAX_TYPE_LENGTH || wordCount < 0) {
+            throw new IOException("快照文件头已损坏");
+        }
+        byte[] type = new byte[typeLength];
+        buffer.get(type);
+        if (channel.size() != HEADER_SIZE + (long) wordCount * Long.BYTES) {
+            throw new IOException("快照文件大小" + channel.size() + "与文件头不一致");
+        }
+        return new Header(new String(type, StandardCharsets.UTF_8), dataCount, misjudgmentRate, bitCount,
+                hashCount, wordCount);
+    }
+
+    /**
+     * 在文件开头写入文件头
+     *
+     * @param channel 快照文件
+     * @param header  文件头
+     * @throws IOException 文件写入失败
+     */
+    public static void writeHeader(FileChannel channel, Header header) throws IOException {
+        byte[] type = header.type.getBytes(StandardCharsets.UTF_8);
+        if (type.length > MAX_TYPE_LENGTH) {
+            throw new IllegalArgumentException("类名太长: " + header.type);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(header.dataCount)
+                .putDouble(header.misjudgmentRate)
+                .putInt(header.bitCount)
+                .putInt(header.hashCount)
+                .putInt(header.wordCount)
+                .putShort((short) type.length)
+                .put(type);
+        // 剩余部分保持为0
+        ((Buffer) buffer).position(HEADER_SIZE);
+        channel.position(0);
+        writeFully(channel, buffer);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> AbstractBloomFilter<T> newInstance(Header header, Funnel<? super T> funnel)
+            throws IOException {
+        try {
+            Class<?> type = Class.forName(header.type);
+            if (!AbstractBloomFilter.class.isAssignableFrom(type)) {
+                throw new IOException("不支持的过滤器类型: " + header.type);
+            }
+            Constructor<?> constructor = type.getConstructor(int.class, double.class, Funnel.class);
+            return (AbstractBloomFilter<T>) constructor.newInstance(header.dataCount, header.misjudgmentRate,
+                    Objects.requireNonNull(funnel, "funnel is null"));
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("无法创建过滤器: " + header.type, e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        ((Buffer) buffer).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        ((Buffer) buffer).clear();
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                throw new IOException("快照文件不完整");
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * 快照的文件头
+     */
+    public static final class Header {
+        private final String type;
+        private final int dataCount;
+        private final double misjudgmentRate;
+        private final int bitCount;
+        private final int hashCount;
+        private final int wordCount;
+
+        public Header(String type, int dataCount, double misjudgmentRate, int bitCount, int hashCount,
+                      int wordCount) {
+            this.type = Objects.requireNonNull(type);
+            this.dataCount = dataCount;
+            this.misjudgmentRate = misjudgmentRate;
+            this.bitCount = bitCount;
+            this.hashCount = hashCount;
+            this.wordCount = wordCount;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public int getDataCount() {
+            return dataCount;
+        }
+
+        public double getMisjudgmentRate() {
+            return misjudgmentRate;
+        }
+
+        public int getBitCount() {
+            return bitCount;
+        }
+
+        public int getHashCount() {
+            return hashCount;
+        }
+
+        public int getWordCount() {
+            return wordCount;
+        }
+    }
+}
@@ -36,6 +36,17 @@ public interface IBloomFilter<T> {
      */
     void put(Collection<T> collection);
 
+    /**
+     * 批量添加元素到布隆过滤器
+     *
+     * @param elements 元素数组
+     */
+    default void putAll(T[] elements) {
+        for (T t : elements) {
+            put(t);
+        }
+    }
+
     /**
      * 判断一个元素是否存在
      *
@@ -43,4 +54,18 @@ public interface IBloomFilter<T> {
      * @return true-可能存在, false-一定不存在
      */
     boolean contains(T t);
+
+    /**
+     * 批量判断元素是否存在
+     *
+     * @param elements 元素数组
+     * @return 与元素一一对应, true-可能存在, false-一定不存在
+     */
+    default boolean[] containsAll(T[] elements) {
+        boolean[] result = new boolean[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            result[i] = contains(elements[i]);
+        }
+        return result;
+    }
 }
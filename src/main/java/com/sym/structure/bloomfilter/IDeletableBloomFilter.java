@@ -0,0 +1,20 @@
+package com.sym.structure.bloomfilter;
+
+/**
+ * 支持删除元素的布隆过滤器.
+ * 只能删除确实添加过的元素, 删除一个没有添加过、但被误判为存在的元素, 会让其它元素出现漏判
+ *
+ * @author shenyanming
+ * Created on 2021/2/9 9:20.
+ */
+
+public interface IDeletableBloomFilter<T> extends IBloomFilter<T> {
+
+    /**
+     * 删除一个元素, 同一个元素添加了几次, 就可以删除几次
+     *
+     * @param t 元素
+     * @return true-删除成功, false-元素一定不存在
+     */
+    boolean remove(T t);
+}
@@ -0,0 +1,120 @@
+package com.sym.structure.bloomfilter;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * 并行构建布隆过滤器.
+ * <p>
+ * 把输入平均拆分给{@link ForkJoinPool}中的任务, 每个任务往自己的过滤器中添加元素, 没有任何共享状态,
+ * 任务完成后两两合并({@link AbstractBloomFilter#union(IBloomFilter)}), 合并同样是并行的, 最终得到一个过滤器.
+ * 结果与在单线程中添加所有元素完全相同, 构建耗时随CPU核数下降.
+ * <p>
+ * 每个任务都持有一个完整大小的过滤器, 所以只按线程池的并行度拆分, 任务数是不小于并行度的2的幂,
+ * 峰值内存不超过 任务数 * 单个过滤器的大小.
+ *
+ * @author shenyanming
+ * Created on 2021/2/11 9:30.
+ */
+
+public class ParallelBloomFilterBuilder<T, F extends AbstractBloomFilter<T>> {
+
+    /**
+     * 每个任务至少处理的元素个数, 元素太少时拆分和合并的开销比添加元素还大
+     */
+    private final static int MIN_SPLIT_SIZE = 1 << 16;
+
+    /**
+     * 创建形状相同的空过滤器
+     */
+    private final Supplier<F> factory;
+
+    private final ForkJoinPool pool;
+
+    public ParallelBloomFilterBuilder(Supplier<F> factory) {
+        this(factory, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param factory 创建空过滤器, 每次调用都要返回形状相同的新过滤器
+     * @param pool    执行构建任务的线程池
+     */
+    public ParallelBloomFilterBuilder(Supplier<F> factory, ForkJoinPool pool) {
+        this.factory = Objects.requireNonNull(factory, "factory is null");
+        this.pool = Objects.requireNonNull(pool, "pool is null");
+    }
+
+    /**
+     * 用全部元素构建过滤器
+     *
+     * @param elements 元素数组
+     * @return 过滤器
+     */
+    public F build(T[] elements) {
+        Objects.requireNonNull(elements, "elements is null");
+        return pool.invoke(new BuildTask(elements, null, 0, elements.length, splitSize(elements.length)));
+    }
+
+    /**
+     * 用预先计算好的64位哈希值构建过滤器, 哈希值的要求与{@link AbstractBloomFilter#putAllHashes(long[])}相同
+     *
+     * @param hashes 哈希值数组
+     * @return 过滤器
+     */
+    public F buildHashes(long[] hashes) {
+        Objects.requireNonNull(hashes, "hashes is null");
+        return pool.invoke(new BuildTask(null, hashes, 0, hashes.length, splitSize(hashes.length)));
+    }
+
+    /**
+     * 每个工作线程分到一段
+     */
+    private int splitSize(int length) {
+        return Math.max(MIN_SPLIT_SIZE, (length + pool.getParallelism() - 1) / pool.getParallelism());
+    }
+
+    private class BuildTask extends RecursiveTask<F> {
+
+        private final static long serialVersionUID = 1L;
+
+        private final T[] elements;
+        private final long[] hashes;
+        private final int from;
+        private final int to;
+        private final int splitSize;
+
+        BuildTask(T[] elements, long[] hashes, int from, int to, int splitSize) {
+            this.elements = elements;
+            this.hashes = hashes;
+            this.from = from;
+            this.to = to;
+            this.splitSize = splitSize;
+        }
+
+        @Override
+        protected F compute() {
+            if (to - from <= splitSize) {
+                F filter = factory.get();
+                if (hashes != null) {
+                    for (int i = from; i < to; i++) {
+                        filter.putHash(hashes[i]);
+                    }
+                } else {
+                    for (int i = from; i < to; i++) {
+                        filter.put(elements[i]);
+                    }
+                }
+                return filter;
+            }
+            int middle = (from + to) >>> 1;
+            BuildTask left = new BuildTask(elements, hashes, from, middle, splitSize);
+            BuildTask right = new BuildTask(elements, hashes, middle, to, splitSize);
+            left.fork();
+            F filter = right.compute();
+            filter.union(left.join());
+            return filter;
+        }
+    }
+}
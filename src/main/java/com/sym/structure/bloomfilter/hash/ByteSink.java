@@ -0,0 +1,97 @@
+package com.sym.structure.bloomfilter.hash;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * 收集元素字节的缓冲区, {@link Funnel}把元素写进来, 再用{@link Murmur3}计算哈希值.
+ * 多字节的数值按小端序写入. 缓冲区可以通过{@link #reset()}重复使用, 不是线程安全的.
+ *
+ * @author shenyanming
+ * Created on 2021/2/7 10:40.
+ */
+
+public final class ByteSink {
+
+    private byte[] buffer;
+
+    private int size;
+
+    public ByteSink() {
+        this(64);
+    }
+
+    public ByteSink(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    public ByteSink putByte(byte b) {
+        ensureCapacity(1);
+        buffer[size++] = b;
+        return this;
+    }
+
+    public ByteSink putInt(int i) {
+        ensureCapacity(4);
+        buffer[size++] = (byte) i;
+        buffer[size++] = (byte) (i >>> 8);
+        buffer[size++] = (byte) (i >>> 16);
+        buffer[size++] = (byte) (i >>> 24);
+        return this;
+    }
+
+    public ByteSink putLong(long l) {
+        putInt((int) l);
+        return putInt((int) (l >>> 32));
+    }
+
+    public ByteSink putBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+        return this;
+    }
+
+    /**
+     * 每个char按2个字节写入, 不需要编码, 也不会创建临时数组
+     */
+    public ByteSink putChars(CharSequence chars) {
+        int length = chars.length();
+        ensureCapacity(length << 1);
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            buffer[size++] = (byte) c;
+            buffer[size++] = (byte) (c >>> 8);
+        }
+        return this;
+    }
+
+    public ByteSink putString(CharSequence chars, Charset charset) {
+        return putBytes(chars.toString().getBytes(charset));
+    }
+
+    /**
+     * 清空缓冲区, 以便写入下一个元素
+     */
+    public ByteSink reset() {
+        size = 0;
+        return this;
+    }
+
+    /**
+     * 已经写入的字节的64位哈希值
+     */
+    public long hash64() {
+        return Murmur3.hash64(buffer, 0, size, 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void ensureCapacity(int required) {
+        if (size + required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, size + required));
+        }
+    }
+}
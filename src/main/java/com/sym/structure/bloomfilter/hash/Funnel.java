@@ -0,0 +1,56 @@
+package com.sym.structure.bloomfilter.hash;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 把元素拆解成字节写入{@link ByteSink}, 布隆过滤器对这些字节计算哈希值, 而不是依赖元素的{@link Object#hashCode()}.
+ * 相等的元素必须写入相同的字节.
+ *
+ * @author shenyanming
+ * Created on 2021/2/7 10:30.
+ */
+@FunctionalInterface
+public interface Funnel<T> {
+
+    /**
+     * 把元素写入缓冲区
+     *
+     * @param from 元素
+     * @param into 缓冲区
+     */
+    void funnel(T from, ByteSink into);
+
+    /**
+     * 只写入元素的hashCode(). hashCode()相同的元素仍然会冲突, 但是hashCode()的每一位都会被充分混合,
+     * 适合不方便提供字节的元素
+     */
+    static Funnel<Object> hashCodeFunnel() {
+        return (from, into) -> into.putInt(from.hashCode());
+    }
+
+    static Funnel<Integer> integerFunnel() {
+        return (from, into) -> into.putInt(from);
+    }
+
+    static Funnel<Long> longFunnel() {
+        return (from, into) -> into.putLong(from);
+    }
+
+    /**
+     * 按UTF-16写入字符串, 不需要编码
+     */
+    static Funnel<CharSequence> stringFunnel() {
+        return (from, into) -> into.putChars(from);
+    }
+
+    /**
+     * 按UTF-8写入字符串, 与其它系统用相同的字节计算哈希值时使用
+     */
+    static Funnel<CharSequence> utf8Funnel() {
+        return (from, into) -> into.putString(from, StandardCharsets.UTF_8);
+    }
+
+    static Funnel<byte[]> bytesFunnel() {
+        return (from, into) -> into.putBytes(from);
+    }
+}
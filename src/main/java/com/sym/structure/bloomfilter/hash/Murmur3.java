@@ -0,0 +1,135 @@
+package com.sym.structure.bloomfilter.hash;
+
+/**
+ * MurmurHash3 的 x64_128 版本, 只返回128位结果的前64位.
+ * 相比{@link Object#hashCode()}, 它对输入的每一个字节都充分混合, 输入只差一位, 输出的每一位都有一半的概率改变(雪崩效应),
+ * 布隆过滤器用它来计算下标, 实际误判率才能接近理论值.
+ *
+ * @author shenyanming
+ * Created on 2021/2/7 10:20.
+ */
+
+public final class Murmur3 {
+
+    private final static long C1 = 0x87C37B91114253D5L;
+    private final static long C2 = 0x4CF5AD432745937FL;
+
+    private Murmur3() {
+    }
+
+    /**
+     * 计算字节数组的64位哈希值
+     *
+     * @param data   字节数组
+     * @param offset 起始位置
+     * @param length 长度
+     * @param seed   种子
+     * @return 128位哈希值的前64位
+     */
+    @SuppressWarnings("fallthrough")
+    public static long hash64(byte[] data, int offset, int length, int seed) {
+        long h1 = seed & 0xFFFFFFFFL;
+        long h2 = h1;
+        int blocks = length >>> 4;
+        // 每次处理16个字节
+        for (int i = 0; i < blocks; i++) {
+            int position = offset + (i << 4);
+            long k1 = getLong(data, position);
+            long k2 = getLong(data, position + 8);
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52DCE729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495AB5;
+        }
+        // 剩下不足16个字节的部分, 与原版算法一样故意不写break, 从剩余的最后一个字节开始逐个落到case 1
+        int tail = offset + (blocks << 4);
+        long k1 = 0;
+        long k2 = 0;
+        switch (length & 15) {
+            case 15:
+                k2 ^= (long) (data[tail + 14] & 0xFF) << 48;
+            case 14:
+                k2 ^= (long) (data[tail + 13] & 0xFF) << 40;
+            case 13:
+                k2 ^= (long) (data[tail + 12] & 0xFF) << 32;
+            case 12:
+                k2 ^= (long) (data[tail + 11] & 0xFF) << 24;
+            case 11:
+                k2 ^= (long) (data[tail + 10] & 0xFF) << 16;
+            case 10:
+                k2 ^= (long) (data[tail + 9] & 0xFF) << 8;
+            case 9:
+                k2 ^= data[tail + 8] & 0xFF;
+                h2 ^= mixK2(k2);
+            case 8:
+                k1 ^= (long) (data[tail + 7] & 0xFF) << 56;
+            case 7:
+                k1 ^= (long) (data[tail + 6] & 0xFF) << 48;
+            case 6:
+                k1 ^= (long) (data[tail + 5] & 0xFF) << 40;
+            case 5:
+                k1 ^= (long) (data[tail + 4] & 0xFF) << 32;
+            case 4:
+                k1 ^= (long) (data[tail + 3] & 0xFF) << 24;
+            case 3:
+                k1 ^= (long) (data[tail + 2] & 0xFF) << 16;
+            case 2:
+                k1 ^= (long) (data[tail + 1] & 0xFF) << 8;
+            case 1:
+                k1 ^= data[tail] & 0xFF;
+                h1 ^= mixK1(k1);
+            default:
+        }
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        return h1 + h2;
+    }
+
+    /**
+     * MurmurHash3 的最终混合函数, 也可以单独用来打散一个64位整数
+     */
+    public static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xFF51AFD7ED558CCDL;
+        k ^= k >>> 33;
+        k *= 0xC4CEB9FE1A85EC53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    /**
+     * 小端序读取8个字节
+     */
+    private static long getLong(byte[] data, int position) {
+        return (data[position] & 0xFFL)
+                | (data[position + 1] & 0xFFL) << 8
+                | (data[position + 2] & 0xFFL) << 16
+                | (data[position + 3] & 0xFFL) << 24
+                | (data[position + 4] & 0xFFL) << 32
+                | (data[position + 5] & 0xFFL) << 40
+                | (data[position + 6] & 0xFFL) << 48
+                | (data[position + 7] & 0xFFL) << 56;
+    }
+}
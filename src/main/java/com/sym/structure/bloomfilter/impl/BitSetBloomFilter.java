@@ -1,6 +1,7 @@
 package com.sym.structure.bloomfilter.impl;
 
 import com.sym.structure.bloomfilter.AbstractBloomFilter;
+import com.sym.structure.bloomfilter.hash.Funnel;
 
 import java.util.BitSet;
 
@@ -16,7 +17,11 @@ public class BitSetBloomFilter<T> extends AbstractBloomFilter<T> {
     private BitSet bitSet;
 
     public BitSetBloomFilter(int dataCount, double misjudgmentRate) {
-        super(dataCount, misjudgmentRate);
+        this(dataCount, misjudgmentRate, Funnel.hashCodeFunnel());
+    }
+
+    public BitSetBloomFilter(int dataCount, double misjudgmentRate, Funnel<? super T> funnel) {
+        super(dataCount, misjudgmentRate, funnel);
         bitSet = new BitSet(bitCount);
     }
 
@@ -30,4 +35,24 @@ public class BitSetBloomFilter<T> extends AbstractBloomFilter<T> {
         return bitSet.get(index);
     }
 
+    @Override
+    protected int wordCount() {
+        return (bitCount + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    @Override
+    protected long getWord(int i) {
+        long[] words = bitSet.get(i * Long.SIZE, (i + 1) * Long.SIZE).toLongArray();
+        return words.length == 0 ? 0 : words[0];
+    }
+
+    @Override
+    protected void setWord(int i, long word) {
+        int from = i * Long.SIZE;
+        bitSet.clear(from, from + Long.SIZE);
+        // 逐个设置为1的位
+        for (long w = word; w != 0; w &= w - 1) {
+            bitSet.set(from + Long.numberOfTrailingZeros(w));
+        }
+    }
 }
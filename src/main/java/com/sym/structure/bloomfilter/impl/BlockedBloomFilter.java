@@ -0,0 +1,132 @@
+package com.sym.structure.bloomfilter.impl;
+
+import com.sym.structure.bloomfilter.AbstractBloomFilter;
+import com.sym.structure.bloomfilter.hash.Funnel;
+
+/**
+ * 分块的布隆过滤器(Blocked Bloom Filter), 参考论文《Cache-, Hash- and Space-Efficient Bloom Filters》.
+ * <p>
+ * 普通的布隆过滤器把一个元素的k个二进制位分散在整个二进制向量中, 向量比CPU缓存大的时候, 每次查询最多会有k次缓存未命中.
+ * 这里把二进制向量划分成若干个512位(64字节, 一个缓存行)的块, 先用hash值选出一个块, 再把k个位都放在这个块里,
+ * 于是每次查询只会访问一个缓存行, 最多只有1次缓存未命中.
+ * <p>
+ * 代价是每个块中1的数量不均匀, 相同的二进制位数下误判率会略高于普通的布隆过滤器.
+ *
+ * @author shenyanming
+ * Created on 2021/2/6 14:20.
+ */
+
+public class BlockedBloomFilter<T> extends AbstractBloomFilter<T> {
+
+    /**
+     * 每个块的二进制位数, 即一个64字节的缓存行
+     */
+    private final static int BLOCK_BITS = 512;
+
+    /**
+     * 每个块包含的long数量
+     */
+    private final static int WORDS_PER_BLOCK = BLOCK_BITS / Long.SIZE;
+
+    /**
+     * 块的数量
+     */
+    private final int blockCount;
+
+    /**
+     * 每连续的8个long是一个块
+     */
+    private final long[] longArray;
+
+    public BlockedBloomFilter(int dataCount, double misjudgmentRate) {
+        this(dataCount, misjudgmentRate, Funnel.hashCodeFunnel());
+    }
+
+    public BlockedBloomFilter(int dataCount, double misjudgmentRate, Funnel<? super T> funnel) {
+        super(dataCount, misjudgmentRate, funnel);
+        this.blockCount = Math.max(1, (bitCount + BLOCK_BITS - 1) / BLOCK_BITS);
+        this.longArray = new long[blockCount * WORDS_PER_BLOCK];
+    }
+
+    @Override
+    protected void putHash(int hash1, int hash2) {
+        long hash = combine(hash1, hash2);
+        int base = blockBase(hash);
+        int h = (int) hash;
+        // 步长为奇数, 块内的k个位置各不相同
+        int delta = h >>> 9 | 1;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (h + i * delta) & (BLOCK_BITS - 1);
+            longArray[base + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    @Override
+    protected boolean containsHash(int hash1, int hash2) {
+        long hash = combine(hash1, hash2);
+        int base = blockBase(hash);
+        int h = (int) hash;
+        int delta = h >>> 9 | 1;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (h + i * delta) & (BLOCK_BITS - 1);
+            if ((longArray[base + (bit >>> 6)] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 与{@link #putHash(int, int)}相同的位置, 换算成整个二进制向量中的下标
+     */
+    @Override
+    protected void probe(int hash1, int hash2, int[] indexes, int offset) {
+        long hash = combine(hash1, hash2);
+        int base = blockBase(hash) << 6;
+        int h = (int) hash;
+        int delta = h >>> 9 | 1;
+        for (int i = 0; i < hashCount; i++) {
+            indexes[offset + i] = base + ((h + i * delta) & (BLOCK_BITS - 1));
+        }
+    }
+
+    @Override
+    protected void setBit(int index) {
+        longArray[index >>> 6] |= 1L << index;
+    }
+
+    @Override
+    protected boolean existBit(int index) {
+        return (longArray[index >>> 6] & 1L << index) != 0;
+    }
+
+    @Override
+    protected int wordCount() {
+        return longArray.length;
+    }
+
+    @Override
+    protected long getWord(int i) {
+        return longArray[i];
+    }
+
+    @Override
+    protected void setWord(int i, long word) {
+        longArray[i] = word;
+    }
+
+    /**
+     * 用高32位选出块, 返回块中第一个long的下标. 用乘法加移位代替取模, 结果均匀分布在[0, blockCount)
+     */
+    private int blockBase(long hash) {
+        int block = (int) (((hash >>> 32) * blockCount) >>> 32);
+        return block * WORDS_PER_BLOCK;
+    }
+
+    /**
+     * 把2个hash值还原成64位的哈希值, 高32位选块, 低32位计算块内的位置
+     */
+    private static long combine(int hash1, int hash2) {
+        return (long) hash2 << 32 | hash1 & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,75 @@
+package com.sym.structure.bloomfilter.impl;
+
+import com.sym.structure.bloomfilter.AbstractBloomFilter;
+import com.sym.structure.bloomfilter.hash.Funnel;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 线程安全的无锁布隆过滤器, 基于{@link AtomicLongArray}实现.
+ * <p>
+ * {@link LongArrayBloomFilter}设置二进制位是"读取long - 或运算 - 写回long"三步, 两个线程同时修改同一个long时,
+ * 后写回的会覆盖先写回的, 导致丢失二进制位, 已经添加的元素可能被判断为不存在.
+ * 这里用CAS写回, 失败了就基于最新的值重试; 二进制位只会从0变成1, 所以已经是1的时候直接返回, 不需要写.
+ * 查询只是对每个long做一次volatile读, 不会重试, 是wait-free的.
+ * 一个元素的k个二进制位不是原子地一起设置的, put()还没有返回时, 其它线程调用contains()可能返回false,
+ * put()返回之后就一定返回true.
+ *
+ * @author shenyanming
+ * Created on 2021/2/6 16:40.
+ */
+
+public class ConcurrentBloomFilter<T> extends AbstractBloomFilter<T> {
+
+    private final AtomicLongArray longArray;
+
+    public ConcurrentBloomFilter(int dataCount, double misjudgmentRate) {
+        this(dataCount, misjudgmentRate, Funnel.hashCodeFunnel());
+    }
+
+    public ConcurrentBloomFilter(int dataCount, double misjudgmentRate, Funnel<? super T> funnel) {
+        super(dataCount, misjudgmentRate, funnel);
+        this.longArray = new AtomicLongArray((bitCount + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    @Override
+    protected void setBit(int index) {
+        int i = index >>> 6;
+        long mask = 1L << index;
+        long l = longArray.get(i);
+        while ((l & mask) == 0) {
+            if (longArray.compareAndSet(i, l, l | mask)) {
+                return;
+            }
+            l = longArray.get(i);
+        }
+    }
+
+    @Override
+    protected boolean existBit(int index) {
+        return (longArray.get(index >>> 6) & 1L << index) != 0;
+    }
+
+    @Override
+    protected int wordCount() {
+        return longArray.length();
+    }
+
+    @Override
+    protected long getWord(int i) {
+        return longArray.get(i);
+    }
+
+    @Override
+    protected void setWord(int i, long word) {
+        longArray.set(i, word);
+    }
+
+    /**
+     * 合并时其它线程可能同时在添加元素, 用原子的或运算
+     */
+    @Override
+    protected void mergeWord(int i, long word) {
+        longArray.getAndAccumulate(i, word, (a, b) -> a | b);
+    }
+}
@@ -0,0 +1,122 @@
+package com.sym.structure.bloomfilter.impl;
+
+import com.sym.structure.bloomfilter.AbstractBloomFilter;
+import com.sym.structure.bloomfilter.IDeletableBloomFilter;
+import com.sym.structure.bloomfilter.hash.Funnel;
+
+import java.util.Objects;
+
+/**
+ * 计数布隆过滤器(Counting Bloom Filter).
+ * <p>
+ * 把每一个二进制位换成一个4位的计数器, 添加元素时k个计数器加1, 删除元素时k个计数器减1, 计数器不为0表示二进制位为1.
+ * 每个long存放16个计数器, 占用的空间是普通布隆过滤器的4倍. 计数器最大为15, 达到15以后不再增加也不再减少,
+ * 避免溢出后出现漏判; 在最优的参数下, 计数器超过15的概率极低. 不是线程安全的.
+ *
+ * @author shenyanming
+ * Created on 2021/2/9 9:40.
+ */
+
+public class CountingBloomFilter<T> extends AbstractBloomFilter<T> implements IDeletableBloomFilter<T> {
+
+    /**
+     * 计数器的最大值
+     */
+    private final static long MAX_COUNT = 0xF;
+
+    /**
+     * 每16个计数器存放在一个long中
+     */
+    private final long[] counters;
+
+    /**
+     * 删除元素时存放k个计数器下标
+     */
+    private final int[] indexes;
+
+    public CountingBloomFilter(int dataCount, double misjudgmentRate) {
+        this(dataCount, misjudgmentRate, Funnel.hashCodeFunnel());
+    }
+
+    public CountingBloomFilter(int dataCount, double misjudgmentRate, Funnel<? super T> funnel) {
+        super(dataCount, misjudgmentRate, funnel);
+        this.counters = new long[(bitCount + 15) >>> 4];
+        this.indexes = new int[hashCount];
+    }
+
+    @Override
+    public boolean remove(T t) {
+        Objects.requireNonNull(t, "element is null");
+        long hash = hash(t);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        // 先确认元素可能存在, 否则减1会破坏其它元素的计数器
+        if (!containsHash(hash1, hash2)) {
+            return false;
+        }
+        probe(hash1, hash2, indexes, 0);
+        for (int index : indexes) {
+            int word = index >>> 4;
+            int shift = (index & 15) << 2;
+            long count = counters[word] >>> shift & MAX_COUNT;
+            // 溢出过的计数器无法得知真实值, 保持不变
+            if (count != MAX_COUNT) {
+                counters[word] -= 1L << shift;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 计数器的值
+     *
+     * @param index 计数器下标
+     * @return [0, 15]
+     */
+    public int count(int index) {
+        return (int) (counters[index >>> 4] >>> ((index & 15) << 2) & MAX_COUNT);
+    }
+
+    @Override
+    protected void setBit(int index) {
+        int word = index >>> 4;
+        int shift = (index & 15) << 2;
+        if ((counters[word] >>> shift & MAX_COUNT) != MAX_COUNT) {
+            counters[word] += 1L << shift;
+        }
+    }
+
+    @Override
+    protected boolean existBit(int index) {
+        return (counters[index >>> 4] >>> ((index & 15) << 2) & MAX_COUNT) != 0;
+    }
+
+    @Override
+    protected int wordCount() {
+        return counters.length;
+    }
+
+    @Override
+    protected long getWord(int i) {
+        return counters[i];
+    }
+
+    @Override
+    protected void setWord(int i, long word) {
+        counters[i] = word;
+    }
+
+    /**
+     * 对应的计数器相加, 超过15的按15保存. 合并后删除任意一个过滤器中添加过的元素仍然是安全的
+     */
+    @Override
+    protected void mergeWord(int i, long word) {
+        long current = counters[i];
+        long merged = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 4) {
+            long count = Math.min((current >>> shift & MAX_COUNT) + (word >>> shift & MAX_COUNT), MAX_COUNT);
+            merged |= count << shift;
+        }
+        counters[i] = merged;
+    }
+}
@@ -0,0 +1,301 @@
+package com.sym.structure.bloomfilter.impl;
+
+import com.sym.structure.bloomfilter.IDeletableBloomFilter;
+import com.sym.structure.bloomfilter.hash.ByteSink;
+import com.sym.structure.bloomfilter.hash.Funnel;
+import com.sym.structure.bloomfilter.hash.Murmur3;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 布谷鸟过滤器(Cuckoo Filter), 参考论文《Cuckoo Filter: Practically Better Than Bloom》.
+ * <p>
+ * 不再设置二进制位, 而是保存元素的指纹(f位的哈希值). 过滤器由若干个桶组成, 每个桶有4个槽位,
+ * 每个元素有2个候选桶: i1 = hash(x), i2 = (hash(fingerprint) - i1) mod m. 由于 i1 = (hash(fingerprint) - i2) mod m,
+ * 只凭桶下标和指纹就能算出另一个候选桶, 所以2个桶都满了的时候, 可以把已有的指纹踢到它的另一个候选桶中, 腾出位置.
+ * <p>
+ * 查询时只比较2个桶中的8个指纹, 误判率约为 8 / 2^f, 删除时移除一个相同的指纹即可.
+ * 误判率低于3%左右时, 每个元素占用的空间比普通的布隆过滤器更少. 不是线程安全的.
+ *
+ * @author shenyanming
+ * Created on 2021/2/9 10:30.
+ */
+
+public class CuckooFilter<T> implements IDeletableBloomFilter<T> {
+
+    /**
+     * 每个桶的槽位数
+     */
+    private final static int SLOTS_PER_BUCKET = 4;
+
+    /**
+     * 装载率, 超过95%以后插入很容易失败
+     */
+    private final static double LOAD_FACTOR = 0.95;
+
+    /**
+     * 插入时最多踢出的次数
+     */
+    private final static int MAX_KICKS = 500;
+
+    /**
+     * 每个线程复用一个缓冲区
+     */
+    private final static ThreadLocal<ByteSink> SINK = ThreadLocal.withInitial(ByteSink::new);
+
+    /**
+     * 指纹的位数
+     */
+    private final int fingerprintBits;
+
+    /**
+     * 指纹掩码
+     */
+    private final long fingerprintMask;
+
+    /**
+     * 桶的数量
+     */
+    private final int bucketCount;
+
+    /**
+     * 所有的指纹紧密地排列在long数组中, 指纹为0表示空槽位
+     */
+    private final long[] table;
+
+    private final Funnel<? super T> funnel;
+
+    /**
+     * 踢出次数达到上限后, 无处安放的最后一个指纹暂存在这里, 此时过滤器已满
+     */
+    private int victimIndex;
+    private long victimFingerprint;
+
+    /**
+     * 已经保存的指纹数量
+     */
+    private long size;
+
+    public CuckooFilter(int dataCount, double misjudgmentRate) {
+        this(dataCount, misjudgmentRate, Funnel.hashCodeFunnel());
+    }
+
+    /**
+     * 构造布谷鸟过滤器
+     *
+     * @param dataCount       数据规模
+     * @param misjudgmentRate 允许的误判率, (0, 1)
+     * @param funnel          把元素写成字节
+     */
+    public CuckooFilter(int dataCount, double misjudgmentRate, Funnel<? super T> funnel) {
+        if (dataCount <= 0 || (misjudgmentRate <= 0 || misjudgmentRate >= 1)) {
+            throw new IllegalArgumentException("valid parameter");
+        }
+        // 误判率 = 2 * 4 / 2^f
+        int bits = (int) Math.ceil(Math.log(2.0 * SLOTS_PER_BUCKET / misjudgmentRate) / Math.log(2));
+        this.fingerprintBits = Math.min(Math.max(bits, 4), 32);
+        this.fingerprintMask = (1L << fingerprintBits) - 1;
+        // 候选桶用减法取模计算, 桶的数量不需要是2的幂, 不会因为向上取整浪费将近一半的空间
+        this.bucketCount = (int) Math.max(2, Math.ceil(dataCount / (SLOTS_PER_BUCKET * LOAD_FACTOR)));
+        long totalBits = (long) bucketCount * SLOTS_PER_BUCKET * fingerprintBits;
+        this.table = new long[(int) ((totalBits + Long.SIZE - 1) / Long.SIZE)];
+        this.funnel = Objects.requireNonNull(funnel, "funnel is null");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException 过滤器已满
+     */
+    @Override
+    public void put(T t) {
+        Objects.requireNonNull(t, "element is null");
+        if (victimFingerprint != 0) {
+            throw new IllegalStateException("cuckoo filter is full");
+        }
+        long hash = hash(t);
+        long fingerprint = fingerprint(hash);
+        int i1 = reduce(hash);
+        // 从随机的一个候选桶开始, 2个桶都满的时候也从这个桶开始踢出
+        putFingerprint(ThreadLocalRandom.current().nextBoolean() ? i1 : altIndex(i1, fingerprint), fingerprint);
+    }
+
+    @Override
+    public void put(Collection<T> collection) {
+        Objects.requireNonNull(collection, "collection is null");
+        collection.forEach(this::put);
+    }
+
+    @Override
+    public boolean contains(T t) {
+        long hash = hash(t);
+        long fingerprint = fingerprint(hash);
+        int i1 = reduce(hash);
+        int i2 = altIndex(i1, fingerprint);
+        if (victimFingerprint == fingerprint && (victimIndex == i1 || victimIndex == i2)) {
+            return true;
+        }
+        return indexOf(i1, fingerprint) >= 0 || indexOf(i2, fingerprint) >= 0;
+    }
+
+    @Override
+    public boolean remove(T t) {
+        Objects.requireNonNull(t, "element is null");
+        long hash = hash(t);
+        long fingerprint = fingerprint(hash);
+        int i1 = reduce(hash);
+        int i2 = altIndex(i1, fingerprint);
+        if (victimFingerprint == fingerprint && (victimIndex == i1 || victimIndex == i2)) {
+            victimFingerprint = 0;
+            size--;
+            return true;
+        }
+        if (removeFromBucket(i1, fingerprint) || removeFromBucket(i2, fingerprint)) {
+            size--;
+            // 腾出了一个槽位, 把暂存的指纹放回桶中
+            if (victimFingerprint != 0) {
+                long victim = victimFingerprint;
+                int index = victimIndex;
+                victimFingerprint = 0;
+                size--;
+                putFingerprint(index, victim);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 已经保存的指纹数量
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 装载率, 即已使用的槽位占全部槽位的比例
+     */
+    public double loadFactor() {
+        return (double) size / ((long) bucketCount * SLOTS_PER_BUCKET);
+    }
+
+    /**
+     * 指纹表占用的二进制位
+     */
+    public long bitCount() {
+        return (long) table.length * Long.SIZE;
+    }
+
+    public int getFingerprintBits() {
+        return fingerprintBits;
+    }
+
+    /**
+     * 把指纹放入{@code index}或它的另一个候选桶. 2个桶都满了, 就随机踢出一个指纹, 把它搬到它的另一个候选桶中,
+     * 踢出次数达到上限后, 最后一个指纹暂存起来
+     */
+    private void putFingerprint(int index, long fingerprint) {
+        if (insertIntoBucket(index, fingerprint) || insertIntoBucket(altIndex(index, fingerprint), fingerprint)) {
+            size++;
+            return;
+        }
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            int slot = ThreadLocalRandom.current().nextInt(SLOTS_PER_BUCKET);
+            long evicted = get(index, slot);
+            set(index, slot, fingerprint);
+            fingerprint = evicted;
+            index = altIndex(index, fingerprint);
+            if (insertIntoBucket(index, fingerprint)) {
+                size++;
+                return;
+            }
+        }
+        victimIndex = index;
+        victimFingerprint = fingerprint;
+        size++;
+    }
+
+    private long hash(T t) {
+        ByteSink sink = SINK.get().reset();
+        funnel.funnel(t, sink);
+        return sink.hash64();
+    }
+
+    /**
+     * 用高32位计算指纹, 低位用来选桶, 两者互不相关. 0表示空槽位, 所以指纹不能为0
+     */
+    private long fingerprint(long hash) {
+        long fingerprint = hash >>> 32 & fingerprintMask;
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /**
+     * 另一个候选桶: (hash(fingerprint) - index) mod m, 对同一个指纹调用两次会回到原来的桶
+     */
+    private int altIndex(int index, long fingerprint) {
+        int alt = reduce(Murmur3.fmix64(fingerprint)) - index;
+        return alt < 0 ? alt + bucketCount : alt;
+    }
+
+    /**
+     * 用低32位选出[0, bucketCount)中的一个桶, 用乘法加移位代替取模
+     */
+    private int reduce(long hash) {
+        return (int) (((hash & 0xFFFFFFFFL) * bucketCount) >>> 32);
+    }
+
+    private boolean insertIntoBucket(int index, long fingerprint) {
+        for (int slot = 0; slot < SLOTS_PER_BUCKET; slot++) {
+            if (get(index, slot) == 0) {
+                set(index, slot, fingerprint);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean removeFromBucket(int index, long fingerprint) {
+        int slot = indexOf(index, fingerprint);
+        if (slot < 0) {
+            return false;
+        }
+        set(index, slot, 0);
+        return true;
+    }
+
+    private int indexOf(int index, long fingerprint) {
+        for (int slot = 0; slot < SLOTS_PER_BUCKET; slot++) {
+            if (get(index, slot) == fingerprint) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 读取指定桶、指定槽位的指纹, 指纹可能跨越2个long
+     */
+    private long get(int index, int slot) {
+        long position = ((long) index * SLOTS_PER_BUCKET + slot) * fingerprintBits;
+        int word = (int) (position >>> 6);
+        int shift = (int) position & 63;
+        long value = table[word] >>> shift;
+        if (shift + fingerprintBits > Long.SIZE) {
+            value |= table[word + 1] << (Long.SIZE - shift);
+        }
+        return value & fingerprintMask;
+    }
+
+    private void set(int index, int slot, long fingerprint) {
+        long position = ((long) index * SLOTS_PER_BUCKET + slot) * fingerprintBits;
+        int word = (int) (position >>> 6);
+        int shift = (int) position & 63;
+        table[word] = table[word] & ~(fingerprintMask << shift) | fingerprint << shift;
+        if (shift + fingerprintBits > Long.SIZE) {
+            int written = Long.SIZE - shift;
+            table[word + 1] = table[word + 1] & ~(fingerprintMask >>> written) | fingerprint >>> written;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.sym.structure.bloomfilter.impl;
 
 import com.sym.structure.bloomfilter.AbstractBloomFilter;
+import com.sym.structure.bloomfilter.hash.Funnel;
 import lombok.AllArgsConstructor;
 
 /**
@@ -18,8 +19,12 @@ public class LongArrayBloomFilter<T> extends AbstractBloomFilter<T> {
     private long[] longArray;
 
     public LongArrayBloomFilter(int dataCount, double misjudgmentRate) {
+        this(dataCount, misjudgmentRate, Funnel.hashCodeFunnel());
+    }
+
+    public LongArrayBloomFilter(int dataCount, double misjudgmentRate, Funnel<? super T> funnel) {
         // 通过父类计算需要的二进制位总数量
-        super(dataCount, misjudgmentRate);
+        super(dataCount, misjudgmentRate, funnel);
         // 初始化整型数组
         int size = bitCount / Long.SIZE;
         longArray = new long[++size];
@@ -45,8 +50,23 @@ public class LongArrayBloomFilter<T> extends AbstractBloomFilter<T> {
         // 取出数组中的对应的long数
         long l = longArray[pair.index];
         // 与setBit()方法相反, 指定位置为1, 其它位置为0, 如果进行与运算后,
-        // 值还大于0, 说明原先的值就为1, 反之就是0.
-        return (l & (1L << pair.bit)) > 0;
+        // 值不为0, 说明原先的值就为1, 反之就是0. 第63位是符号位, 所以不能用大于0判断.
+        return (l & (1L << pair.bit)) != 0;
+    }
+
+    @Override
+    protected int wordCount() {
+        return longArray.length;
+    }
+
+    @Override
+    protected long getWord(int i) {
+        return longArray[i];
+    }
+
+    @Override
+    protected void setWord(int i, long word) {
+        longArray[i] = word;
     }
 
     /**
@@ -59,7 +79,7 @@ public class LongArrayBloomFilter<T> extends AbstractBloomFilter<T> {
         // 首先, 确定long数组的下标, 即 使用哪一个long
         int idx = index / Long.SIZE;
         // 其次, 从选出的long中, 定位它是处于哪一位
-        int num = index % (Long.SIZE - 1);
+        int num = index % Long.SIZE;
         return Pair.of(idx, num);
     }
 
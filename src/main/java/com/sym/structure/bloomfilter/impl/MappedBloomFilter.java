@@ -0,0 +1,193 @@
+package com.sym.structure.bloomfilter.impl;
+
+import com.sym.structure.bloomfilter.AbstractBloomFilter;
+import com.sym.structure.bloomfilter.BloomFilterSnapshot;
+import com.sym.structure.bloomfilter.hash.Funnel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 二进制位直接保存在内存映射文件中的布隆过滤器, 文件就是{@link BloomFilterSnapshot}格式的快照.
+ * <p>
+ * 打开时只读取文件头并建立映射, 不会把二进制位读入堆内, 所以启动耗时与过滤器的大小无关,
+ * 查询时由操作系统按页加载, 同一个快照还可以被多个进程共享. 以可写方式打开时, 添加的元素直接写入文件.
+ * <p>
+ * 只能打开与{@link LongArrayBloomFilter}二进制位布局相同的快照: 下标由{@link AbstractBloomFilter}的默认方式计算,
+ * 第i位保存在第 i/64 个long的第 i%64 位. 单个映射区域不能超过2GB, 不是线程安全的.
+ *
+ * @author shenyanming
+ * Created on 2021/2/10 10:40.
+ */
+
+public class MappedBloomFilter<T> extends AbstractBloomFilter<T> implements Closeable {
+
+    /**
+     * 二进制位布局与{@link LongArrayBloomFilter}相同的实现
+     */
+    private final static Set<String> COMPATIBLE_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            LongArrayBloomFilter.class.getName(),
+            BitSetBloomFilter.class.getName(),
+            ConcurrentBloomFilter.class.getName())));
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    /**
+     * 文件头之后的long视图
+     */
+    private final LongBuffer words;
+
+    private final boolean writable;
+
+    /**
+     * 打开文件并建立映射所花的时间
+     */
+    private final long startupNanos;
+
+    private MappedBloomFilter(BloomFilterSnapshot.Header header, FileChannel channel, boolean writable,
+                              Funnel<? super T> funnel, long start) throws IOException {
+        super(header.getDataCount(), header.getMisjudgmentRate(), funnel);
+        if (bitCount != header.getBitCount() || hashCount != header.getHashCount()
+                || header.getWordCount() < (bitCount + Long.SIZE - 1) / Long.SIZE) {
+            throw new IOException("快照与过滤器的参数不一致");
+        }
+        this.channel = channel;
+        this.writable = writable;
+        long size = BloomFilterSnapshot.HEADER_SIZE + (long) header.getWordCount() * Long.BYTES;
+        this.buffer = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, size);
+        ((Buffer) buffer).position(BloomFilterSnapshot.HEADER_SIZE);
+        this.words = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        this.startupNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * 创建一个空的过滤器文件, 文件已存在时会被覆盖
+     *
+     * @param path            文件路径
+     * @param dataCount       数据规模
+     * @param misjudgmentRate 允许的误判率, (0, 1)
+     * @param funnel          把元素写成字节
+     * @return 以可写方式打开的过滤器
+     * @throws IOException 文件读写失败
+     */
+    public static <T> MappedBloomFilter<T> create(Path path, int dataCount, double misjudgmentRate,
+                                                  Funnel<? super T> funnel) throws IOException {
+        long start = System.nanoTime();
+        int bitCount = optimalBitCount(dataCount, misjudgmentRate);
+        // 与LongArrayBloomFilter的long数量保持一致, 快照可以互相加载
+        int wordCount = bitCount / Long.SIZE + 1;
+        BloomFilterSnapshot.Header header = new BloomFilterSnapshot.Header(LongArrayBloomFilter.class.getName(),
+                dataCount, misjudgmentRate, bitCount, optimalHashCount(dataCount, bitCount), wordCount);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            BloomFilterSnapshot.writeHeader(channel, header);
+            // 扩展文件大小, 二进制位全部为0
+            channel.write(ByteBuffer.allocate(1),
+                    BloomFilterSnapshot.HEADER_SIZE + (long) wordCount * Long.BYTES - 1);
+            return new MappedBloomFilter<>(header, channel, true, funnel, start);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+    }
+
+    /**
+     * 映射一个已有的快照
+     *
+     * @param path     快照文件
+     * @param funnel   保存时使用的funnel
+     * @param writable true-可以继续添加元素, 直接写入文件; false-只读
+     * @return 过滤器
+     * @throws IOException 文件读写失败或者格式不正确
+     */
+    public static <T> MappedBloomFilter<T> open(Path path, Funnel<? super T> funnel, boolean writable)
+            throws IOException {
+        long start = System.nanoTime();
+        FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            BloomFilterSnapshot.Header header = BloomFilterSnapshot.readHeader(channel);
+            if (!COMPATIBLE_TYPES.contains(header.getType())) {
+                throw new IOException("二进制位布局不兼容: " + header.getType());
+            }
+            return new MappedBloomFilter<>(header, channel, writable, funnel, start);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开文件并建立映射所花的时间(纳秒)
+     */
+    public long getStartupNanos() {
+        return startupNanos;
+    }
+
+    /**
+     * 把修改刷到磁盘
+     */
+    public void flush() {
+        if (writable) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    /**
+     * 二进制位布局与{@link LongArrayBloomFilter}相同, 保存的快照按它加载
+     */
+    @Override
+    protected String snapshotType() {
+        return LongArrayBloomFilter.class.getName();
+    }
+
+    @Override
+    protected void setBit(int index) {
+        int i = index >>> 6;
+        words.put(i, words.get(i) | 1L << index);
+    }
+
+    @Override
+    protected boolean existBit(int index) {
+        return (words.get(index >>> 6) & 1L << index) != 0;
+    }
+
+    @Override
+    protected int wordCount() {
+        return words.capacity();
+    }
+
+    @Override
+    protected long getWord(int i) {
+        return words.get(i);
+    }
+
+    @Override
+    protected void setWord(int i, long word) {
+        words.put(i, word);
+    }
+}
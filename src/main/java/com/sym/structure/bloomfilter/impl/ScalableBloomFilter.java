@@ -0,0 +1,214 @@
+package com.sym.structure.bloomfilter.impl;
+
+import com.sym.structure.bloomfilter.AbstractBloomFilter;
+import com.sym.structure.bloomfilter.IBloomFilter;
+import com.sym.structure.bloomfilter.hash.Funnel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 可扩容的布隆过滤器(Scalable Bloom Filter), 参考论文《Scalable Bloom Filters》.
+ * <p>
+ * 普通的布隆过滤器根据预估数据量一次性分配二进制位, 实际数据量超出预估值以后, 误判率会迅速上升.
+ * 这里把若干个子过滤器串成一条链, 最后一个子过滤器装满预估数据量以后, 再追加一个新的子过滤器:
+ * 1.第i个子过滤器的容量是 n0 * s^i, s 为扩容倍数;
+ * 2.第i个子过滤器的误判率是 p * (1 - r) * r^i, r 为收紧比例.
+ * <p>
+ * 各个子过滤器的误判率之和是一个等比数列, 总和不超过 p, 所以无论扩容多少次, 整体误判率都不超过配置的 p.
+ * 元素只添加到最后一个子过滤器, 查询时要检查所有的子过滤器. 不是线程安全的.
+ *
+ * @author shenyanming
+ * Created on 2021/2/8 10:15.
+ */
+
+public class ScalableBloomFilter<T> implements IBloomFilter<T> {
+
+    /**
+     * 默认的扩容倍数
+     */
+    private final static int DEFAULT_GROWTH = 2;
+
+    /**
+     * 默认的收紧比例
+     */
+    private final static double DEFAULT_TIGHTENING_RATIO = 0.5;
+
+    /**
+     * 整体误判率
+     */
+    private final double misjudgmentRate;
+
+    /**
+     * 扩容倍数
+     */
+    private final int growth;
+
+    /**
+     * 收紧比例
+     */
+    private final double tighteningRatio;
+
+    private final Funnel<? super T> funnel;
+
+    /**
+     * 子过滤器, 只有最后一个在添加元素
+     */
+    private final List<AbstractBloomFilter<T>> filters = new ArrayList<>();
+
+    /**
+     * 每个子过滤器已添加的元素个数
+     */
+    private long[] insertions = new long[4];
+
+    public ScalableBloomFilter(int initialDataCount, double misjudgmentRate) {
+        this(initialDataCount, misjudgmentRate, Funnel.hashCodeFunnel());
+    }
+
+    public ScalableBloomFilter(int initialDataCount, double misjudgmentRate, Funnel<? super T> funnel) {
+        this(initialDataCount, misjudgmentRate, DEFAULT_GROWTH, DEFAULT_TIGHTENING_RATIO, funnel);
+    }
+
+    /**
+     * 构造可扩容的布隆过滤器
+     *
+     * @param initialDataCount 第一个子过滤器的数据规模
+     * @param misjudgmentRate  整体允许的误判率, (0, 1)
+     * @param growth           扩容倍数, 不小于1
+     * @param tighteningRatio  收紧比例, (0, 1), 越小后面的子过滤器越精确, 占用的空间也越多
+     * @param funnel           把元素写成字节
+     */
+    public ScalableBloomFilter(int initialDataCount, double misjudgmentRate, int growth, double tighteningRatio,
+                               Funnel<? super T> funnel) {
+        if (growth < 1 || tighteningRatio <= 0 || tighteningRatio >= 1) {
+            throw new IllegalArgumentException("valid parameter");
+        }
+        this.misjudgmentRate = misjudgmentRate;
+        this.growth = growth;
+        this.tighteningRatio = tighteningRatio;
+        this.funnel = Objects.requireNonNull(funnel, "funnel is null");
+        // 第一个子过滤器同时校验数据规模和误判率
+        filters.add(new LongArrayBloomFilter<>(initialDataCount, misjudgmentRate * (1 - tighteningRatio), funnel));
+    }
+
+    @Override
+    public void put(T t) {
+        Objects.requireNonNull(t, "element is null");
+        // 所有子过滤器使用相同的Funnel, 只需要计算一次哈希值
+        long hash = current().hash(t);
+        // 已经存在的元素不再添加, 避免重复元素占用子过滤器的容量
+        if (containsHash(hash)) {
+            return;
+        }
+        int last = filters.size() - 1;
+        AbstractBloomFilter<T> filter = filters.get(last);
+        if (insertions[last] >= filter.getDataCount()) {
+            filter = grow();
+            last++;
+        }
+        filter.putHash(hash);
+        insertions[last]++;
+    }
+
+    @Override
+    public void put(Collection<T> collection) {
+        Objects.requireNonNull(collection, "collection is null");
+        collection.forEach(this::put);
+    }
+
+    @Override
+    public boolean contains(T t) {
+        return containsHash(current().hash(t));
+    }
+
+    /**
+     * 根据已添加的元素个数, 估算当前的整体误判率: 1 - ∏(1 - p(i)).
+     * 只要元素都是通过{@link #put(Object)}添加的, 这个值就不会超过配置的误判率
+     *
+     * @return 误判率
+     */
+    public double estimatedMisjudgmentRate() {
+        double pass = 1;
+        for (int i = 0; i < filters.size(); i++) {
+            pass *= 1 - filters.get(i).expectedMisjudgmentRate(insertions[i]);
+        }
+        return 1 - pass;
+    }
+
+    /**
+     * 最后一个子过滤器的填充比例, 达到1时下一次添加会触发扩容
+     *
+     * @return [0, 1]
+     */
+    public double fillRatio() {
+        int last = filters.size() - 1;
+        return (double) insertions[last] / filters.get(last).getDataCount();
+    }
+
+    /**
+     * 子过滤器的个数
+     */
+    public int filterCount() {
+        return filters.size();
+    }
+
+    /**
+     * 已添加的不同元素个数(误判为已存在的元素没有计入)
+     */
+    public long size() {
+        long size = 0;
+        for (int i = 0; i < filters.size(); i++) {
+            size += insertions[i];
+        }
+        return size;
+    }
+
+    /**
+     * 所有子过滤器占用的二进制位
+     */
+    public long bitCount() {
+        long bits = 0;
+        for (AbstractBloomFilter<T> filter : filters) {
+            bits += filter.getBitCount();
+        }
+        return bits;
+    }
+
+    public double getMisjudgmentRate() {
+        return misjudgmentRate;
+    }
+
+    private boolean containsHash(long hash) {
+        // 越新的子过滤器元素越多, 从后往前检查
+        for (int i = filters.size() - 1; i >= 0; i--) {
+            if (filters.get(i).containsHash(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 追加一个容量更大、误判率更低的子过滤器
+     */
+    private AbstractBloomFilter<T> grow() {
+        AbstractBloomFilter<T> last = current();
+        int n = filters.size();
+        long dataCount = Math.min((long) last.getDataCount() * growth, Integer.MAX_VALUE);
+        double rate = last.getMisjudgmentRate() * tighteningRatio;
+        AbstractBloomFilter<T> filter = new LongArrayBloomFilter<>((int) dataCount, rate, funnel);
+        filters.add(filter);
+        if (n == insertions.length) {
+            long[] newInsertions = new long[n << 1];
+            System.arraycopy(insertions, 0, newInsertions, 0, n);
+            insertions = newInsertions;
+        }
+        return filter;
+    }
+
+    private AbstractBloomFilter<T> current() {
+        return filters.get(filters.size() - 1);
+    }
+}
@@ -0,0 +1,567 @@
+package com.sym.structure.graph.impl.csr;
+
+import com.sym.structure.graph.IGraph;
+import com.sym.structure.graph.impl.AbstractAdvancedGraph;
+import com.sym.structure.graph.impl.list.LinkedListGraph;
+import com.sym.structure.graph.impl.list.UndirectedListGraph;
+import com.sym.structure.graph.strategy.IMstStrategy;
+import com.sym.structure.graph.strategy.IShortestPathStrategy;
+import com.sym.structure.graph.strategy.PredecessorPath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 压缩稀疏行(Compressed Sparse Row)实现的图, 边的权值为double.
+ * <p>
+ * 顶点按添加顺序编号为 0 ~ n-1, 所有的边按起点排序后连续存放在3个数组中:
+ * 1.offsets[n+1], 顶点v的出度边是下标 [offsets[v], offsets[v+1]) 之间的边;
+ * 2.targets[m], 边的终点编号;
+ * 3.weights[m], 边的权值.
+ * <p>
+ * 相比{@link LinkedListGraph}每条边都是一个对象、还要放进3个HashSet, 这里每条边只占12个字节,
+ * 遍历一个顶点的出度边就是顺序读取一段连续的数组, 没有指针跳转. bfs、dfs、mst、最短路径都只使用基本类型数组.
+ * <p>
+ * 图创建后不可修改, 通过{@link Builder}创建, 或者用{@link #from(LinkedListGraph, ToDoubleFunction)}从邻接表转换.
+ * 最短路径要求边的权值不为负数.
+ *
+ * @author shenyanming
+ * Created on 2021/2/20 10:20.
+ */
+public class CsrGraph<V> extends AbstractAdvancedGraph<V, Double> {
+
+    /**
+     * double权值的处理器
+     */
+    public final static IWeightHandler<Double> DOUBLE_HANDLER = new IWeightHandler<Double>() {
+        @Override
+        public int compare(Double e1, Double e2) {
+            return Double.compare(e1, e2);
+        }
+
+        @Override
+        public Double add(Double e1, Double e2) {
+            return e1 + e2;
+        }
+
+        @Override
+        public Double initialValue() {
+            return 0D;
+        }
+    };
+
+    /**
+     * 顶点编号到顶点值
+     */
+    private final Object[] values;
+
+    /**
+     * 顶点值到顶点编号, 只在通过顶点值访问图的时候使用
+     */
+    private final Map<V, Integer> indexes;
+
+    private final int[] offsets;
+
+    private final int[] targets;
+
+    private final double[] weights;
+
+    /**
+     * 是否为无向图, 无向图的每条边以两个方向各存储一次
+     */
+    private final boolean undirected;
+
+    private CsrGraph(Builder<V> builder, IMstStrategy<V, Double> mst, IShortestPathStrategy<V, Double> sp) {
+        super(mst, sp, DOUBLE_HANDLER);
+        this.values = builder.values.toArray();
+        // 复制一份, 构建器之后还可以继续添加顶点并构建新的图, 不能影响已经构建好的图
+        this.indexes = new HashMap<>(builder.indexes);
+        this.undirected = builder.undirected;
+        int n = values.length;
+        int m = builder.edgeCount;
+        // 按起点计数排序, 同一个起点的边保持添加顺序
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < m; i++) {
+            offsets[builder.froms[i] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] cursor = Arrays.copyOf(offsets, n);
+        int[] targets = new int[m];
+        double[] weights = new double[m];
+        for (int i = 0; i < m; i++) {
+            int position = cursor[builder.froms[i]]++;
+            targets[position] = builder.tos[i];
+            weights[position] = builder.weights[i];
+        }
+        // 每个顶点的出度边按终点排序并去重, 重复的边保留最后添加的一条, 与LinkedListGraph覆盖旧边的行为一致
+        int size = 0;
+        long[] keys = new long[0];
+        for (int v = 0; v < n; v++) {
+            int from = offsets[v];
+            int to = offsets[v + 1];
+            int degree = to - from;
+            if (keys.length < degree) {
+                keys = new long[Math.max(degree, keys.length << 1)];
+            }
+            for (int i = 0; i < degree; i++) {
+                keys[i] = (long) targets[from + i] << 32 | i;
+            }
+            Arrays.sort(keys, 0, degree);
+            offsets[v] = size;
+            double[] segment = Arrays.copyOfRange(weights, from, to);
+            for (int i = 0; i < degree; i++) {
+                int target = (int) (keys[i] >>> 32);
+                if (i + 1 < degree && (int) (keys[i + 1] >>> 32) == target) {
+                    continue;
+                }
+                targets[size] = target;
+                weights[size++] = segment[(int) keys[i]];
+            }
+        }
+        offsets[n] = size;
+        this.offsets = offsets;
+        this.targets = size == m ? targets : Arrays.copyOf(targets, size);
+        this.weights = size == m ? weights : Arrays.copyOf(weights, size);
+    }
+
+    /**
+     * 从邻接表转换, 无向图转换后仍然是无向图
+     *
+     * @param graph   邻接表实现的图
+     * @param weigher 把边的权值转换成double, 权值为null的边按1处理
+     * @return 新的图
+     */
+    public static <V, E> CsrGraph<V> from(LinkedListGraph<V, E> graph, ToDoubleFunction<E> weigher) {
+        Objects.requireNonNull(weigher);
+        Builder<V> builder = new Builder<>(graph instanceof UndirectedListGraph);
+        graph.forEachVertex(builder::addVertex);
+        // 无向图的邻接表已经存储了两个方向的边, 直接按有向边复制
+        graph.forEachEdge(edge -> builder.addArc(edge.getFrom(), edge.getTo(),
+                Objects.isNull(edge.getWeight()) ? 1 : weigher.applyAsDouble(edge.getWeight())));
+        return builder.build();
+    }
+
+    @Override
+    public boolean addVertex(V v) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is immutable");
+    }
+
+    @Override
+    public boolean addEdge(V from, V to) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is immutable");
+    }
+
+    @Override
+    public boolean addEdge(V from, V to, Double weight) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is immutable");
+    }
+
+    @Override
+    public boolean removeVertex(V t) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is immutable");
+    }
+
+    @Override
+    public boolean removeEdge(V from, V to) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is immutable");
+    }
+
+    @Override
+    public int verticesSize() {
+        return values.length;
+    }
+
+    @Override
+    public int edgeSize() {
+        return targets.length;
+    }
+
+    @Override
+    public void bfs(V v, Consumer<VertexInfo<V>> consumer) {
+        Integer start = indexes.get(v);
+        if (Objects.isNull(start) || Objects.isNull(consumer)) {
+            return;
+        }
+        // 每个顶点只入队一次, 队列用数组实现即可
+        int[] queue = new int[values.length];
+        boolean[] visited = new boolean[values.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        visited[start] = true;
+        while (head < tail) {
+            int u = queue[head++];
+            consumer.accept(VertexInfo.of(valueOf(u)));
+            for (int e = offsets[u], end = offsets[u + 1]; e < end; e++) {
+                int to = targets[e];
+                if (!visited[to]) {
+                    visited[to] = true;
+                    queue[tail++] = to;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void dfs(V v, Consumer<VertexInfo<V>> consumer) {
+        Integer start = indexes.get(v);
+        if (Objects.isNull(start) || Objects.isNull(consumer)) {
+            return;
+        }
+        // 栈中保存顶点, cursor记录每个顶点下一条要访问的出度边, 与递归实现的访问顺序相同
+        int[] stack = new int[values.length];
+        int[] cursor = new int[values.length];
+        boolean[] visited = new boolean[values.length];
+        int top = 0;
+        stack[top++] = start;
+        cursor[start] = offsets[start];
+        visited[start] = true;
+        consumer.accept(VertexInfo.of(valueOf(start)));
+        while (top > 0) {
+            int u = stack[top - 1];
+            if (cursor[u] == offsets[u + 1]) {
+                // 出度边都访问过了, 回溯
+                top--;
+                continue;
+            }
+            int to = targets[cursor[u]++];
+            if (!visited[to]) {
+                visited[to] = true;
+                consumer.accept(VertexInfo.of(valueOf(to)));
+                cursor[to] = offsets[to];
+                stack[top++] = to;
+            }
+        }
+    }
+
+    /**
+     * 顶点值对应的编号
+     *
+     * @param v 顶点值
+     * @return 编号, 顶点不存在时返回-1
+     */
+    public int indexOf(V v) {
+        Integer index = indexes.get(v);
+        return Objects.isNull(index) ? -1 : index;
+    }
+
+    /**
+     * 编号对应的顶点值
+     *
+     * @param index 编号
+     * @return 顶点值
+     */
+    @SuppressWarnings("unchecked")
+    public V valueOf(int index) {
+        return (V) values[index];
+    }
+
+    public boolean isUndirected() {
+        return undirected;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int u = 0; u < values.length; u++) {
+            if (offsets[u] == offsets[u + 1]) {
+                sb.append("[").append(values[u]).append("]\n");
+            }
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                sb.append("[").append(values[u]).append("] → [").append(values[targets[e]])
+                        .append("], w=").append(weights[e]).append(";\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 图的构建器. 添加的边先保存在3个数组中, {@link #build()}时再按起点排序成CSR格式
+     */
+    public static class Builder<V> {
+
+        private final boolean undirected;
+
+        private final List<V> values = new ArrayList<>();
+
+        private final Map<V, Integer> indexes = newMap();
+
+        private int[] froms = new int[16];
+
+        private int[] tos = new int[16];
+
+        private double[] weights = new double[16];
+
+        private int edgeCount;
+
+        private IMstStrategy<V, Double> mstStrategy = new Prim<>();
+
+        private IShortestPathStrategy<V, Double> shortestPathStrategy = new Dijkstra<>();
+
+        /**
+         * @param undirected true-无向图, 每条边会以两个方向各存储一次
+         */
+        public Builder(boolean undirected) {
+            this.undirected = undirected;
+        }
+
+        /**
+         * 添加顶点, 顶点已经存在时不做处理
+         *
+         * @param v 顶点值
+         * @return 顶点编号
+         */
+        public int addVertex(V v) {
+            Integer index = indexes.get(v);
+            if (Objects.isNull(index)) {
+                index = values.size();
+                values.add(v);
+                indexes.put(v, index);
+            }
+            return index;
+        }
+
+        /**
+         * 添加权值为1的边
+         */
+        public Builder<V> addEdge(V from, V to) {
+            return addEdge(from, to, 1);
+        }
+
+        /**
+         * 添加边, 起点和终点不存在时会先添加顶点. 相同起点和终点的边, 保留最后添加的一条
+         */
+        public Builder<V> addEdge(V from, V to, double weight) {
+            addArc(from, to, weight);
+            if (undirected) {
+                addArc(to, from, weight);
+            }
+            return this;
+        }
+
+        public Builder<V> mstStrategy(IMstStrategy<V, Double> mstStrategy) {
+            this.mstStrategy = Objects.requireNonNull(mstStrategy);
+            return this;
+        }
+
+        public Builder<V> shortestPathStrategy(IShortestPathStrategy<V, Double> shortestPathStrategy) {
+            this.shortestPathStrategy = Objects.requireNonNull(shortestPathStrategy);
+            return this;
+        }
+
+        public CsrGraph<V> build() {
+            return new CsrGraph<>(this, mstStrategy, shortestPathStrategy);
+        }
+
+        /**
+         * 只添加一个方向的边
+         */
+        private void addArc(V from, V to, double weight) {
+            int fromIndex = addVertex(from);
+            int toIndex = addVertex(to);
+            if (edgeCount == froms.length) {
+                int capacity = edgeCount << 1;
+                froms = Arrays.copyOf(froms, capacity);
+                tos = Arrays.copyOf(tos, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+            }
+            froms[edgeCount] = fromIndex;
+            tos[edgeCount] = toIndex;
+            weights[edgeCount++] = weight;
+        }
+    }
+
+    /**
+     * 最小堆, 元素是 (double权值, int编号) 二元组, 用两个基本类型数组存储, 没有装箱.
+     * 同一个编号可以重复入堆, 出堆时由调用方丢弃过期的元素
+     */
+    private static class DoubleIntHeap {
+
+        private double[] keys = new double[16];
+
+        private int[] items = new int[16];
+
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(double key, int item) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size << 1);
+                items = Arrays.copyOf(items, size << 1);
+            }
+            // 上滤
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                items[i] = items[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            items[i] = item;
+        }
+
+        double topKey() {
+            return keys[0];
+        }
+
+        int topItem() {
+            return items[0];
+        }
+
+        void remove() {
+            double key = keys[--size];
+            int item = items[size];
+            // 下滤
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = (i << 1) + 1;
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (key <= keys[child]) {
+                    break;
+                }
+                keys[i] = keys[child];
+                items[i] = items[child];
+                i = child;
+            }
+            keys[i] = key;
+            items[i] = item;
+        }
+    }
+
+    /**
+     * Prim算法, 每次选择连接已访问顶点和未访问顶点的最小边. key[v]记录v与已访问顶点之间最小边的权值,
+     * parent[v]记录这条边的另一端. 图不连通时, 对每个连通分量分别计算, 得到最小生成森林
+     */
+    public static class Prim<V> implements IMstStrategy<V, Double> {
+
+        @Override
+        public List<EdgeInfo<V, Double>> mst(IGraph<V, Double> param) {
+            // 最小生成树是针对无向图计算的
+            if (!(param instanceof CsrGraph) || !((CsrGraph<V>) param).undirected) {
+                return Collections.emptyList();
+            }
+            CsrGraph<V> graph = (CsrGraph<V>) param;
+            int n = graph.values.length;
+            double[] key = new double[n];
+            int[] parent = new int[n];
+            boolean[] visited = new boolean[n];
+            Arrays.fill(key, Double.POSITIVE_INFINITY);
+            List<EdgeInfo<V, Double>> retList = newList();
+            DoubleIntHeap heap = new DoubleIntHeap();
+            for (int root = 0; root < n; root++) {
+                if (visited[root]) {
+                    continue;
+                }
+                key[root] = 0;
+                parent[root] = -1;
+                heap.add(0, root);
+                while (!heap.isEmpty()) {
+                    int u = heap.topItem();
+                    double weight = heap.topKey();
+                    heap.remove();
+                    // 同一个顶点可能多次入堆, 只处理第一次出堆
+                    if (visited[u] || weight > key[u]) {
+                        continue;
+                    }
+                    visited[u] = true;
+                    if (parent[u] >= 0) {
+                        retList.add(new EdgeInfo<>(graph.valueOf(parent[u]), graph.valueOf(u), weight));
+                    }
+                    for (int e = graph.offsets[u], end = graph.offsets[u + 1]; e < end; e++) {
+                        int to = graph.targets[e];
+                        if (!visited[to] && graph.weights[e] < key[to]) {
+                            key[to] = graph.weights[e];
+                            parent[to] = u;
+                            heap.add(key[to], to);
+                        }
+                    }
+                }
+            }
+            return retList;
+        }
+    }
+
+    /**
+     * Dijkstra算法, 用最小堆选择当前距离最小的顶点, 用前驱数组记录最短路径树, 路径由{@link PredecessorPath}按需还原
+     */
+    public static class Dijkstra<V> implements IShortestPathStrategy<V, Double> {
+
+        @Override
+        public List<PathInfo<V, Double>> shortestPath(IGraph<V, Double> param, V v) {
+            if (!(param instanceof CsrGraph)) {
+                return Collections.emptyList();
+            }
+            CsrGraph<V> graph = (CsrGraph<V>) param;
+            int source = graph.indexOf(v);
+            // 起点不存在
+            if (source < 0) {
+                return Collections.emptyList();
+            }
+            int n = graph.values.length;
+            double[] dist = new double[n];
+            int[] prev = new int[n];
+            shortestPath(graph, source, dist, prev);
+            List<PathInfo<V, Double>> retList = newList();
+            for (int u = 0; u < n; u++) {
+                if (u != source && dist[u] != Double.POSITIVE_INFINITY) {
+                    retList.add(new PathInfo<>(graph.valueOf(u), dist[u], new PredecessorPath<>(graph.values, prev, u)));
+                }
+            }
+            return retList;
+        }
+
+        /**
+         * 计算单源最短路径, 结果写入调用方提供的数组, 不创建任何对象
+         *
+         * @param graph  图
+         * @param source 起点编号
+         * @param dist   起点到每个顶点的距离, 不可达为正无穷
+         * @param prev   每个顶点在最短路径上的前一个顶点, 起点和不可达的顶点为-1
+         */
+        public void shortestPath(CsrGraph<V> graph, int source, double[] dist, int[] prev) {
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            Arrays.fill(prev, -1);
+            dist[source] = 0;
+            DoubleIntHeap heap = new DoubleIntHeap();
+            heap.add(0, source);
+            while (!heap.isEmpty()) {
+                int u = heap.topItem();
+                double d = heap.topKey();
+                heap.remove();
+                // 过期的元素, 该顶点已经以更小的距离出过堆
+                if (d > dist[u]) {
+                    continue;
+                }
+                // 松弛操作
+                for (int e = graph.offsets[u], end = graph.offsets[u + 1]; e < end; e++) {
+                    int to = graph.targets[e];
+                    double newDist = d + graph.weights[e];
+                    if (newDist < dist[to]) {
+                        dist[to] = newDist;
+                        prev[to] = u;
+                        heap.add(newDist, to);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -4,8 +4,10 @@ import com.sym.structure.graph.IGraph;
 import com.sym.structure.graph.impl.AbstractAdvancedGraph;
 import com.sym.structure.graph.strategy.IMstStrategy;
 import com.sym.structure.graph.strategy.IShortestPathStrategy;
+import com.sym.structure.graph.strategy.PredecessorPath;
 import com.sym.structure.heap.IHeap;
 import com.sym.structure.heap.impl.BinaryHeap;
+import com.sym.structure.heap.impl.IndexedBinaryHeap;
 import com.sym.structure.queue.IQueue;
 import com.sym.structure.queue.linked.LinkedQueue;
 import com.sym.structure.stack.IStack;
@@ -178,6 +180,24 @@ public class LinkedListGraph<V, E> extends AbstractAdvancedGraph<V, E> {
         dfs2(vertex, visitedSet, consumer);
     }
 
+    /**
+     * 遍历所有顶点
+     *
+     * @param consumer 处理逻辑
+     */
+    public void forEachVertex(Consumer<V> consumer) {
+        vertices.keySet().forEach(consumer);
+    }
+
+    /**
+     * 遍历所有边, 无向图的每条边会以两个方向各出现一次
+     *
+     * @param consumer 处理逻辑
+     */
+    public void forEachEdge(Consumer<EdgeInfo<V, E>> consumer) {
+        edges.forEach(edge -> consumer.accept(new EdgeInfo<>(edge.from.value, edge.to.value, edge.weight)));
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -438,11 +458,14 @@ public class LinkedListGraph<V, E> extends AbstractAdvancedGraph<V, E> {
     }
 
     /**
-     * Dijkstra算法, 通过松弛操作来求得单源最短路径
+     * Dijkstra算法, 通过松弛操作来求得单源最短路径.
+     * 用索引堆选择当前权值最小的顶点, 松弛时对堆中的顶点执行decrease-key, 时间复杂度为O((V+E)logV);
+     * 路径只记录前驱顶点, 最后用{@link PredecessorPath}还原, 不会在每次松弛时复制整条路径, 空间复杂度为O(V).
      */
     public static class Dijkstra<V, E> implements IShortestPathStrategy<V, E> {
 
         @Override
+        @SuppressWarnings("unchecked")
         public List<PathInfo<V, E>> shortestPath(IGraph<V, E> param, V v) {
             if (!(param instanceof LinkedListGraph)) {
                 return Collections.emptyList();
@@ -453,75 +476,60 @@ public class LinkedListGraph<V, E> extends AbstractAdvancedGraph<V, E> {
             if (Objects.isNull(vertex)) {
                 return Collections.emptyList();
             }
-            // 返回值,
-            Map<Vertex<V, E>, PathInfo<V, E>> retMap = newMap();
-            // Dijkstra算法需要一个路径表来维护起点到其它顶点的距离, 并且预先将起点加入到路径表中
-            Map<Vertex<V, E>, PathInfo<V, E>> pathMap = newMap();
-            pathMap.put(vertex, new PathInfo<>(vertex.value, graph.initEdgeWeight(), Collections.singletonList(vertex.value)));
-            while (true) {
-                // 选择当前路径表中权值最小的路径
-                Map.Entry<Vertex<V, E>, PathInfo<V, E>> minPath = findMinPath(pathMap, graph);
-                if (Objects.isNull(minPath)) {
-                    break;
-                }
-                // 从路径表中找出最小的路径, 将其加入到返回值中, 然后执行松弛操作
-                retMap.put(minPath.getKey(), minPath.getValue());
-                // 执行松弛操作
-                relaxation(pathMap, retMap, minPath, graph);
-            }
-            // 去除起点
-            retMap.remove(vertex);
-            return new ArrayList<>(retMap.values());
-        }
-
-        /**
-         * 从路径表中选择当前权值最小的路径
-         *
-         * @param pathMap 路径表
-         * @param graph   图, 用来比较边的大小
-         * @return [顶点, 权值]
-         */
-        private Map.Entry<Vertex<V, E>, PathInfo<V, E>> findMinPath(Map<Vertex<V, E>, PathInfo<V, E>> pathMap,
-                                                                    LinkedListGraph<V, E> graph) {
-            Map.Entry<Vertex<V, E>, PathInfo<V, E>> entry = pathMap.entrySet().stream().min((o1, o2) ->
-                    graph.compareWithEdge(o1.getValue().getWeight(), o2.getValue().getWeight())).orElse(null);
-            if (Objects.nonNull(entry)) {
-                // 从路径表中选择最小的路径后, 要将其移除, 避免在下一次循环中又被选择
-                pathMap.remove(entry.getKey());
+            // 给每个顶点编号, 之后都通过编号访问数组
+            List<Vertex<V, E>> vertexList = new ArrayList<>(graph.vertices.values());
+            int n = vertexList.size();
+            Object[] values = new Object[n];
+            Map<Vertex<V, E>, Integer> indexes = newMap();
+            for (int i = 0; i < n; i++) {
+                values[i] = vertexList.get(i).value;
+                indexes.put(vertexList.get(i), i);
             }
-            return entry;
-        }
-
-        /**
-         * 执行松弛操作
-         *
-         * @param pathMap         路径表
-         * @param selectedPathMap 已确定最短路径的顶点集
-         * @param minPath         当前确定最短路径的路径
-         * @param graph           图, 用来比较边的大小
-         */
-        private void relaxation(Map<Vertex<V, E>, PathInfo<V, E>> pathMap, Map<Vertex<V, E>, PathInfo<V, E>> selectedPathMap,
-                                Map.Entry<Vertex<V, E>, PathInfo<V, E>> minPath, LinkedListGraph<V, E> graph) {
-            // currentWeight 就是已经可以确定起点到目标顶点的最短路径的权值.
-            E currentWeight = minPath.getValue().getWeight();
-            // 对已经确定最短路径的顶点的出度边, 作松弛操作.
-            for (Edge<V, E> edge : minPath.getKey().outEdges) {
-                if (selectedPathMap.containsKey(edge.to)) {
-                    // 已经确定最短路径的顶点就不需要再处理
-                    continue;
+            // 起点到每个顶点的最短路径的权值, 以及最短路径上的前一个顶点
+            Object[] weights = new Object[n];
+            int[] prev = new int[n];
+            Arrays.fill(prev, -1);
+            // 已确定最短路径的顶点
+            boolean[] selected = new boolean[n];
+            // 路径表, 即已经找到路径、但还未确定是最短路径的顶点
+            IndexedBinaryHeap<E> pathHeap = new IndexedBinaryHeap<>(n, (a, b) -> graph.compareWithEdge(a, b));
+            int source = indexes.get(vertex);
+            weights[source] = graph.initEdgeWeight();
+            pathHeap.add(source, graph.initEdgeWeight());
+            List<PathInfo<V, E>> retList = newList();
+            while (!pathHeap.isEmpty()) {
+                // 选择当前路径表中权值最小的路径, 它就是起点到该顶点的最短路径
+                int u = pathHeap.remove();
+                selected[u] = true;
+                E currentWeight = (E) weights[u];
+                if (u != source) {
+                    retList.add(new PathInfo<>((V) values[u], currentWeight, new PredecessorPath<>(values, prev, u)));
                 }
-                PathInfo<V, E> old = pathMap.get(edge.to);
-                E newWeigh = graph.addWithEdge(currentWeight, edge.weight);
-                /*
-                 * 1.如果路径表中还未记录起点到edge.to的路径, 则为其创建一条新纪录;
-                 * 2.如果原先路径表中已存在起点到edge.to的路径, 就需要比较：当新路径（newWeight）
-                 *   的权值比旧路径（currentWeight）的权值还小, 则用新路径替换旧路径.
-                 */
-                if (Objects.isNull(old) || graph.compareWithEdge(old.getWeight(), newWeigh) > 0) {
-                    PathInfo<V, E> pathInfo = new PathInfo<>(edge.to.value, newWeigh, newList(minPath.getValue().getPaths(), edge.to.value));
-                    pathMap.put(edge.to, pathInfo);
+                // 对它的出度边作松弛操作
+                for (Edge<V, E> edge : vertexList.get(u).outEdges) {
+                    int to = indexes.get(edge.to);
+                    if (selected[to]) {
+                        // 已经确定最短路径的顶点就不需要再处理
+                        continue;
+                    }
+                    E newWeight = graph.addWithEdge(currentWeight, edge.weight);
+                    /*
+                     * 1.如果路径表中还未记录起点到edge.to的路径, 则为其创建一条新纪录;
+                     * 2.如果原先路径表中已存在起点到edge.to的路径, 就需要比较：当新路径（newWeight）
+                     *   的权值比旧路径的权值还小, 则用新路径替换旧路径, 即decrease-key.
+                     */
+                    if (!pathHeap.contains(to)) {
+                        weights[to] = newWeight;
+                        prev[to] = u;
+                        pathHeap.add(to, newWeight);
+                    } else if (graph.compareWithEdge((E) weights[to], newWeight) > 0) {
+                        weights[to] = newWeight;
+                        prev[to] = u;
+                        pathHeap.update(to, newWeight);
+                    }
                 }
             }
+            return retList;
         }
     }
 
@@ -0,0 +1,75 @@
+package com.sym.structure.graph.strategy;
+
+import java.util.AbstractList;
+import java.util.Objects;
+
+/**
+ * 通过前驱数组表示的路径, 用作{@link IShortestPathStrategy.PathInfo#getPaths()}.
+ * <p>
+ * 单源最短路径的所有路径组成一棵以起点为根的树, prev[v]记录v在树上的父节点, 所有路径共享同一个前驱数组,
+ * 总内存是O(V). 每条路径只有在第一次被访问时才沿着prev[]回溯到起点, 还原成数组, 不访问就不占用额外空间.
+ *
+ * @author shenyanming
+ * Created on 2021/2/21 11:00.
+ */
+@SuppressWarnings("unchecked")
+public final class PredecessorPath<V> extends AbstractList<V> {
+
+    /**
+     * 顶点编号 → 顶点值, 所有路径共享
+     */
+    private final Object[] values;
+
+    /**
+     * 顶点编号 → 前驱顶点编号, 起点为-1, 所有路径共享
+     */
+    private final int[] prev;
+
+    /**
+     * 终点编号
+     */
+    private final int target;
+
+    /**
+     * 还原后的路径, 从起点到终点
+     */
+    private Object[] path;
+
+    /**
+     * 构造方法
+     *
+     * @param values 顶点编号 → 顶点值
+     * @param prev   顶点编号 → 前驱顶点编号, 起点为-1
+     * @param target 终点编号
+     */
+    public PredecessorPath(Object[] values, int[] prev, int target) {
+        this.values = Objects.requireNonNull(values);
+        this.prev = Objects.requireNonNull(prev);
+        this.target = target;
+    }
+
+    @Override
+    public V get(int index) {
+        return (V) path()[index];
+    }
+
+    @Override
+    public int size() {
+        return path().length;
+    }
+
+    private Object[] path() {
+        if (Objects.isNull(path)) {
+            int length = 0;
+            for (int v = target; v >= 0; v = prev[v]) {
+                length++;
+            }
+            Object[] path = new Object[length];
+            for (int v = target; v >= 0; v = prev[v]) {
+                path[--length] = values[v];
+            }
+            this.path = path;
+        }
+        return path;
+    }
+}
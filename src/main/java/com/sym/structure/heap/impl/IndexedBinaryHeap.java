@@ -0,0 +1,293 @@
+package com.sym.structure.heap.impl;
+
+import com.sym.structure.heap.IHeap;
+import com.sym.util.printer.BinaryTreeInfo;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * 索引二叉堆, 堆中的元素是 [0, capacity) 之间的整数编号, 每个编号关联一个优先级(key), 按key建堆.
+ * 与{@link BinaryHeap}相比, 它多维护了一个 编号→堆中下标 的数组, 所以可以在O(logn)内修改任意编号的key,
+ * 即 decrease-key 操作, 这是Dijkstra、Prim这类算法需要的：
+ * 1.heap[i], 堆中下标i的位置存放的编号;
+ * 2.positions[id], 编号id在堆中的下标, 不在堆中为-1;
+ * 3.keys[id], 编号id的key.
+ * 每个编号在堆中至多出现一次, 所以堆的大小不会超过capacity, 不需要扩容. key是否允许为null由比较器决定.
+ *
+ * @author shenyanming
+ * Created on 2021/2/21 10:15.
+ */
+@SuppressWarnings("unchecked")
+public class IndexedBinaryHeap<K> implements BinaryTreeInfo {
+
+    /**
+     * 堆中下标 → 编号
+     */
+    private final int[] heap;
+
+    /**
+     * 编号 → 堆中下标
+     */
+    private final int[] positions;
+
+    /**
+     * 编号 → key
+     */
+    private final Object[] keys;
+
+    /**
+     * 比较器, 为null时key需要实现{@link Comparable}
+     */
+    private final Comparator<? super K> comparator;
+
+    /**
+     * 最大堆 or 最小堆
+     */
+    private final IHeap.Type type;
+
+    /**
+     * 实际元素数量
+     */
+    private int size;
+
+    public IndexedBinaryHeap(int capacity) {
+        this(capacity, IHeap.Type.MIN, null);
+    }
+
+    public IndexedBinaryHeap(int capacity, Comparator<? super K> comparator) {
+        this(capacity, IHeap.Type.MIN, comparator);
+    }
+
+    /**
+     * 构造方法
+     *
+     * @param capacity   编号的范围 [0, capacity)
+     * @param type       最大堆 or 最小堆
+     * @param comparator key的比较器
+     */
+    public IndexedBinaryHeap(int capacity, IHeap.Type type, Comparator<? super K> comparator) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity < 0");
+        }
+        this.heap = new int[capacity];
+        this.positions = new int[capacity];
+        this.keys = new Object[capacity];
+        this.type = Objects.requireNonNull(type);
+        this.comparator = comparator;
+        Arrays.fill(positions, -1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 清空堆
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+            keys[heap[i]] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * 编号是否在堆中
+     *
+     * @param id 编号
+     * @return true-在堆中
+     */
+    public boolean contains(int id) {
+        checkId(id);
+        return positions[id] >= 0;
+    }
+
+    /**
+     * 添加编号
+     *
+     * @param id  编号, 不能已经在堆中
+     * @param key 优先级
+     */
+    public void add(int id, K key) {
+        checkId(id);
+        if (positions[id] >= 0) {
+            throw new IllegalArgumentException("id " + id + " is already in heap");
+        }
+        keys[id] = key;
+        heap[size] = id;
+        positions[id] = size;
+        siftUp(size++);
+    }
+
+    /**
+     * 修改编号的key, 新key可以比原来的更优先(decrease-key), 也可以更靠后
+     *
+     * @param id  编号, 必须在堆中
+     * @param key 新的优先级
+     */
+    public void update(int id, K key) {
+        int index = checkContains(id);
+        K old = (K) keys[id];
+        keys[id] = key;
+        if (compare(key, old) > 0) {
+            siftUp(index);
+        } else {
+            siftDown(index);
+        }
+    }
+
+    /**
+     * 编号的key
+     *
+     * @param id 编号, 必须在堆中
+     * @return key
+     */
+    public K getKey(int id) {
+        checkContains(id);
+        return (K) keys[id];
+    }
+
+    /**
+     * 获取堆顶的编号
+     *
+     * @return 编号
+     */
+    public int get() {
+        return checkNotEmpty().heap[0];
+    }
+
+    /**
+     * 获取堆顶的key
+     *
+     * @return key
+     */
+    public K getTopKey() {
+        return (K) keys[checkNotEmpty().heap[0]];
+    }
+
+    /**
+     * 删除堆顶
+     *
+     * @return 堆顶的编号
+     */
+    public int remove() {
+        int top = checkNotEmpty().heap[0];
+        // 用最后一个编号覆盖堆顶, 再下滤
+        int last = heap[--size];
+        positions[top] = -1;
+        keys[top] = null;
+        if (size > 0) {
+            heap[0] = last;
+            positions[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * 上滤, 与{@link BinaryHeap}相同, 只是每次移动编号都要同步它的下标
+     */
+    private void siftUp(int index) {
+        int id = heap[index];
+        K key = (K) keys[id];
+        while (index > 0) {
+            int pIndex = (index - 1) >> 1;
+            int parent = heap[pIndex];
+            if (compare(key, (K) keys[parent]) <= 0) {
+                break;
+            }
+            heap[index] = parent;
+            positions[parent] = index;
+            index = pIndex;
+        }
+        heap[index] = id;
+        positions[id] = index;
+    }
+
+    /**
+     * 下滤, 只对非叶子节点处理, 第一个叶子节点的下标等于非叶子节点的数量
+     */
+    private void siftDown(int index) {
+        int id = heap[index];
+        K key = (K) keys[id];
+        int half = size >> 1;
+        while (index < half) {
+            int cIndex = (index << 1) + 1;
+            int right = cIndex + 1;
+            if (right < size && compare((K) keys[heap[right]], (K) keys[heap[cIndex]]) > 0) {
+                cIndex = right;
+            }
+            int child = heap[cIndex];
+            if (compare(key, (K) keys[child]) >= 0) {
+                break;
+            }
+            heap[index] = child;
+            positions[child] = index;
+            index = cIndex;
+        }
+        heap[index] = id;
+        positions[id] = index;
+    }
+
+    @Override
+    public Object printRoot() {
+        return size == 0 ? null : 0;
+    }
+
+    @Override
+    public Object printLeft(Object node) {
+        int leftChildIndex = ((int) node << 1) + 1;
+        return leftChildIndex < size ? leftChildIndex : null;
+    }
+
+    @Override
+    public Object printRight(Object node) {
+        int rightChildIndex = ((int) node << 1) + 2;
+        return rightChildIndex < size ? rightChildIndex : null;
+    }
+
+    @Override
+    public Object printNodeString(Object node) {
+        int id = heap[(int) node];
+        return id + "_" + keys[id];
+    }
+
+    /**
+     * key大小比较
+     *
+     * @return 大于0表示k1比k2更靠近堆顶
+     */
+    private int compare(K k1, K k2) {
+        int val = comparator != null ? comparator.compare(k1, k2) : ((Comparable<K>) k1).compareTo(k2);
+        return type == IHeap.Type.MAX ? val : -val;
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= positions.length) {
+            throw new IndexOutOfBoundsException("id: " + id + ", capacity: " + positions.length);
+        }
+    }
+
+    private int checkContains(int id) {
+        checkId(id);
+        int index = positions[id];
+        if (index < 0) {
+            throw new IllegalArgumentException("id " + id + " is not in heap");
+        }
+        return index;
+    }
+
+    private IndexedBinaryHeap<K> checkNotEmpty() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("heap is null");
+        }
+        return this;
+    }
+}
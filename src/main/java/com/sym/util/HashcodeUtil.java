@@ -74,4 +74,22 @@ public class HashcodeUtil {
         }
         return hashcode;
     }
+
+    /**
+     * 对哈希码做二次散列(MurmurHash3 的 fmix32 收尾函数). 像整数这种哈希码就是它自身的情况,
+     * 相邻的key哈希码也是相邻的, 只取低几位来定位时分布会很不均匀. 通过多轮的 异或右移 和 乘以奇数,
+     * 让输入的每一位都能影响到输出的每一位(雪崩效应), 即使输入只差1位, 输出也会有一半左右的位不同.
+     *
+     * @param hashcode 原哈希码
+     * @return 散列后的哈希码
+     */
+    public static int rehash(int hashcode) {
+        int h = hashcode;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
 }
@@ -1,13 +1,33 @@
 package com.sym;
 
+import com.sym.structure.bloomfilter.AbstractBloomFilter;
+import com.sym.structure.bloomfilter.BloomFilterSnapshot;
 import com.sym.structure.bloomfilter.IBloomFilter;
+import com.sym.structure.bloomfilter.IDeletableBloomFilter;
+import com.sym.structure.bloomfilter.ParallelBloomFilterBuilder;
+import com.sym.structure.bloomfilter.hash.Funnel;
 import com.sym.structure.bloomfilter.impl.BitSetBloomFilter;
+import com.sym.structure.bloomfilter.impl.BlockedBloomFilter;
+import com.sym.structure.bloomfilter.impl.ConcurrentBloomFilter;
+import com.sym.structure.bloomfilter.impl.CountingBloomFilter;
+import com.sym.structure.bloomfilter.impl.CuckooFilter;
 import com.sym.structure.bloomfilter.impl.LongArrayBloomFilter;
+import com.sym.structure.bloomfilter.impl.MappedBloomFilter;
+import com.sym.structure.bloomfilter.impl.ScalableBloomFilter;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 /**
  * 布隆过滤器测试类
@@ -28,6 +48,379 @@ public class BloomFilterTest {
         run(new LongArrayBloomFilter<>(100_0000, 0.1));
     }
 
+    /**
+     * 对比三种实现在超出CPU缓存的过滤器上的查询耗时和实际误判率.
+     * 1000万数据、1%误判率的过滤器大约12MB, 远大于L2缓存, 分块的布隆过滤器每次查询只访问一个缓存行.
+     * 三个过滤器交替测量, 避免先运行的实现独占JIT的类型profile
+     */
+    @Test
+    public void test03() {
+        int dataCount = 1000_0000;
+        double misjudgmentRate = 0.01;
+        Map<String, IBloomFilter<Integer>> filters = new LinkedHashMap<>();
+        filters.put("BitSetBloomFilter", new BitSetBloomFilter<>(dataCount, misjudgmentRate));
+        filters.put("LongArrayBloomFilter", new LongArrayBloomFilter<>(dataCount, misjudgmentRate));
+        filters.put("BlockedBloomFilter", new BlockedBloomFilter<>(dataCount, misjudgmentRate));
+        filters.values().forEach(filter -> {
+            for (int i = 0; i < dataCount; i++) {
+                filter.put(scramble(i));
+            }
+        });
+        // 提前装箱, 只统计查询本身的耗时. present是存在的元素, absent是一定不存在的元素
+        int queryCount = 100_0000;
+        Integer[] present = new Integer[queryCount];
+        Integer[] absent = new Integer[queryCount];
+        for (int i = 0; i < queryCount; i++) {
+            present[i] = scramble((int) ((long) i * 7919 % dataCount));
+            absent[i] = scramble(dataCount + i);
+        }
+        Map<String, long[]> best = new LinkedHashMap<>();
+        for (int round = 0; round < 5; round++) {
+            filters.forEach((name, filter) -> {
+                long[] nanos = best.computeIfAbsent(name, k -> new long[]{Long.MAX_VALUE, Long.MAX_VALUE, 0});
+                long start = System.nanoTime();
+                for (Integer key : present) {
+                    Assert.assertTrue("布隆过滤器不能漏判", filter.contains(key));
+                }
+                nanos[0] = Math.min(nanos[0], System.nanoTime() - start);
+                int falsePositive = 0;
+                start = System.nanoTime();
+                for (Integer key : absent) {
+                    if (filter.contains(key)) {
+                        falsePositive++;
+                    }
+                }
+                nanos[1] = Math.min(nanos[1], System.nanoTime() - start);
+                nanos[2] = falsePositive;
+            });
+        }
+        best.forEach((name, nanos) -> log.info("{}: 存在的元素 {} ns/op, 不存在的元素 {} ns/op, 实际误判率: {}", name,
+                String.format("%.1f", (double) nanos[0] / queryCount),
+                String.format("%.1f", (double) nanos[1] / queryCount),
+                String.format("%.4f", (double) nanos[2] / queryCount)));
+    }
+
+    /**
+     * 多个线程同时往一个过滤器中添加元素, 添加完成后所有元素都必须存在.
+     * LongArrayBloomFilter 并发设置同一个long时会丢失二进制位, 作为对照
+     */
+    @Test
+    public void test04() throws InterruptedException {
+        int dataCount = 200_0000;
+        int threads = 8;
+        IBloomFilter<Integer> concurrent = new ConcurrentBloomFilter<>(dataCount, 0.01);
+        IBloomFilter<Integer> unsafe = new LongArrayBloomFilter<>(dataCount, 0.01);
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int from = t * (dataCount / threads);
+            new Thread(() -> {
+                try {
+                    for (int i = from; i < from + dataCount / threads; i++) {
+                        concurrent.put(scramble(i));
+                        unsafe.put(scramble(i));
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+        int lost = 0;
+        for (int i = 0; i < dataCount; i++) {
+            Assert.assertTrue("并发添加的元素不能丢失", concurrent.contains(scramble(i)));
+            if (!unsafe.contains(scramble(i))) {
+                lost++;
+            }
+        }
+        log.info("ConcurrentBloomFilter 漏判数: 0, LongArrayBloomFilter 漏判数: {}", lost);
+    }
+
+    /**
+     * 1000万个字符串按照1%的误判率构建过滤器, 测量的误判率不能超出配置值太多.
+     * 这些字符串只差最后几个字符, hashCode()非常接近, 用Funnel按字节计算哈希值后, 误判率仍然接近理论值
+     */
+    @Test
+    public void test05() {
+        int dataCount = 1000_0000;
+        double misjudgmentRate = 0.01;
+        Map<String, IBloomFilter<String>> filters = new LinkedHashMap<>();
+        filters.put("BitSetBloomFilter", new BitSetBloomFilter<>(dataCount, misjudgmentRate, Funnel.stringFunnel()));
+        filters.put("LongArrayBloomFilter", new LongArrayBloomFilter<>(dataCount, misjudgmentRate, Funnel.stringFunnel()));
+        filters.put("BlockedBloomFilter", new BlockedBloomFilter<>(dataCount, misjudgmentRate, Funnel.stringFunnel()));
+        filters.put("ConcurrentBloomFilter", new ConcurrentBloomFilter<>(dataCount, misjudgmentRate, Funnel.stringFunnel()));
+        int queryCount = 100_0000;
+        filters.forEach((name, filter) -> {
+            for (int i = 0; i < dataCount; i++) {
+                filter.put("user:" + i);
+            }
+            for (int i = 0; i < dataCount; i += 97) {
+                Assert.assertTrue("布隆过滤器不能漏判", filter.contains("user:" + i));
+            }
+            int falsePositive = 0;
+            for (int i = dataCount; i < dataCount + queryCount; i++) {
+                if (filter.contains("user:" + i)) {
+                    falsePositive++;
+                }
+            }
+            double rate = (double) falsePositive / queryCount;
+            log.info("{}: 配置误判率: {}, 实际误判率: {}", name, misjudgmentRate, String.format("%.4f", rate));
+            // 分块的布隆过滤器用空间换取速度, 误判率本身会略高一些
+            double tolerance = filter instanceof BlockedBloomFilter ? 1.6 : 1.25;
+            Assert.assertTrue(name + " 实际误判率过高: " + rate, rate <= misjudgmentRate * tolerance);
+        });
+    }
+
+    /**
+     * 对比批量接口与逐个元素调用的吞吐量. 批量添加的元素必须能被逐个查询到, 批量查询的结果必须与逐个查询一致
+     */
+    @Test
+    public void test06() {
+        int dataCount = 1000_0000;
+        double misjudgmentRate = 0.01;
+        // 逐个添加和批量添加各用一个新的过滤器, 两者的耗时才有可比性
+        Map<String, Supplier<AbstractBloomFilter<Long>>> filters = new LinkedHashMap<>();
+        filters.put("LongArrayBloomFilter", () -> new LongArrayBloomFilter<>(dataCount, misjudgmentRate, Funnel.longFunnel()));
+        filters.put("BlockedBloomFilter", () -> new BlockedBloomFilter<>(dataCount, misjudgmentRate, Funnel.longFunnel()));
+        filters.put("ConcurrentBloomFilter", () -> new ConcurrentBloomFilter<>(dataCount, misjudgmentRate, Funnel.longFunnel()));
+        Long[] keys = new Long[dataCount];
+        for (int i = 0; i < dataCount; i++) {
+            keys[i] = (long) scramble(i);
+        }
+        int queryCount = 100_0000;
+        Long[] queries = new Long[queryCount];
+        for (int i = 0; i < queryCount; i++) {
+            // 一半存在, 一半不存在
+            queries[i] = (long) scramble((i & 1) == 0 ? i * 7 : dataCount + i);
+        }
+        filters.forEach((name, factory) -> {
+            AbstractBloomFilter<Long> singleFilter = null;
+            AbstractBloomFilter<Long> filter = null;
+            long singlePutNanos = Long.MAX_VALUE;
+            long putNanos = Long.MAX_VALUE;
+            long start;
+            for (int round = 0; round < 3; round++) {
+                singleFilter = factory.get();
+                start = System.nanoTime();
+                for (Long key : keys) {
+                    singleFilter.put(key);
+                }
+                singlePutNanos = Math.min(singlePutNanos, System.nanoTime() - start);
+                filter = factory.get();
+                start = System.nanoTime();
+                filter.putAll(keys);
+                putNanos = Math.min(putNanos, System.nanoTime() - start);
+            }
+            for (int i = 0; i < dataCount; i += 97) {
+                Assert.assertTrue("批量添加的元素不能漏判", filter.contains(keys[i]));
+            }
+            long single = Long.MAX_VALUE;
+            long batch = Long.MAX_VALUE;
+            boolean[] expected = new boolean[queryCount];
+            boolean[] actual = null;
+            for (int round = 0; round < 5; round++) {
+                start = System.nanoTime();
+                for (int i = 0; i < queryCount; i++) {
+                    expected[i] = filter.contains(queries[i]);
+                }
+                single = Math.min(single, System.nanoTime() - start);
+                start = System.nanoTime();
+                actual = filter.containsAll(queries);
+                batch = Math.min(batch, System.nanoTime() - start);
+            }
+            Assert.assertArrayEquals(expected, actual);
+            Assert.assertArrayEquals("批量添加与逐个添加的结果必须一致", singleFilter.containsAll(queries), actual);
+            log.info("{}: 逐个添加 {} ns/op, 批量添加 {} ns/op, 逐个查询 {} ns/op, 批量查询 {} ns/op", name,
+                    String.format("%.1f", (double) singlePutNanos / dataCount),
+                    String.format("%.1f", (double) putNanos / dataCount),
+                    String.format("%.1f", (double) single / queryCount),
+                    String.format("%.1f", (double) batch / queryCount));
+        });
+    }
+
+    /**
+     * 实际数据量是预估值的50倍, 可扩容的布隆过滤器的误判率仍然不超过配置值, 普通的布隆过滤器已经失效
+     */
+    @Test
+    public void test07() {
+        int dataCount = 10_0000;
+        int actualCount = 500_0000;
+        double misjudgmentRate = 0.01;
+        ScalableBloomFilter<String> scalable = new ScalableBloomFilter<>(dataCount, misjudgmentRate, Funnel.stringFunnel());
+        IBloomFilter<String> fixed = new LongArrayBloomFilter<>(dataCount, misjudgmentRate, Funnel.stringFunnel());
+        for (int i = 0; i < actualCount; i++) {
+            scalable.put("user:" + i);
+            fixed.put("user:" + i);
+            if (i % 100_0000 == 0) {
+                log.info("已添加: {}, 子过滤器: {}, 填充比例: {}, 估算误判率: {}", i, scalable.filterCount(),
+                        String.format("%.4f", scalable.fillRatio()),
+                        String.format("%.4f", scalable.estimatedMisjudgmentRate()));
+            }
+        }
+        for (int i = 0; i < actualCount; i += 97) {
+            Assert.assertTrue("布隆过滤器不能漏判", scalable.contains("user:" + i));
+        }
+        int queryCount = 100_0000;
+        int scalableFalsePositive = 0;
+        int fixedFalsePositive = 0;
+        for (int i = actualCount; i < actualCount + queryCount; i++) {
+            if (scalable.contains("user:" + i)) {
+                scalableFalsePositive++;
+            }
+            if (fixed.contains("user:" + i)) {
+                fixedFalsePositive++;
+            }
+        }
+        double rate = (double) scalableFalsePositive / queryCount;
+        log.info("ScalableBloomFilter: 估算误判率: {}, 实际误判率: {}, 每个元素占用 {} 位; LongArrayBloomFilter 实际误判率: {}",
+                String.format("%.4f", scalable.estimatedMisjudgmentRate()), String.format("%.4f", rate),
+                String.format("%.1f", (double) scalable.bitCount() / actualCount),
+                String.format("%.4f", (double) fixedFalsePositive / queryCount));
+        Assert.assertTrue(scalable.estimatedMisjudgmentRate() <= misjudgmentRate);
+        Assert.assertTrue("实际误判率过高: " + rate, rate <= misjudgmentRate * 1.25);
+    }
+
+    /**
+     * 对比普通、计数、布谷鸟三种过滤器的每个元素占用空间和吞吐量, 并模拟滑动窗口: 删除前一半元素后,
+     * 后一半元素不能漏判
+     */
+    @Test
+    public void test08() {
+        int dataCount = 200_0000;
+        double misjudgmentRate = 0.001;
+        Long[] keys = new Long[dataCount * 2];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (long) i;
+        }
+        CountingBloomFilter<Long> counting = new CountingBloomFilter<>(dataCount, misjudgmentRate, Funnel.longFunnel());
+        CuckooFilter<Long> cuckoo = new CuckooFilter<>(dataCount, misjudgmentRate, Funnel.longFunnel());
+        LongArrayBloomFilter<Long> plain = new LongArrayBloomFilter<>(dataCount, misjudgmentRate, Funnel.longFunnel());
+        Map<String, IBloomFilter<Long>> filters = new LinkedHashMap<>();
+        filters.put("LongArrayBloomFilter", plain);
+        filters.put("CountingBloomFilter", counting);
+        filters.put("CuckooFilter", cuckoo);
+        Map<String, Long> bits = new LinkedHashMap<>();
+        bits.put("LongArrayBloomFilter", (long) plain.getBitCount());
+        // 每个计数器占4位
+        bits.put("CountingBloomFilter", (long) counting.getBitCount() * 4);
+        bits.put("CuckooFilter", cuckoo.bitCount());
+        filters.forEach((name, filter) -> {
+            long start = System.nanoTime();
+            for (int i = 0; i < dataCount; i++) {
+                filter.put(keys[i]);
+            }
+            long putNanos = System.nanoTime() - start;
+            int falsePositive = 0;
+            start = System.nanoTime();
+            for (int i = dataCount; i < keys.length; i++) {
+                if (filter.contains(keys[i])) {
+                    falsePositive++;
+                }
+            }
+            long containsNanos = System.nanoTime() - start;
+            String removeOps = "-";
+            if (filter instanceof IDeletableBloomFilter) {
+                IDeletableBloomFilter<Long> deletable = (IDeletableBloomFilter<Long>) filter;
+                start = System.nanoTime();
+                for (int i = 0; i < dataCount / 2; i++) {
+                    Assert.assertTrue("添加过的元素必须能删除", deletable.remove(keys[i]));
+                }
+                removeOps = String.format("%.0f", dataCount / 2 / ((System.nanoTime() - start) / 1e9));
+                for (int i = dataCount / 2; i < dataCount; i++) {
+                    Assert.assertTrue("删除其它元素后不能漏判", filter.contains(keys[i]));
+                }
+            }
+            log.info("{}: 每个元素占用 {} 位, put {} ops/s, contains {} ops/s, remove {} ops/s, 实际误判率: {}", name,
+                    String.format("%.1f", (double) bits.get(name) / dataCount),
+                    String.format("%.0f", dataCount / (putNanos / 1e9)),
+                    String.format("%.0f", dataCount / (containsNanos / 1e9)),
+                    removeOps, String.format("%.5f", (double) falsePositive / dataCount));
+        });
+    }
+
+    /**
+     * 保存快照后分别完整读入和内存映射, 对比启动耗时, 两种方式的查询结果都必须与原过滤器一致.
+     * 内存映射只读取文件头, 耗时与过滤器大小无关
+     */
+    @Test
+    public void test09() throws IOException {
+        int dataCount = 2000_0000;
+        Path dir = Files.createTempDirectory("bloom-filter");
+        Path file = dir.resolve("filter.bloom");
+        LongArrayBloomFilter<Long> filter = new LongArrayBloomFilter<>(dataCount, 0.01, Funnel.longFunnel());
+        for (long i = 0; i < 200_0000; i++) {
+            filter.put(i);
+        }
+        long start = System.nanoTime();
+        BloomFilterSnapshot.save(filter, file);
+        long saveNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        AbstractBloomFilter<Long> loaded = BloomFilterSnapshot.load(file, Funnel.longFunnel());
+        long loadNanos = System.nanoTime() - start;
+        try (MappedBloomFilter<Long> mapped = MappedBloomFilter.open(file, Funnel.longFunnel(), false)) {
+            log.info("快照大小: {} MB, 保存: {} ms, 完整读入: {} ms, 内存映射: {} ms",
+                    Files.size(file) >> 20, saveNanos / 100_0000, loadNanos / 100_0000,
+                    String.format("%.3f", mapped.getStartupNanos() / 1e6));
+            for (long i = 0; i < 400_0000; i++) {
+                boolean expected = filter.contains(i);
+                Assert.assertEquals(expected, loaded.contains(i));
+                Assert.assertEquals(expected, mapped.contains(i));
+            }
+        }
+        // 可写的映射直接修改文件, 重新打开后仍然存在
+        Path mappedFile = dir.resolve("mapped.bloom");
+        try (MappedBloomFilter<Long> mapped = MappedBloomFilter.create(mappedFile, dataCount, 0.01, Funnel.longFunnel())) {
+            for (long i = 0; i < 10_0000; i++) {
+                mapped.put(i);
+            }
+        }
+        AbstractBloomFilter<Long> reopened = BloomFilterSnapshot.load(mappedFile, Funnel.longFunnel());
+        for (long i = 0; i < 10_0000; i++) {
+            Assert.assertTrue(reopened.contains(i));
+        }
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(mappedFile);
+        Files.deleteIfExists(dir);
+    }
+
+    /**
+     * 并行构建的过滤器与单线程构建的结果必须完全相同, 记录不同并行度下的构建耗时
+     */
+    @Test
+    public void test10() {
+        int dataCount = 1000_0000;
+        double misjudgmentRate = 0.01;
+        long[] hashes = new long[dataCount];
+        LongArrayBloomFilter<Long> single = new LongArrayBloomFilter<>(dataCount, misjudgmentRate, Funnel.longFunnel());
+        for (int i = 0; i < dataCount; i++) {
+            hashes[i] = single.hash((long) i);
+        }
+        long start = System.nanoTime();
+        for (long hash : hashes) {
+            single.putHash(hash);
+        }
+        log.info("单线程构建: {} ms", (System.nanoTime() - start) / 100_0000);
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int parallelism = 1; parallelism <= processors; parallelism <<= 1) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            ParallelBloomFilterBuilder<Long, LongArrayBloomFilter<Long>> builder = new ParallelBloomFilterBuilder<>(
+                    () -> new LongArrayBloomFilter<>(dataCount, misjudgmentRate, Funnel.longFunnel()), pool);
+            start = System.nanoTime();
+            LongArrayBloomFilter<Long> parallel = builder.buildHashes(hashes);
+            log.info("并行度 {}: {} ms", parallelism, (System.nanoTime() - start) / 100_0000);
+            pool.shutdown();
+            for (long i = 0; i < dataCount * 2L; i += 7) {
+                Assert.assertEquals(single.contains(i), parallel.contains(i));
+            }
+        }
+    }
+
+    /**
+     * 把连续的整数打散成随机分布的整数, 是一个双射, 不同的输入一定得到不同的输出
+     */
+    private static int scramble(int i) {
+        return i * 0x9E3779B9;
+    }
+
     private void run(IBloomFilter<Integer> bloomFilter) {
         // 预先塞入100万个数字
         for (int i = 0; i < 100_0000; i++) {
@@ -1,8 +1,49 @@
 package com.sym;
 
+import com.sym.algorithm.example.cache.CacheLoader;
+import com.sym.algorithm.example.cache.ICache;
+import com.sym.algorithm.example.cache.Serializer;
+import com.sym.algorithm.example.cache.expiry.Ticker;
+import com.sym.algorithm.example.cache.impl.ArcCache;
+import com.sym.algorithm.example.cache.impl.ConcurrentLruCache;
+import com.sym.algorithm.example.cache.impl.LfuCache;
+import com.sym.algorithm.example.cache.impl.LoadingCache;
 import com.sym.algorithm.example.cache.impl.LruCache;
+import com.sym.algorithm.example.cache.impl.OffHeapLruCache;
+import com.sym.algorithm.example.cache.impl.TieredCache;
+import com.sym.algorithm.example.cache.impl.WTinyLfuCache;
+import com.sym.algorithm.example.cache.stats.CacheStats;
+import com.sym.algorithm.example.cache.stats.ConcurrentStatsCounter;
+import com.sym.algorithm.example.cache.stats.StatsReporter;
+import com.sym.algorithm.example.cache.store.MappedFileStore;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
 /**
  * 缓存测试类
  *
@@ -36,4 +77,794 @@ public class CacheTest {
         lruCache.set("ee", "ee");
         System.out.println(lruCache);
     }
+
+    /**
+     * O(1) LFU cache 测试
+     */
+    @Test
+    public void test02() {
+        LfuCache<String, String> lfuCache = new LfuCache<>(3);
+        lfuCache.set("aa", "aa");
+        lfuCache.set("bb", "bb");
+        lfuCache.set("cc", "cc");
+
+        // aa访问2次, bb访问1次, cc没有被访问
+        lfuCache.get("aa");
+        lfuCache.get("aa");
+        lfuCache.get("bb");
+        System.out.println(lfuCache);
+
+        // 容量已满, 访问频次最小的cc会被剔除
+        lfuCache.set("dd", "dd");
+        System.out.println(lfuCache);
+
+        // dd和bb的频次都变为2, 再添加新元素时, 同频次下淘汰最久未访问的bb
+        lfuCache.get("dd");
+        lfuCache.set("ee", "ee");
+        System.out.println(lfuCache);
+
+        // 新加入的ee频次最小, 所以会被ff挤掉
+        lfuCache.set("ff", "ff");
+        System.out.println(lfuCache);
+    }
+
+    /**
+     * 在服从Zipf分布的访问序列上, 对比 LRU 和 LFU 的命中率和单次操作耗时
+     */
+    @Test
+    public void test03() {
+        int[] trace = zipf(100_000, 0.99, 1_000_000, 9527);
+        replay("LruCache", new LruCache<>(1000), trace);
+        replay("LfuCache", new LfuCache<>(1000), trace);
+    }
+
+    /**
+     * 分段加锁的 LRU cache 在 1、4、16、64 个线程下的吞吐量,
+     * 分段数为1时相当于加了一把全局锁, 作为对照组
+     */
+    @Test
+    public void test04() throws InterruptedException {
+        int[] trace = zipf(100_000, 0.99, 1_000_000, 9527);
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            throughput("全局锁 LruCache", new ConcurrentLruCache<>(10_000, 1), trace, threads);
+            throughput("ConcurrentLruCache", new ConcurrentLruCache<>(10_000), trace, threads);
+        }
+    }
+
+    /**
+     * W-TinyLFU cache 测试
+     */
+    @Test
+    public void test05() {
+        WTinyLfuCache<Integer, Integer> cache = new WTinyLfuCache<>(100);
+        // 0~9 是热点数据, 被反复访问
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 10; i++) {
+                if (cache.get(i) == null) {
+                    cache.set(i, i);
+                }
+            }
+        }
+        // 一次性扫描1000个冷数据, 纯 LRU 会把热点全部冲刷掉
+        for (int i = 1000; i < 2000; i++) {
+            cache.set(i, i);
+        }
+        int hits = 0;
+        for (int i = 0; i < 10; i++) {
+            if (cache.get(i) != null) {
+                hits++;
+            }
+        }
+        System.out.println("扫描后热点数据仍然命中: " + hits + "/10");
+        System.out.println(cache);
+    }
+
+    /**
+     * 访问序列回放, 对比各个缓存在不同访问模式下的命中率.
+     * 可以通过 -Dcache.trace=文件路径 回放真实的访问序列, 文件每行一个整数key.
+     */
+    @Test
+    public void test06() throws IOException {
+        int capacity = 1000;
+        int[] zipf = zipf(100_000, 0.99, 1_000_000, 9527);
+        String file = System.getProperty("cache.trace");
+        int[][] traces = {zipf, withScans(zipf, 200_000, 20_000)};
+        String[] names = {"Zipf(0.99)", "Zipf(0.99)+扫描"};
+        if (file != null) {
+            traces = new int[][]{Files.lines(Paths.get(file)).mapToInt(Integer::parseInt).toArray()};
+            names = new String[]{file};
+        }
+        for (int i = 0; i < traces.length; i++) {
+            System.out.println("访问序列: " + names[i]);
+            replay("LruCache", new LruCache<>(capacity), traces[i]);
+            replay("LfuCache", new LfuCache<>(capacity), traces[i]);
+            replay("WTinyLfuCache", new WTinyLfuCache<>(capacity), traces[i]);
+            replay("ArcCache", new ArcCache<>(capacity), traces[i]);
+        }
+    }
+
+    /**
+     * TTL 和 TTI 测试, 使用手动推进的时钟, 不需要真的等待
+     */
+    @Test
+    public void test07() {
+        AtomicLong time = new AtomicLong();
+        Ticker ticker = time::get;
+        // 写入10秒后过期, 5秒内没有访问也过期
+        LruCache<String, String> lruCache = new LruCache<>(10, 10, 5, TimeUnit.SECONDS, ticker);
+        LfuCache<String, String> lfuCache = new LfuCache<>(10, 10, 5, TimeUnit.SECONDS, ticker);
+        for (ICache<String, String> cache : Arrays.<ICache<String, String>>asList(lruCache, lfuCache)) {
+            time.set(0);
+            cache.set("aa", "aa");
+            cache.set("bb", "bb");
+            // 单独指定cc只能存活1分钟, 但它同样受到TTI的限制
+            cache.set("cc", "cc", 1, TimeUnit.MINUTES);
+
+            // 第4秒访问aa和cc, 它们的TTI被刷新, bb则在第5秒因为没有访问而过期
+            time.set(TimeUnit.SECONDS.toNanos(4));
+            Assert.assertEquals("aa", cache.get("aa"));
+            Assert.assertEquals("cc", cache.get("cc"));
+            time.set(TimeUnit.SECONDS.toNanos(6));
+            Assert.assertNull(cache.get("bb"));
+
+            // 第8秒再次访问aa, 但是第10秒它的TTL到了, 不管有没有访问都会过期
+            time.set(TimeUnit.SECONDS.toNanos(8));
+            Assert.assertEquals("aa", cache.get("aa"));
+            Assert.assertEquals("cc", cache.get("cc"));
+            time.set(TimeUnit.SECONDS.toNanos(10));
+            Assert.assertNull(cache.get("aa"));
+            Assert.assertEquals("cc", cache.get("cc"));
+            System.out.println(cache);
+        }
+
+        // 即使不去读取, 过期数据也会被时间轮清理掉
+        time.set(0);
+        LfuCache<Integer, Integer> cache = new LfuCache<>(10_000, 30, 0, TimeUnit.SECONDS, ticker);
+        for (int i = 0; i < 10_000; i++) {
+            cache.set(i, i);
+        }
+        time.set(TimeUnit.MINUTES.toNanos(1));
+        cache.set(-1, -1);
+        Assert.assertEquals(1, cache.size());
+    }
+
+    /**
+     * 按总权重限制容量, 权重为值的字节数
+     */
+    @Test
+    public void test08() {
+        LruCache<String, byte[]> cache = new LruCache<>(1024, (key, value) -> value.length);
+        cache.set("aa", new byte[100]);
+        cache.set("bb", new byte[300]);
+        cache.set("cc", new byte[500]);
+        Assert.assertEquals(900, cache.weightedSize());
+
+        // 先访问aa, 此时最近最少使用的是bb. 加入dd后总权重1300超出1024, 淘汰bb后降到1000
+        cache.get("aa");
+        cache.set("dd", new byte[400]);
+        Assert.assertNull(cache.get("bb"));
+        Assert.assertNotNull(cache.get("cc"));
+        Assert.assertEquals(1000, cache.weightedSize());
+
+        // 覆盖旧值时, 按新值重新计算权重
+        cache.set("dd", new byte[10]);
+        Assert.assertEquals(610, cache.weightedSize());
+
+        // 单个条目的权重就超出上限时, 它自己也会被淘汰
+        cache.set("ee", new byte[2048]);
+        Assert.assertNull(cache.get("ee"));
+
+        ConcurrentLruCache<Integer, byte[]> concurrentCache = new ConcurrentLruCache<>(1 << 20,
+                (key, value) -> value.length, 16);
+        Random random = new Random(9527);
+        for (int i = 0; i < 10_000; i++) {
+            concurrentCache.set(i, new byte[100 + random.nextInt(2048)]);
+        }
+        System.out.println("总权重: " + concurrentCache.weightedSize() + ", 上限: " + (1 << 20));
+        Assert.assertTrue(concurrentCache.weightedSize() <= 1 << 20);
+    }
+
+    /**
+     * 缓存统计测试
+     */
+    @Test
+    public void test09() throws InterruptedException {
+        AtomicLong time = new AtomicLong();
+        LruCache<String, String> lruCache = new LruCache<>(2, 0, 0, TimeUnit.SECONDS, time::get);
+        lruCache.recordStats();
+        lruCache.set("aa", "aa");
+        lruCache.set("bb", "bb");
+        time.set(TimeUnit.SECONDS.toNanos(3));
+        lruCache.get("aa");
+        lruCache.get("cc");
+        // 容量已满, 淘汰存活了3秒的bb
+        lruCache.set("cc", "cc");
+        CacheStats stats = lruCache.snapshot();
+        System.out.println(stats);
+        Assert.assertEquals(1, stats.getHitCount());
+        Assert.assertEquals(1, stats.getMissCount());
+        Assert.assertEquals(1, stats.getEvictionCount());
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(3), stats.averageEntryAge(), 0.0);
+
+        // 未开启统计时返回空的统计数据
+        Assert.assertEquals(0, new LfuCache<String, String>(2).snapshot().requestCount());
+
+        // 回放时每次未命中都会写入, 所以 未命中次数 = 写入次数 = 容量 + 淘汰次数
+        int[] trace = zipf(10_000, 0.9, 200_000, 42);
+        WTinyLfuCache<Integer, Integer> tinyLfuCache = new WTinyLfuCache<>(1_000);
+        tinyLfuCache.recordStats();
+        replay("W-TinyLFU", tinyLfuCache, trace);
+        stats = tinyLfuCache.snapshot();
+        System.out.println(stats);
+        Assert.assertEquals(trace.length + trace.length / 10, stats.requestCount());
+        Assert.assertEquals(stats.getMissCount(), tinyLfuCache.size() + stats.getEvictionCount());
+
+        // 分段缓存的所有分段共用一个计数器, 多线程下计数不会丢失
+        ConcurrentLruCache<Integer, Integer> concurrentCache = new ConcurrentLruCache<>(1_000);
+        concurrentCache.recordStats(new ConcurrentStatsCounter());
+        throughput("Striped LRU", concurrentCache, trace, 4);
+        Assert.assertEquals(2_000_000, concurrentCache.snapshot().requestCount());
+
+        try (StatsReporter reporter = new StatsReporter("striped-lru", concurrentCache)
+                .start(100, TimeUnit.MILLISECONDS)) {
+            concurrentCache.get(1);
+            TimeUnit.MILLISECONDS.sleep(250);
+            // 定时上报之外, 也可以随时手动上报一次
+            reporter.report();
+        }
+    }
+
+    /**
+     * 自动加载缓存测试, 并发未命中同一个key时只加载一次, 批量获取时合并成一次批量加载
+     */
+    @Test
+    public void test10() throws InterruptedException {
+        AtomicInteger loadCount = new AtomicInteger();
+        List<Integer> batchSizes = new ArrayList<>();
+        CacheLoader<Integer, String> loader = new CacheLoader<Integer, String>() {
+            @Override
+            public String load(Integer key) {
+                loadCount.incrementAndGet();
+                // 模拟一次慢查询
+                try {
+                    TimeUnit.MILLISECONDS.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "v" + key;
+            }
+
+            @Override
+            public Map<Integer, String> loadAll(Set<? extends Integer> keys) {
+                synchronized (batchSizes) {
+                    batchSizes.add(keys.size());
+                }
+                Map<Integer, String> result = new HashMap<>();
+                for (Integer key : keys) {
+                    // 负数模拟数据源中不存在的数据
+                    if (key >= 0) {
+                        result.put(key, "v" + key);
+                    }
+                }
+                return result;
+            }
+        };
+        LoadingCache<Integer, String> cache = new LoadingCache<>(new ConcurrentLruCache<>(1_000), loader);
+        cache.recordStats();
+
+        int threads = 32;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicInteger correct = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    if ("v1".equals(cache.get(1))) {
+                        correct.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        Assert.assertEquals(threads, correct.get());
+        Assert.assertEquals(1, loadCount.get());
+
+        // 1已经在缓存中, 剩下的9个key合并成一次批量加载
+        Map<Integer, String> result = cache.getAll(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, -1));
+        System.out.println(result);
+        Assert.assertEquals(9, result.size());
+        Assert.assertEquals(Arrays.asList(9), batchSizes);
+        Assert.assertNull(cache.get(-1, key -> null));
+
+        // 加载失败时, 所有等待的线程都会收到异常, 且不会写入缓存
+        try {
+            cache.get(100, key -> {
+                throw new IllegalStateException("数据源不可用");
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            System.out.println("加载失败: " + e.getMessage());
+        }
+        Assert.assertEquals("v100", cache.get(100));
+        System.out.println(cache.snapshot());
+
+        // 第一次查询未命中, 抢到加载权以后再检查时命中(相当于另一个线程刚好加载完成), 不会再批量加载
+        ConcurrentLruCache<Integer, String> racing = new ConcurrentLruCache<Integer, String>(1_000) {
+            private final Set<Integer> missed = new HashSet<>();
+
+            @Override
+            public String get(Integer key) {
+                return missed.add(key) ? null : super.get(key);
+            }
+        };
+        racing.set(200, "v200");
+        batchSizes.clear();
+        Assert.assertEquals("v200", new LoadingCache<>(racing, loader).getAll(Arrays.asList(200)).get(200));
+        Assert.assertTrue(batchSizes.isEmpty());
+
+        // 批量获取的key中有空值时直接失败, 不会登记任何key, 之后获取这些key不会阻塞
+        try {
+            cache.getAll(Arrays.asList(300, null));
+            Assert.fail();
+        } catch (NullPointerException e) {
+            System.out.println("批量获取失败: " + e.getMessage());
+        }
+        Assert.assertEquals("v300", cache.get(300));
+
+        // 查询缓存时抛出异常, 已经登记的key会被移除, 之后获取这些key不会阻塞
+        ConcurrentLruCache<Integer, String> failing = new ConcurrentLruCache<Integer, String>(1_000) {
+            @Override
+            public String get(Integer key) {
+                if (key == 401) {
+                    throw new IllegalStateException("缓存不可用");
+                }
+                return super.get(key);
+            }
+        };
+        LoadingCache<Integer, String> failingCache = new LoadingCache<>(failing, loader);
+        try {
+            failingCache.getAll(Arrays.asList(400, 401));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            System.out.println("批量获取失败: " + e.getMessage());
+        }
+        Assert.assertEquals("v400", failingCache.get(400));
+    }
+
+    /**
+     * 堆外 LRU 缓存测试, 并对比堆内 LRU 的延迟、内存分配速率和GC次数
+     */
+    @Test
+    public void test11() {
+        // 4页, 每页4KB
+        OffHeapLruCache<Integer, String> cache = new OffHeapLruCache<>(16 * 1024, 4096, Serializer.string());
+        for (int i = 0; i < 1000; i++) {
+            cache.set(i, String.format("%0100d", i));
+        }
+        System.out.println("元素数量: " + cache.size() + ", 已用字节: " + cache.usedBytes()
+                + ", 已申请内存: " + cache.allocatedBytes());
+        Assert.assertEquals(16 * 1024, cache.allocatedBytes());
+        Assert.assertNull(cache.get(0));
+        Assert.assertEquals(String.format("%0100d", 999), cache.get(999));
+
+        // 换成更大的块, 内存已满, 从最久未访问的条目开始淘汰, 直到腾出一整页
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 4000; i++) {
+            large.append('x');
+        }
+        cache.set(999, large.toString());
+        Assert.assertEquals(large.toString(), cache.get(999));
+        Assert.assertEquals(large.toString(), cache.remove(999));
+        Assert.assertNull(cache.get(999));
+
+        // 随机写入和删除不同大小的值, 页在各个 slab class 之间反复腾空和重新切分, 读到的值始终正确
+        Random random = new Random(11);
+        Map<Integer, String> expected = new HashMap<>();
+        try (OffHeapLruCache<Integer, String> churn = new OffHeapLruCache<>(16 * 1024, 4096, Serializer.string())) {
+            for (int i = 0; i < 20_000; i++) {
+                int key = random.nextInt(64);
+                if (random.nextInt(3) == 0) {
+                    churn.remove(key);
+                    expected.remove(key);
+                } else {
+                    String value = String.format("%0" + (1 + random.nextInt(1000)) + "d", i);
+                    churn.set(key, value);
+                    expected.put(key, value);
+                }
+                String actual = churn.get(key);
+                Assert.assertTrue(actual == null || actual.equals(expected.get(key)));
+            }
+        }
+
+        // 关闭后释放所有的页, 不能再读写
+        cache.close();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.allocatedBytes());
+        try {
+            cache.get(1);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            System.out.println("关闭后读取: " + e.getMessage());
+        }
+
+        // 访问的key是缓存容量的4倍, 每次未命中都会写入一个1KB的值并淘汰一个旧值
+        int entries = 50_000;
+        int[] trace = zipf(entries << 2, 0.9, 2_000_000, 7);
+        benchmark(new LruCache<>(entries), entries, trace);
+        try (OffHeapLruCache<Integer, byte[]> offHeapCache = new OffHeapLruCache<>(64L << 20, Serializer.bytes())) {
+            benchmark(offHeapCache, entries, trace);
+        }
+    }
+
+    private void benchmark(ICache<Integer, byte[]> cache, int entries, int[] trace) {
+        System.gc();
+        long heapBefore = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        for (int i = 0; i < entries; i++) {
+            cache.set(i, new byte[1024]);
+        }
+        System.gc();
+        long retained = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory() - heapBefore;
+        long gcCount = gcCount();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int key : trace) {
+            if (cache.get(key) == null) {
+                cache.set(key, new byte[1024]);
+            }
+        }
+        long cost = System.nanoTime() - start;
+        System.out.println(String.format("%-16s 延迟: %d ns/op, 分配: %d B/op, GC次数: %d, 缓存占用堆内存: %dMB",
+                cache.getClass().getSimpleName(), cost / trace.length, (allocatedBytes() - allocated) / trace.length,
+                gcCount() - gcCount, retained >> 20));
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * 当前线程累计分配的堆内存, 即 JMH 的 gc.alloc.rate 统计的数据
+     */
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * 两级缓存测试：内存淘汰的数据降级到文件, 读取时提升回内存, 重启后从文件恢复
+     */
+    @Test
+    public void test12() throws IOException {
+        Path dir = Files.createTempDirectory("tiered-cache");
+        Path file = dir.resolve("cache.dat");
+        int entries = 100_000;
+        TieredCache<String, String> cache = new TieredCache<>(1_000, file, 64 << 20,
+                Serializer.string(), Serializer.string());
+        for (int i = 0; i < entries; i++) {
+            cache.set("k" + i, "v" + i);
+        }
+        Assert.assertEquals(1_000, cache.memorySize());
+        Assert.assertEquals(entries - 1_000, cache.diskSize());
+        // k0早就被降级到文件了, 读取后提升回内存
+        Assert.assertEquals("v0", cache.get("k0"));
+        Assert.assertEquals(entries - 1_000, cache.diskSize());
+        Assert.assertEquals("v1", cache.remove("k1"));
+        Assert.assertNull(cache.get("k1"));
+        cache.close();
+
+        // 重启, 内存中的数据在关闭时已经写入文件
+        cache = new TieredCache<>(1_000, file, 64 << 20, Serializer.string(), Serializer.string());
+        Assert.assertEquals(entries - 1, cache.diskSize());
+        Assert.assertEquals("v0", cache.get("k0"));
+        Assert.assertEquals("v" + (entries - 1), cache.get("k" + (entries - 1)));
+        cache.close();
+
+        // 模拟崩溃：在日志末尾写入半条记录, 重新打开时被截断, 之前的数据不受影响
+        long end;
+        try (MappedFileStore<String, String> store = new MappedFileStore<>(file, 64 << 20,
+                Serializer.string(), Serializer.string())) {
+            store.put("crash", "value");
+            end = Files.size(file);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // 清除正常关闭的标记, 并在文件中间写入一段不完整的记录
+            channel.write(ByteBuffer.wrap(new byte[4]), 8);
+            ByteBuffer garbage = ByteBuffer.allocate(16);
+            garbage.putInt(0x12345678).putInt(3).putInt(100).putInt(0x61626300);
+            ((Buffer) garbage).flip();
+            channel.write(garbage, end / 2);
+        }
+        try (MappedFileStore<String, String> store = new MappedFileStore<>(file, 64 << 20,
+                Serializer.string(), Serializer.string())) {
+            System.out.println("恢复耗时: " + TimeUnit.NANOSECONDS.toMillis(store.getStartupNanos())
+                    + "ms, 截断字节数: " + store.getTruncatedBytes());
+            Assert.assertEquals(entries, store.size());
+            Assert.assertEquals("value", store.get("crash"));
+        }
+
+        // 文件写满后压缩, 并丢弃最早写入的数据
+        Path small = dir.resolve("small.dat");
+        try (MappedFileStore<String, String> store = new MappedFileStore<>(small, 64 * 1024,
+                Serializer.string(), Serializer.string())) {
+            for (int i = 0; i < 10_000; i++) {
+                store.put("k" + i, "v" + i);
+            }
+            System.out.println("压缩后剩余: " + store.size());
+            Assert.assertEquals("v9999", store.get("k9999"));
+            Assert.assertNull(store.get("k0"));
+        }
+        Files.deleteIfExists(small);
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    /**
+     * ARC 测试, 访问模式在最近访问和访问频次之间切换时, 观察它的自适应调整
+     */
+    @Test
+    public void test13() {
+        ArcCache<Integer, Integer> cache = new ArcCache<>(3);
+        cache.set(1, 1);
+        cache.set(2, 2);
+        cache.set(3, 3);
+        // 1被访问了两次, 进入T2
+        cache.get(1);
+        // 4进入T1, 淘汰T1中最久未访问的2到B1
+        cache.set(4, 4);
+        Assert.assertNull(cache.get(2));
+        Assert.assertEquals(Integer.valueOf(1), cache.get(1));
+        // 2命中了B1, 说明T1太小, p增大
+        cache.set(2, 2);
+        Assert.assertEquals(1, cache.targetRecencySize());
+        Assert.assertEquals(3, cache.size());
+        System.out.println(cache);
+
+        // 传入手动推进的时钟, 统计被淘汰条目的存活时间
+        AtomicLong time = new AtomicLong();
+        ArcCache<String, String> timedCache = new ArcCache<>(2, time::get);
+        timedCache.recordStats();
+        timedCache.set("aa", "aa");
+        timedCache.set("bb", "bb");
+        time.set(TimeUnit.SECONDS.toNanos(3));
+        // 容量已满, 淘汰T1中存活了3秒的aa
+        timedCache.set("cc", "cc");
+        Assert.assertEquals(1, timedCache.snapshot().getEvictionCount());
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(3), timedCache.snapshot().averageEntryAge(), 0.0);
+
+        int capacity = 1000;
+        // 阶段1: 访问频次主导, 少量热点key被反复访问
+        int[] frequency = zipf(100_000, 0.99, 500_000, 1);
+        // 阶段2: 最近访问主导, 工作集不断向前滑动, 刚访问过的key很快会再次被访问
+        int[] recency = new int[500_000];
+        Random random = new Random(2);
+        for (int i = 0; i < recency.length; i++) {
+            recency[i] = 200_000 + i / 10 + random.nextInt(capacity / 2);
+        }
+        int[] trace = new int[frequency.length + recency.length + frequency.length];
+        System.arraycopy(frequency, 0, trace, 0, frequency.length);
+        System.arraycopy(recency, 0, trace, frequency.length, recency.length);
+        System.arraycopy(frequency, 0, trace, frequency.length + recency.length, frequency.length);
+        System.out.println("访问序列: 频次->最近->频次");
+        replay("LruCache", new LruCache<>(capacity), trace);
+        replay("LfuCache", new LfuCache<>(capacity), trace);
+        replay("WTinyLfuCache", new WTinyLfuCache<>(capacity), trace);
+        ArcCache<Integer, Integer> arcCache = new ArcCache<>(capacity);
+        replay("ArcCache", arcCache, trace);
+        Assert.assertTrue(arcCache.size() <= capacity);
+        System.out.println("ARC 最终的T1目标大小: " + arcCache.targetRecencySize());
+    }
+
+    /**
+     * 分段 LRU 的总容量上限, 分段数向上取2的幂次方以后, 各段容量之和也不能超过总容量
+     */
+    @Test
+    public void test14() {
+        int[][] cases = {{100, 64}, {100, 100}, {7, 16}, {1, 8}, {1000, 3}};
+        for (int[] c : cases) {
+            ConcurrentLruCache<Integer, Integer> cache = new ConcurrentLruCache<>(c[0], c[1]);
+            for (int i = 0; i < c[0] * 20; i++) {
+                cache.set(i, i);
+                Assert.assertTrue(cache.size() <= c[0]);
+            }
+            System.out.println("容量: " + c[0] + ", 并发级别: " + c[1] + ", 元素数量: " + cache.size());
+        }
+
+        ConcurrentLruCache<Integer, byte[]> weightedCache = new ConcurrentLruCache<>(100,
+                (key, value) -> value.length, 64);
+        for (int i = 0; i < 2_000; i++) {
+            weightedCache.set(i, new byte[1]);
+            Assert.assertTrue(weightedCache.weightedSize() <= 100);
+        }
+        Assert.assertEquals(100, weightedCache.weightedSize(), 10);
+    }
+
+    /**
+     * 淘汰监听器抛出异常时, 被淘汰的条目已经删除, LRU 缓存不会超出容量;
+     * 两级缓存降级到文件失败时只丢弃这条数据, 内存层同样不会超出容量
+     */
+    @Test
+    public void test15() throws IOException {
+        BiConsumer<Integer, Integer> failingListener = (key, value) -> {
+            throw new IllegalStateException("evict " + key);
+        };
+        LruCache<Integer, Integer> lruCache = new LruCache<>(10, failingListener);
+        for (int i = 0; i < 100; i++) {
+            try {
+                lruCache.set(i, i);
+            } catch (IllegalStateException e) {
+                // 监听器的异常会抛给调用者, 但不影响缓存的状态
+            }
+            Assert.assertTrue(lruCache.size() <= 10);
+        }
+        Assert.assertEquals(Integer.valueOf(99), lruCache.get(99));
+
+        Path dir = Files.createTempDirectory("tiered-cache");
+        Path file = dir.resolve("cache.dat");
+        // 每个值都超出了文件的容量, 降级一定失败
+        char[] chars = new char[1024];
+        Arrays.fill(chars, 'v');
+        String value = new String(chars);
+        try (TieredCache<String, String> cache = new TieredCache<>(10, file, 256,
+                Serializer.string(), Serializer.string())) {
+            // 第一个值很小, 被淘汰时可以降级到文件
+            cache.set("small", "s");
+            for (int i = 0; i < 100; i++) {
+                cache.set("k" + i, value);
+                Assert.assertTrue(cache.memorySize() <= 10);
+            }
+            Assert.assertEquals(1, cache.diskSize());
+            Assert.assertEquals(value, cache.get("k99"));
+            Assert.assertNull(cache.get("k0"));
+            // 关闭时内存中的10个值同样写不进文件, 只能丢弃, 但文件仍然会被正常关闭
+        }
+        // 文件头中记录了正常关闭的标记
+        Assert.assertNotEquals(0, ByteBuffer.wrap(Files.readAllBytes(file)).getInt(8));
+        try (TieredCache<String, String> cache = new TieredCache<>(10, file, 256,
+                Serializer.string(), Serializer.string())) {
+            Assert.assertEquals(1, cache.diskSize());
+            Assert.assertEquals("s", cache.get("small"));
+        }
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    /**
+     * 多线程并发回放访问序列, 统计每秒的操作数
+     *
+     * @param name    缓存名称
+     * @param cache   缓存
+     * @param trace   访问序列
+     * @param threads 线程数
+     */
+    private void throughput(String name, ICache<Integer, Integer> cache, int[] trace, int threads)
+            throws InterruptedException {
+        // 所有线程总共执行的操作数
+        int totalOps = 2_000_000;
+        int opsPerThread = totalOps / threads;
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        LongAdder hits = new LongAdder();
+        for (int t = 0; t < threads; t++) {
+            // 每个线程从访问序列的不同位置开始回放
+            int offset = t * (trace.length / threads);
+            new Thread(() -> {
+                ready.countDown();
+                try {
+                    start.await();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        int key = trace[(offset + i) % trace.length];
+                        if (cache.get(key) != null) {
+                            hits.increment();
+                        } else {
+                            cache.set(key, key);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        ready.await();
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long cost = System.nanoTime() - begin;
+        long ops = (long) opsPerThread * threads;
+        System.out.println(String.format("%-20s 线程数: %-3d 吞吐量: %,d ops/s, 命中率: %.2f%%",
+                name, threads, ops * 1_000_000_000L / cost, hits.sum() * 100.0 / ops));
+    }
+
+    /**
+     * 回放访问序列: 先get, 未命中则set, 统计命中率和平均每次操作的耗时
+     *
+     * @param name  缓存名称
+     * @param cache 缓存
+     * @param trace 访问序列
+     * @return 命中率
+     */
+    private double replay(String name, ICache<Integer, Integer> cache, int[] trace) {
+        // 先预热一遍, 让JIT编译热点代码
+        for (int key : Arrays.copyOf(trace, trace.length / 10)) {
+            if (cache.get(key) == null) {
+                cache.set(key, key);
+            }
+        }
+        int hits = 0;
+        long start = System.nanoTime();
+        for (int key : trace) {
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                cache.set(key, key);
+            }
+        }
+        long cost = System.nanoTime() - start;
+        double hitRatio = (double) hits / trace.length;
+        System.out.println(String.format("%-16s 命中率: %.2f%%, 耗时: %d ns/op", name, hitRatio * 100, cost / trace.length));
+        return hitRatio;
+    }
+
+    /**
+     * 在访问序列中周期性地插入一次性的扫描, 扫描的key只出现一次, 模拟批量遍历之类的冷数据访问
+     *
+     * @param trace    原访问序列
+     * @param interval 每隔多少次访问插入一次扫描
+     * @param scanSize 每次扫描的key数量
+     * @return 新的访问序列
+     */
+    private static int[] withScans(int[] trace, int interval, int scanSize) {
+        int scans = trace.length / interval;
+        int[] ret = new int[trace.length + scans * scanSize];
+        // 扫描使用的key从原访问序列的最大值之后开始, 保证不会与原访问序列重复
+        int scanKey = Arrays.stream(trace).max().orElse(0) + 1;
+        int pos = 0;
+        for (int i = 0; i < trace.length; i++) {
+            ret[pos++] = trace[i];
+            if ((i + 1) % interval == 0) {
+                for (int j = 0; j < scanSize; j++) {
+                    ret[pos++] = scanKey++;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * 生成服从Zipf分布的访问序列, 排名越靠前的key被访问的概率越大: P(k) ∝ 1 / k^exponent
+     *
+     * @param items    key的总数
+     * @param exponent 偏斜系数, 越大越集中在少数热点key上
+     * @param length   访问序列长度
+     * @param seed     随机种子, 保证每次生成的序列一致
+     * @return 访问序列
+     */
+    private static int[] zipf(int items, double exponent, int length, long seed) {
+        // 累积分布函数
+        double[] cdf = new double[items];
+        double sum = 0;
+        for (int i = 0; i < items; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        Random random = new Random(seed);
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) {
+            int idx = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            trace[i] = idx >= 0 ? idx : -idx - 1;
+        }
+        return trace;
+    }
 }
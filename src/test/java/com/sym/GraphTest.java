@@ -2,12 +2,22 @@ package com.sym;
 
 import com.sym.structure.graph.IAdvancedGraph;
 import com.sym.structure.graph.IGraph;
+import com.sym.structure.graph.impl.csr.CsrGraph;
 import com.sym.structure.graph.impl.list.LinkedListGraph;
 import com.sym.structure.graph.impl.list.UndirectedListGraph;
+import com.sym.structure.graph.strategy.IShortestPathStrategy;
 import com.sym.structure.string.impl.String;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
 /**
  * 图的测试类
  *
@@ -138,6 +148,121 @@ public class GraphTest {
         });
     }
 
+    @Test
+    public void csrTest() {
+        CsrGraph<Character> graph = new CsrGraph.Builder<Character>(false)
+                .addEdge('A', 'E', 100)
+                .addEdge('A', 'D', 30)
+                .addEdge('A', 'B', 10)
+                .addEdge('B', 'C', 50)
+                .addEdge('C', 'E', 10)
+                .addEdge('D', 'C', 20)
+                .addEdge('D', 'E', 60)
+                .build();
+        System.out.println(graph);
+        graph.bfs('A', System.out::println);
+        graph.dfs('A', System.out::println);
+        graph.shortestPath('A').forEach(System.out::println);
+
+        // 构建以后继续使用构建器, 已经构建好的图不受影响
+        CsrGraph.Builder<Character> builder = new CsrGraph.Builder<Character>(true).addEdge('A', 'B');
+        CsrGraph<Character> first = builder.build();
+        CsrGraph<Character> second = builder.addEdge('B', 'C').build();
+        Assert.assertEquals(-1, first.indexOf('C'));
+        Assert.assertEquals(2, first.verticesSize());
+        Assert.assertEquals(2, second.indexOf('C'));
+
+        LinkedListGraph<java.lang.String, Integer> listGraph = new UndirectedListGraph<>(WeightHandlers.INTEGER_HANDLER);
+        listGraph.addEdge("A", "B", 17);
+        listGraph.addEdge("A", "E", 16);
+        listGraph.addEdge("A", "F", 1);
+        listGraph.addEdge("E", "F", 33);
+        listGraph.addEdge("B", "F", 11);
+        listGraph.addEdge("E", "D", 4);
+        listGraph.addEdge("F", "D", 14);
+        listGraph.addEdge("B", "D", 5);
+        listGraph.addEdge("B", "C", 6);
+        listGraph.addEdge("D", "C", 10);
+        CsrGraph.from(listGraph, Integer::doubleValue).mst().forEach(System.out::println);
+    }
+
+    /**
+     * 在幂律分布的随机图(Barabási–Albert模型)上比较邻接表和CSR的遍历、最短路径耗时, 并校验两者的结果一致
+     */
+    @Test
+    public void csrBenchmark() {
+        int vertices = 10000;
+        // 每个新顶点连接的已有顶点数
+        int degree = 4;
+        Random random = new Random(2021);
+        LinkedListGraph<Integer, Long> listGraph = new UndirectedListGraph<>(WeightHandlers.LONG_HANDLER);
+        // 所有边的端点, 从中随机选择就是按度数成比例地选择顶点
+        int[] endpoints = new int[2 * degree * vertices];
+        int size = 0;
+        for (int v = 0; v <= degree; v++) {
+            for (int u = 0; u < v; u++) {
+                listGraph.addEdge(v, u, 1L + random.nextInt(100));
+                endpoints[size++] = v;
+                endpoints[size++] = u;
+            }
+        }
+        for (int v = degree + 1; v < vertices; v++) {
+            Set<Integer> targets = new HashSet<>();
+            while (targets.size() < degree) {
+                targets.add(endpoints[random.nextInt(size)]);
+            }
+            for (int u : targets) {
+                listGraph.addEdge(v, u, 1L + random.nextInt(100));
+                endpoints[size++] = v;
+                endpoints[size++] = u;
+            }
+        }
+        CsrGraph<Integer> csrGraph = CsrGraph.from(listGraph, Long::doubleValue);
+        log.info("顶点数: {}, 边数: {}", csrGraph.verticesSize(), csrGraph.edgeSize());
+        Assert.assertEquals(listGraph.verticesSize(), csrGraph.verticesSize());
+        Assert.assertEquals(listGraph.edgeSize(), csrGraph.edgeSize());
+
+        // 图是连通的, 遍历会访问所有顶点. 邻接表的dfs是递归实现的, 顶点多了会栈溢出, 所以只比较bfs
+        int[] counter = new int[2];
+        long[] nanos = new long[]{Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int round = 0; round < 5; round++) {
+            counter[0] = counter[1] = 0;
+            long start = System.nanoTime();
+            listGraph.bfs(0, v -> counter[0]++);
+            nanos[0] = Math.min(nanos[0], System.nanoTime() - start);
+            start = System.nanoTime();
+            csrGraph.bfs(0, v -> counter[1]++);
+            nanos[1] = Math.min(nanos[1], System.nanoTime() - start);
+        }
+        Assert.assertEquals(vertices, counter[0]);
+        Assert.assertEquals(vertices, counter[1]);
+        counter[1] = 0;
+        csrGraph.dfs(0, v -> counter[1]++);
+        Assert.assertEquals(vertices, counter[1]);
+        log.info("bfs, 邻接表: {}μs, CSR: {}μs", nanos[0] / 1000, nanos[1] / 1000);
+
+        long start = System.nanoTime();
+        List<IShortestPathStrategy.PathInfo<Integer, Long>> listPaths = listGraph.shortestPath(0);
+        long listNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        List<IShortestPathStrategy.PathInfo<Integer, Double>> csrPaths = csrGraph.shortestPath(0);
+        long csrNanos = System.nanoTime() - start;
+        log.info("dijkstra, 邻接表: {}ms, CSR: {}ms", listNanos / 1000000, csrNanos / 1000000);
+        Map<Integer, Long> expected = new HashMap<>();
+        listPaths.forEach(p -> expected.put(p.getTo(), p.getWeight()));
+        Assert.assertEquals(expected.size(), csrPaths.size());
+        csrPaths.forEach(p -> Assert.assertEquals((double) expected.get(p.getTo()), p.getWeight(), 0));
+
+        start = System.nanoTime();
+        long listWeight = listGraph.mst().stream().mapToLong(IGraph.EdgeInfo::getWeight).sum();
+        listNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        double csrWeight = csrGraph.mst().stream().mapToDouble(IGraph.EdgeInfo::getWeight).sum();
+        csrNanos = System.nanoTime() - start;
+        log.info("prim, 邻接表: {}ms, CSR: {}ms", listNanos / 1000000, csrNanos / 1000000);
+        Assert.assertEquals(listWeight, csrWeight, 0);
+    }
+
     /**
      * 边权值比较的工具类
      */
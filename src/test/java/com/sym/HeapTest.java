@@ -2,11 +2,14 @@ package com.sym;
 
 import com.sym.structure.heap.IHeap;
 import com.sym.structure.heap.impl.BinaryHeap;
+import com.sym.structure.heap.impl.IndexedBinaryHeap;
 import com.sym.util.printer.BinaryTrees;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
@@ -88,6 +91,42 @@ public class HeapTest {
         BinaryTrees.println(heap);
     }
 
+    /**
+     * 索引二叉堆, 随机地添加、修改key以后, 出堆的顺序必须与key排序后的顺序一致
+     */
+    @Test
+    public void indexedBinaryHeap(){
+        int capacity = 1000;
+        Random random = new Random();
+        IndexedBinaryHeap<Integer> heap = new IndexedBinaryHeap<>(capacity);
+        int[] keys = new int[capacity];
+        for (int id = 0; id < capacity; id++) {
+            keys[id] = random.nextInt(100000);
+            heap.add(id, keys[id]);
+        }
+        // decrease-key 和 increase-key
+        for (int i = 0; i < capacity * 2; i++) {
+            int id = random.nextInt(capacity);
+            keys[id] += random.nextInt(20000) - 10000;
+            heap.update(id, keys[id]);
+        }
+        int[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < capacity; i++) {
+            Assert.assertEquals(sorted[i], (int) heap.getTopKey());
+            int id = heap.remove();
+            Assert.assertEquals(sorted[i], keys[id]);
+            Assert.assertFalse(heap.contains(id));
+        }
+        Assert.assertTrue(heap.isEmpty());
+
+        heap.add(3, 30);
+        heap.add(1, 10);
+        heap.add(2, 20);
+        heap.update(3, 5);
+        BinaryTrees.println(heap);
+        log.info("堆顶：{}", heap.get());
+    }
 
     private List<Integer> getIntArray(int size){
         List<Integer> retList = new ArrayList<>(size);
@@ -1,11 +1,23 @@
 package com.sym;
 
+import com.sym.algorithm.example.snowflake.AtomicSnowFlake;
+import com.sym.algorithm.example.snowflake.CachedSnowFlake;
+import com.sym.algorithm.example.snowflake.ISnowFlake;
+import com.sym.algorithm.example.snowflake.LaneSnowFlake;
+import com.sym.algorithm.example.snowflake.SnowFlakeLayout;
 import com.sym.algorithm.example.snowflake.SymSnowFlake;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 1、请记住：-1的二进制为：11111111111111111111111111111111,任何跟-1做异或运算(^),都相当于对其取非(~)
@@ -146,6 +158,394 @@ public class SnowFlakeTest {
         System.out.println(2 & 4);
     }
 
+    /**
+     * 对比synchronized版本和CAS版本在不同线程数下的吞吐量。
+     * 注意单个节点每毫秒最多生成4096个ID，吞吐量的上限是409.6万/秒
+     */
+    @Test
+    public void testSeven() throws InterruptedException {
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            throughput("SymSnowFlake", new SymSnowFlake(1, 1), threads, 1);
+            throughput("AtomicSnowFlake", new AtomicSnowFlake(1, 1), threads, 1);
+            throughput("AtomicSnowFlake*64", new AtomicSnowFlake(1, 1), threads, 64);
+        }
+    }
+
+    /**
+     * 多线程批量获取ID，不能重复
+     */
+    @Test
+    public void testEight() throws InterruptedException {
+        ISnowFlake snowFlake = new AtomicSnowFlake(31, 31);
+        Set<Long> set = ConcurrentHashMap.newKeySet();
+        int threads = 16;
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                try {
+                    for (int j = 0; j < 1000; j++) {
+                        long[] ids = j % 2 == 0 ? snowFlake.nextIDs(100) : new long[]{snowFlake.nextID()};
+                        for (long id : ids) {
+                            if (!set.add(id)) {
+                                throw new RuntimeException("生成重复ID了,id=" + id);
+                            }
+                        }
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+        Assert.assertEquals(threads * 500 * 101, set.size());
+    }
+
+    /**
+     * 按线程划分序列号：线程数超过通道数时，多出来的线程共用最后一个通道，ID仍然不能重复，
+     * 同一个线程生成的ID必须递增
+     */
+    @Test
+    public void testNine() throws InterruptedException {
+        // 8个通道, 7个可以独占, 每个通道每毫秒512个序列号
+        LaneSnowFlake snowFlake = new LaneSnowFlake(3, 7, 3);
+        Set<Long> set = ConcurrentHashMap.newKeySet();
+        int threads = 16;
+        CountDownLatch latch = new CountDownLatch(threads);
+        AtomicInteger exclusive = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                try {
+                    long last = -1;
+                    for (int j = 0; j < 10_000; j++) {
+                        long id = snowFlake.nextID();
+                        if (id <= last || !set.add(id)) {
+                            throw new RuntimeException("生成重复或者乱序的ID了,id=" + id);
+                        }
+                        last = id;
+                    }
+                    if (snowFlake.hasExclusiveLane()) {
+                        exclusive.incrementAndGet();
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+        Assert.assertEquals(threads * 10_000, set.size());
+        System.out.println("独占通道的线程数: " + exclusive.get());
+
+        // 之前的线程都结束了, 它们的通道可以被回收
+        Thread thread = new Thread(() -> Assert.assertTrue(snowFlake.hasExclusiveLane()));
+        thread.start();
+        thread.join();
+
+        // 只有1个可以独占的通道(通道号为0), 被另一个线程占着时当前线程只能用共用通道(通道号为1);
+        // 那个线程结束后, 当前线程在之后的调用中会重新抢通道, 不会一直留在共用通道
+        LaneSnowFlake single = new LaneSnowFlake(1, 1, 1);
+        CountDownLatch leased = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread owner = new Thread(() -> {
+            single.nextID();
+            leased.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        owner.start();
+        leased.await();
+        Assert.assertEquals(1, SnowFlakeLayout.DEFAULT.serialNumberOf(single.nextID()) >>> 11);
+        release.countDown();
+        owner.join();
+        int calls = 1;
+        while (SnowFlakeLayout.DEFAULT.serialNumberOf(single.nextID()) >>> 11 != 0) {
+            Assert.assertTrue("没有重新抢到通道", ++calls <= 1024);
+        }
+        System.out.println("独占通道的线程结束后, 第" + calls + "次调用抢到了通道");
+
+        // 每个通道每毫秒只有 4096/通道数 个序列号, 通道数应该与线程数相当, 这里让独占通道数不少于线程数
+        for (int threadCount : new int[]{1, 4, 16, 64}) {
+            int laneBits = Integer.numberOfTrailingZeros(threadCount) + 1;
+            throughput("AtomicSnowFlake", new AtomicSnowFlake(1, 1), threadCount, 1);
+            throughput("LaneSnowFlake(" + laneBits + ")", new LaneSnowFlake(1, 1, laneBits), threadCount, 1);
+        }
+    }
+
+    /**
+     * 模拟时钟回拨，借用时间模式下继续生成递增的ID，借用的时间用完后才等待
+     */
+    @Test
+    public void testTen() throws InterruptedException {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        AtomicSnowFlake snowFlake = new AtomicSnowFlake(1, 1, 10, clock::get);
+        long last = snowFlake.nextIDs(100)[99];
+
+        // 时钟回拨5毫秒，沿用逻辑时钟继续生成
+        clock.addAndGet(-5);
+        long id = snowFlake.nextID();
+        Assert.assertTrue(id > last);
+        Assert.assertEquals(1, snowFlake.getRollbackCount());
+
+        // 序列号用完后借用未来的时间，逻辑时钟最多领先10毫秒
+        for (int i = 0; i < 5; i++) {
+            long[] ids = snowFlake.nextIDs(4096);
+            Assert.assertTrue(ids[0] > id);
+            id = ids[4095];
+        }
+        Assert.assertEquals(5, snowFlake.getBorrowedMillis());
+        Assert.assertEquals(0, snowFlake.getExhaustionWaits());
+
+        // 借用的时间用完了，等待时钟追上来
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            clock.addAndGet(6);
+        }).start();
+        long next = snowFlake.nextIDs(4096)[0];
+        Assert.assertTrue(next > id);
+        Assert.assertEquals(1, snowFlake.getExhaustionWaits());
+        System.out.println(String.format("回拨次数: %d, 借用毫秒数: %d, 等待次数: %d, 等待时间: %dms",
+                snowFlake.getRollbackCount(), snowFlake.getBorrowedMillis(), snowFlake.getExhaustionWaits(),
+                TimeUnit.NANOSECONDS.toMillis(snowFlake.getExhaustionWaitNanos())));
+
+        // 不允许借用时，时钟回拨直接拒绝
+        AtomicSnowFlake strict = new AtomicSnowFlake(1, 1, 0, clock::get);
+        strict.nextID();
+        clock.addAndGet(-5);
+        try {
+            strict.nextID();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            System.out.println(e.getMessage());
+        }
+        Assert.assertEquals(1, strict.getRollbackCount());
+    }
+
+    /**
+     * 预生成ID：多线程取ID不能重复，同一个线程取到的ID必须递增；再对比突发流量下单次取ID的延迟
+     */
+    @Test
+    public void testEleven() throws InterruptedException {
+        try (CachedSnowFlake snowFlake = new CachedSnowFlake(new SymSnowFlake(2, 2), 4096, 50, 10)) {
+            Set<Long> set = ConcurrentHashMap.newKeySet();
+            int threads = 16;
+            CountDownLatch latch = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i++) {
+                new Thread(() -> {
+                    try {
+                        long last = -1;
+                        for (int j = 0; j < 1000; j++) {
+                            long[] ids = j % 2 == 0 ? snowFlake.nextIDs(20) : new long[]{snowFlake.nextID()};
+                            for (long id : ids) {
+                                if (id <= last || !set.add(id)) {
+                                    throw new RuntimeException("生成重复或者乱序的ID了,id=" + id);
+                                }
+                                last = id;
+                            }
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }).start();
+            }
+            latch.await();
+            Assert.assertEquals(threads * 500 * 21, set.size());
+            System.out.println("同步填充的次数: " + snowFlake.getEmptyTakes() + ", 剩余: " + snowFlake.remaining());
+        }
+
+        // 每一轮突发取6000个ID(超过一毫秒的序列号总数), 然后空闲5毫秒, 给后台线程留出填充的时间
+        try (CachedSnowFlake cached = new CachedSnowFlake(1, 1)) {
+            burstLatency("SymSnowFlake", new SymSnowFlake(1, 1));
+            burstLatency("CachedSnowFlake", cached);
+        }
+    }
+
+    /**
+     * 多线程生成ID，统计每秒生成的ID数量
+     *
+     * @param name      生成器名称
+     * @param snowFlake 生成器
+     * @param threads   线程数
+     * @param batch     每次批量获取的数量
+     */
+    private void throughput(String name, ISnowFlake snowFlake, int threads, int batch) throws InterruptedException {
+        int total = 2_000_000;
+        int callsPerThread = total / threads / batch;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < callsPerThread; j++) {
+                        if (batch == 1) {
+                            snowFlake.nextID();
+                        } else {
+                            snowFlake.nextIDs(batch);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long cost = System.nanoTime() - begin;
+        long ids = (long) callsPerThread * batch * threads;
+        System.out.println(String.format("%-20s 线程数: %-3d 吞吐量: %,d ids/s", name, threads,
+                ids * 1_000_000_000L / cost));
+    }
+
+    /**
+     * 自定义位布局：3位数据中心、8位机器编码、13位序列号，生成的ID可以解码回原来的各个部分；
+     * 再测试批量解码的速度
+     */
+    @Test
+    public void testTwelve() {
+        SnowFlakeLayout layout = SnowFlakeLayout.builder()
+                .dataCenterBits(3)
+                .machineCodeBits(8)
+                .serialNumberBits(13)
+                .epoch(Instant.parse("2021-01-01T00:00:00Z"))
+                .build();
+        System.out.println(layout);
+        Assert.assertEquals(39, layout.getTimeStampBits());
+        SymSnowFlake snowFlake = new SymSnowFlake(layout, 5, 200);
+        long begin = System.currentTimeMillis();
+        long[] ids = snowFlake.nextIDs(20_000);
+        long end = System.currentTimeMillis();
+
+        SnowFlakeLayout.Parts parts = new SnowFlakeLayout.Parts();
+        int last = -1;
+        for (long id : ids) {
+            layout.decode(id, parts);
+            Assert.assertEquals(5, parts.getDataCenter());
+            Assert.assertEquals(200, parts.getMachineCode());
+            Assert.assertTrue(parts.getTimeStamp() >= begin && parts.getTimeStamp() <= end);
+            // 同一毫秒内序列号递增, 换了一毫秒从0开始
+            Assert.assertTrue(parts.getSerialNumber() == last + 1 || parts.getSerialNumber() == 0);
+            last = parts.getSerialNumber();
+        }
+        System.out.println(layout.decode(ids[ids.length - 1], parts));
+
+        // 默认布局与原来的位布局一致
+        long id = new SymSnowFlake(31, 7).nextID();
+        Assert.assertEquals(31, SnowFlakeLayout.DEFAULT.dataCenterOf(id));
+        Assert.assertEquals(7, SnowFlakeLayout.DEFAULT.machineCodeOf(id));
+        Assert.assertEquals(id >>> 22, (SnowFlakeLayout.DEFAULT.timeStampOf(id) - SnowFlakeLayout.DEFAULT.getEpoch()));
+
+        // 无锁实现和按线程划分通道的实现同样使用自定义的位布局
+        long[] atomicIds = new AtomicSnowFlake(layout, 5, 200, 0, System::currentTimeMillis).nextIDs(8192);
+        Assert.assertEquals(200, layout.machineCodeOf(atomicIds[0]));
+        Assert.assertEquals(8191, layout.serialNumberOf(atomicIds[8191]) - layout.serialNumberOf(atomicIds[0]));
+        long laneId = new LaneSnowFlake(layout, 5, 200, 13).nextID();
+        Assert.assertEquals(5, layout.dataCenterOf(laneId));
+        Assert.assertEquals(200, layout.machineCodeOf(laneId));
+        Assert.assertTrue(layout.timeStampOf(laneId) >= begin);
+
+        // 批量解码400万个ID
+        int n = 1 << 22;
+        long[] bulk = new long[n];
+        for (int i = 0; i < n; i++) {
+            bulk[i] = ids[i % ids.length];
+        }
+        long[] timeStamps = new long[n];
+        int[] dataCenters = new int[n];
+        int[] machineCodes = new int[n];
+        int[] serialNumbers = new int[n];
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            layout.decode(bulk, timeStamps, dataCenters, machineCodes, serialNumbers);
+            long cost = System.nanoTime() - start;
+            System.out.println(String.format("批量解码 %,d 个ID: %dms, %,d ids/s, 读写 %.2f GB/s", n,
+                    TimeUnit.NANOSECONDS.toMillis(cost), n * 1_000_000_000L / cost,
+                    (double) n * (8 + 8 + 4 * 3) / cost));
+        }
+        for (int i = 0; i < n; i += 4099) {
+            Assert.assertEquals(layout.timeStampOf(bulk[i]), timeStamps[i]);
+            Assert.assertEquals(layout.serialNumberOf(bulk[i]), serialNumbers[i]);
+            Assert.assertEquals(200, machineCodes[i]);
+        }
+    }
+
+    /**
+     * 时间戳超出位布局的范围：构造时已经用完的布局直接拒绝，运行中用完时所有实现都拒绝生成ID，而不是生成负数
+     */
+    @Test
+    public void testThirteen() throws InterruptedException {
+        // 8位机器编码 + 14位序列号，时间戳只剩36位，从2019年开始只能用到2021年
+        try {
+            SnowFlakeLayout.builder().machineCodeBits(8).serialNumberBits(14).build();
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+        SnowFlakeLayout recent = SnowFlakeLayout.builder().machineCodeBits(8).serialNumberBits(14)
+                .epoch(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)).build();
+        System.out.println(recent);
+        Assert.assertTrue(new AtomicSnowFlake(recent, 1, 1, 0, System::currentTimeMillis).nextID() > 0);
+
+        // 时间戳只有32位，再过100毫秒就用完了
+        SnowFlakeLayout layout = SnowFlakeLayout.builder().dataCenterBits(5).machineCodeBits(8).serialNumberBits(18)
+                .epoch(System.currentTimeMillis() - (1L << 32) + 100).build();
+        Assert.assertEquals(32, layout.getTimeStampBits());
+        long overflow = layout.maxTimeStamp() + 1;
+        ISnowFlake[] snowFlakes = {new SymSnowFlake(layout, 1, 1), new LaneSnowFlake(layout, 1, 1, 4),
+                new AtomicSnowFlake(layout, 1, 1, 0, System::currentTimeMillis),
+                new AtomicSnowFlake(layout, 1, 1, 0, () -> overflow)};
+        Assert.assertTrue(snowFlakes[0].nextID() > 0);
+        TimeUnit.MILLISECONDS.sleep(200);
+        for (ISnowFlake snowFlake : snowFlakes) {
+            try {
+                snowFlake.nextID();
+                Assert.fail(snowFlake.getClass().getSimpleName());
+            } catch (RuntimeException e) {
+                Assert.assertEquals("时间戳超出了位布局的范围,拒绝生成id", e.getMessage());
+            }
+        }
+        // 没有共用通道以外的通道时，走的是共用通道
+        try {
+            new LaneSnowFlake(layout, 1, 1, 0).nextID();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertEquals("时间戳超出了位布局的范围,拒绝生成id", e.getMessage());
+        }
+        // 预生成ID时，delegate生成的负数ID不会放进缓冲区
+        try {
+            new CachedSnowFlake(() -> -1L, 16, 50, 0);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertEquals("时间戳超出了位布局的范围,拒绝生成id", e.getMessage());
+        }
+    }
+
+    private void burstLatency(String name, ISnowFlake snowFlake) throws InterruptedException {
+        int rounds = 50;
+        int burst = 6000;
+        long[] costs = new long[rounds * burst];
+        for (int i = 0; i < rounds; i++) {
+            for (int j = 0; j < burst; j++) {
+                long begin = System.nanoTime();
+                snowFlake.nextID();
+                costs[i * burst + j] = System.nanoTime() - begin;
+            }
+            Thread.sleep(5);
+        }
+        Arrays.sort(costs);
+        System.out.println(String.format("%-16s p50: %,dns p99: %,dns p99.9: %,dns max: %,dns", name,
+                costs[costs.length / 2], costs[costs.length * 99 / 100], costs[costs.length * 999 / 1000],
+                costs[costs.length - 1]));
+    }
+
     private void printBinaryString(int val) {
         System.out.println(Integer.toBinaryString(val));
     }